@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import io.github.linuxforhealth.hl7.ConverterOptions;
+import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
+import jdk.jfr.Recording;
+
+/**
+ * Converts the sample messages of all the supported message types from several threads sharing
+ * one converter, as a service converting concurrent requests does. Run with -t 1, 2, 4... or with
+ * {@link ThreadScalability} that runs each thread count and reports the scaling efficiency.
+ * <p>
+ * When the contention.jfr system property is set, the lock contention (jdk.JavaMonitorEnter and
+ * jdk.ThreadPark events with their stack traces) is recorded with Java Flight Recorder during the
+ * trial and written to the file it names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConcurrentConversionBenchmark {
+
+  static final String CONTENTION_FILE_PROPERTY = "contention.jfr";
+  // contended waits shorter than this are not recorded, to keep the recording overhead low
+  static final Duration CONTENTION_THRESHOLD = Duration.ofNanos(10000);
+
+  private static final String[] MESSAGE_TYPES = {"ADT_A01", "ADT_A04", "ADT_A05", "ADT_A08",
+      "ADT_A31", "ADT_A34", "ADT_A40", "ADT_A60", "MDM_T02", "MDM_T06", "ORM_O01", "OMP_O09",
+      "ORU_R01", "PPR_PC1", "RDE_O11", "RDE_O25", "VXU_V04"};
+
+  private HL7ToFHIRConverter converter;
+  private ConverterOptions options;
+  private String[] messages;
+  private Recording recording;
+
+  @Setup
+  public void setUp(BenchmarkParams params) {
+    messages = new String[MESSAGE_TYPES.length];
+    for (int i = 0; i < messages.length; i++) {
+      messages[i] = SampleMessages.get(MESSAGE_TYPES[i]);
+    }
+    options = new ConverterOptions.Builder().build();
+    // a session per thread, the threads never wait for a session
+    converter = new HL7ToFHIRConverter(params.getThreads());
+    if (System.getProperty(CONTENTION_FILE_PROPERTY) != null) {
+      recording = new Recording();
+      recording.enable("jdk.JavaMonitorEnter").withThreshold(CONTENTION_THRESHOLD)
+          .withStackTrace();
+      recording.enable("jdk.ThreadPark").withThreshold(CONTENTION_THRESHOLD).withStackTrace();
+      recording.start();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (recording != null) {
+      recording.stop();
+      recording.dump(Paths.get(System.getProperty(CONTENTION_FILE_PROPERTY)));
+      recording.close();
+    }
+    converter.close();
+  }
+
+  /**
+   * Message mix of one thread, each thread starts at a different message type so that the threads
+   * do not convert the same message type at the same time.
+   */
+  @State(Scope.Thread)
+  public static class MessageMix {
+    private int next;
+
+    @Setup
+    public void setUp() {
+      next = (int) (Thread.currentThread().getId() % MESSAGE_TYPES.length);
+    }
+  }
+
+  @Benchmark
+  public String convert(MessageMix mix) {
+    String message = messages[mix.next];
+    mix.next = (mix.next + 1) % messages.length;
+    return converter.convert(message, options);
+  }
+
+}
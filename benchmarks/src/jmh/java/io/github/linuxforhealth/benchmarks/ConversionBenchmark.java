@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import io.github.linuxforhealth.hl7.ConverterOptions;
+import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
+
+/**
+ * Converts the sample message of each supported message type, with and without resource
+ * validation, to pretty printed or compact JSON. Throughput, average time and the latency
+ * percentiles are measured, the gc profiler configured in build.gradle adds the bytes allocated
+ * per conversion (gc.alloc.rate.norm).
+ * <p>
+ * The message types are those of supported.hl7.messages in config.properties, Fallback_Base
+ * excepted, select some with -p messageType=ADT_A01,ORU_R01.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConversionBenchmark {
+
+  @Param({"ADT_A01", "ADT_A04", "ADT_A05", "ADT_A08", "ADT_A31", "ADT_A34", "ADT_A40", "ADT_A60",
+      "MDM_T02", "MDM_T06", "ORM_O01", "OMP_O09", "ORU_R01", "PPR_PC1", "RDE_O11", "RDE_O25",
+      "VXU_V04"})
+  public String messageType;
+
+  @Param({"false", "true"})
+  public boolean validate;
+
+  @Param({"false", "true"})
+  public boolean prettyPrint;
+
+  private HL7ToFHIRConverter converter;
+  private ConverterOptions options;
+  private String message;
+
+  @Setup
+  public void setUp() {
+    ConverterOptions.Builder builder = new ConverterOptions.Builder();
+    if (validate) {
+      builder.withValidateResource();
+    }
+    if (prettyPrint) {
+      builder.withPrettyPrint();
+    }
+    options = builder.build();
+    message = SampleMessages.get(messageType);
+    converter = new HL7ToFHIRConverter(1);
+    // a message that cannot be converted would measure the failure path
+    if (converter.convert(message, options) == null) {
+      throw new IllegalStateException(
+          "Sample message " + messageType + " cannot be converted, validate=" + validate);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    converter.close();
+  }
+
+  @Benchmark
+  public String convert() {
+    return converter.convert(message, options);
+  }
+
+}
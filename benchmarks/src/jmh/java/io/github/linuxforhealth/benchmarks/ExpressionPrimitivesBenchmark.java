@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import io.github.linuxforhealth.api.Condition;
+import io.github.linuxforhealth.api.EvaluationResult;
+import io.github.linuxforhealth.api.Specification;
+import io.github.linuxforhealth.core.data.JexlEngineUtil;
+import io.github.linuxforhealth.core.expression.EvaluationResultFactory;
+import io.github.linuxforhealth.core.expression.condition.ConditionUtil;
+import io.github.linuxforhealth.hl7.data.Hl7RelatedGeneralUtils;
+import io.github.linuxforhealth.hl7.expression.specification.SpecificationParser;
+
+/**
+ * Per call cost of the primitives every template expression goes through: parsing of the specs and
+ * conditions when the templates are loaded, and at conversion time the test of the conditions and
+ * the JEXL evaluation. Each benchmark cycles through inputs taken from the templates, repeated in
+ * about the proportion they appear in them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExpressionPrimitivesBenchmark {
+
+  private static final String[] SPECS = {"PID.3", "PL", "PL", "PL", "$Patient", "$Patient", "OBX",
+      "OBX.5", "CWE", "$Encounter", "OBR.4", "PV1.3.1", "MSH.7", "OBX.3.1", "XCN | CNN| NDL | PPN",
+      "TXA.22 | TXA.10", "SPM.4 | SPM.5", "PID.5 | PID.9"};
+
+  private static final String[] CONDITIONS = {"$valueIn NOT_NULL", "$valueIn NOT_NULL",
+      "$coding NOT_NULL", "$room NULL && $pointofcare NOT_NULL",
+      "$bed NULL && $room NULL && $pointofcare NULL && $floor NULL && $building NOT_NULL",
+      "$denominator NOT_NULL && $numerator NOT_NULL", "$obx3 EQUALS 48767-8", "$obx2 EQUALS TX",
+      "$obx2 NOT_EQUALS TX", "$triggerEvent EQUALS A40", "$rxa20 EQUALS 'PA'",
+      "$obx2 EQUALS SN && $separator NOT_NULL && $separator NOT_EQUALS ':'"};
+
+  // conditions comparing a variable to a value, tested with the variable matching or not
+  private static final String[] BI_CONDITIONS = {"$obx3 EQUALS 48767-8", "$obx2 EQUALS TX",
+      "$obx2 NOT_EQUALS TX", "$obx2 EQUALS ST", "$triggerEvent EQUALS A40",
+      "$rxa20 EQUALS 'PA'"};
+
+  private static final String UUID = "UUID.randomUUID()";
+  private static final String[] JEXL = {UUID, UUID, UUID, UUID, UUID, UUID,
+      "GeneralUtils.generateName( prefix, first, middle, family, suffix)",
+      "GeneralUtils.makeStringArray( first, middle)"};
+
+  private final List<Condition> biConditions = new ArrayList<>();
+  private final List<Map<String, EvaluationResult>> conditionContexts = new ArrayList<>();
+  private JexlEngineUtil jexl;
+  private Map<String, Object> jexlContext;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    for (String condition : BI_CONDITIONS) {
+      biConditions.add(ConditionUtil.createCondition(condition));
+    }
+    conditionContexts.add(context("obx3", "48767-8", "obx2", "TX", "triggerEvent", "A40", "rxa20",
+        "PA"));
+    conditionContexts.add(context("obx3", "8867-4", "obx2", "NM", "triggerEvent", "A01", "rxa20",
+        "CP"));
+    jexl = new JexlEngineUtil("GeneralUtils", Hl7RelatedGeneralUtils.class);
+    jexlContext = new HashMap<>();
+    jexlContext.put("prefix", "Dr.");
+    jexlContext.put("first", "John");
+    jexlContext.put("middle", "A");
+    jexlContext.put("family", "Doe");
+    jexlContext.put("suffix", "Jr");
+  }
+
+  @Benchmark
+  public Specification parseSpecification() {
+    return SpecificationParser.parse(SPECS[nextIndex(SPECS.length)], false, false);
+  }
+
+  @Benchmark
+  public Condition createCondition() {
+    return ConditionUtil.createCondition(CONDITIONS[nextIndex(CONDITIONS.length)]);
+  }
+
+  @Benchmark
+  public boolean testCondition() {
+    int i = nextIndex(Integer.MAX_VALUE);
+    return biConditions.get(i % biConditions.size())
+        .test(conditionContexts.get((i / biConditions.size()) % conditionContexts.size()));
+  }
+
+  @Benchmark
+  public Object evaluateJexl() {
+    return jexl.evaluate(JEXL[nextIndex(JEXL.length)], jexlContext);
+  }
+
+  private static Map<String, EvaluationResult> context(String... namesAndValues) {
+    Map<String, EvaluationResult> context = new HashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      context.put(namesAndValues[i],
+          EvaluationResultFactory.getEvaluationResult(namesAndValues[i + 1]));
+    }
+    return context;
+  }
+
+  // index of the next input, also after the counter overflows
+  private int nextIndex(int count) {
+    return (next++ & Integer.MAX_VALUE) % count;
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import io.github.linuxforhealth.hl7.ConverterOptions;
+import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
+
+/**
+ * Converts generated messages of a growing number of OBX, to check that the conversion time grows
+ * linearly with the size of the message: the average time divided by the number of observations
+ * should stay about the same from 1 to 5000 observations.
+ * <p>
+ * The observations are spread over orderGroups order groups, 1 by default, see
+ * {@link SyntheticMessages} for the other settings of the generated messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageSizeBenchmark {
+
+  @Param({"ORU_R01", "ADT_A01", "VXU_V04", "MDM_T02", "RDE_O11"})
+  public String messageType;
+
+  @Param({"1", "10", "100", "1000", "5000"})
+  public int observations;
+
+  @Param({"1"})
+  public int orderGroups;
+
+  @Param({"0"})
+  public int notes;
+
+  @Param({"0"})
+  public int embeddedDataSize;
+
+  private HL7ToFHIRConverter converter;
+  private ConverterOptions options;
+  private String message;
+
+  @Setup
+  public void setUp() {
+    if (observations % orderGroups != 0) {
+      throw new IllegalArgumentException("observations should be a multiple of orderGroups");
+    }
+    message = new SyntheticMessages.Builder(messageType).withOrderGroups(orderGroups)
+        .withObservationsPerGroup(observations / orderGroups).withNotes(notes)
+        .withEmbeddedDataSize(embeddedDataSize).generate();
+    options = new ConverterOptions.Builder().build();
+    converter = new HL7ToFHIRConverter(1);
+    if (converter.convert(message, options) == null) {
+      throw new IllegalStateException("Generated message " + messageType + " cannot be converted");
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    converter.close();
+  }
+
+  @Benchmark
+  public String convert() {
+    return converter.convert(message, options);
+  }
+
+}
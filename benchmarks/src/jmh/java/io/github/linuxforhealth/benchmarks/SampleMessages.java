@@ -0,0 +1,37 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sample messages of the test suite (src/test/resources/messages), one per supported message type.
+ */
+final class SampleMessages {
+
+  private SampleMessages() {}
+
+  /**
+   * @param messageType - message type, for example ADT_A01
+   * @return the sample message of the type
+   * @throws IllegalArgumentException - if there is no sample message for the type
+   */
+  static String get(String messageType) {
+    String resource = "messages/" + messageType + ".hl7";
+    try (InputStream in = SampleMessages.class.getClassLoader().getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IllegalArgumentException("No sample message " + resource);
+      }
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read sample message " + resource, e);
+    }
+  }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * Generates HL7 v2.6 messages of a configurable size, to measure how the conversion time grows with
+ * the size of the messages. The same settings and seed always generate the same message.
+ * <p>
+ * The supported message types are ORU_R01, ADT_A01, VXU_V04, MDM_T02 and RDE_O11. The order groups
+ * are the ORDER_OBSERVATION groups of ORU_R01 (OBR), the ORDER groups of VXU_V04 (ORC, RXA) and
+ * RDE_O11 (ORC, RXE, RXR) and the COMMON_ORDER groups of MDM_T02 (ORC, OBR). The observations are
+ * the OBX of each order group, ADT_A01 and MDM_T02 whose OBX are not part of an order group have
+ * orderGroups * observationsPerGroup OBX. Notes (NTE) follow each OBR and each OBX, except in
+ * ADT_A01 where the OBX have no notes.
+ */
+final class SyntheticMessages {
+
+  private static final String[] SUPPORTED =
+      {"ORU_R01", "ADT_A01", "VXU_V04", "MDM_T02", "RDE_O11"};
+
+  private static final String[][] OBSERVATIONS = {{"8867-4", "Heart rate", "/min", "60-100"},
+      {"8310-5", "Body temperature", "Cel", "36.1-37.2"}, {"2345-7", "Glucose", "mg/dL", "70-99"},
+      {"2951-2", "Sodium", "mmol/L", "135-145"}, {"718-7", "Hemoglobin", "g/dL", "12-16"},
+      {"29463-7", "Body weight", "kg", ""}};
+  private static final String[][] VACCINES =
+      {{"48", "HPV, quadrivalent"}, {"08", "Hep B, adolescent or pediatric"},
+          {"20", "DTaP"}, {"141", "Influenza, seasonal, injectable"}};
+  private static final String[][] MEDICATIONS = {{"1665021", "ceftriaxone 2000 MG Injection"},
+      {"313782", "acetaminophen 325 MG Oral Tablet"}, {"197361", "amlodipine 5 MG Oral Tablet"}};
+  private static final String[] FAMILY_NAMES = {"DOE", "SMITH", "JONES", "GARCIA", "NGUYEN"};
+  private static final String[] GIVEN_NAMES = {"JANE", "JOHN", "MARIA", "WEI", "ALEX"};
+  private static final String[] CITIES = {"SCHENECTADY^NY^12345", "BOSTON^MA^02115",
+      "AUSTIN^TX^73301", "DENVER^CO^80202"};
+  private static final String BASE64 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+  private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+  private static final LocalDateTime BASE_TIME = LocalDateTime.of(2021, 4, 7, 19, 13, 42);
+
+  private final String messageType;
+  private final int orderGroups;
+  private final int observationsPerGroup;
+  private final int notes;
+  private final int patientIdentifiers;
+  private final int patientAddresses;
+  private final int embeddedDataSize;
+  private final long seed;
+
+  private Random random;
+  private StringBuilder message;
+
+  private SyntheticMessages(Builder builder) {
+    this.messageType = builder.messageType;
+    this.orderGroups = builder.orderGroups;
+    this.observationsPerGroup = builder.observationsPerGroup;
+    this.notes = builder.notes;
+    this.patientIdentifiers = builder.patientIdentifiers;
+    this.patientAddresses = builder.patientAddresses;
+    this.embeddedDataSize = builder.embeddedDataSize;
+    this.seed = builder.seed;
+  }
+
+  /**
+   * @return the message, segments separated by carriage returns
+   */
+  String generate() {
+    random = new Random(seed);
+    message = new StringBuilder();
+    switch (messageType) {
+      case "ORU_R01":
+        generateOru();
+        break;
+      case "ADT_A01":
+        generateAdt();
+        break;
+      case "VXU_V04":
+        generateVxu();
+        break;
+      case "MDM_T02":
+        generateMdm();
+        break;
+      default:
+        generateRde();
+        break;
+    }
+    return message.toString();
+  }
+
+  private void generateOru() {
+    msh("ORU^R01^ORU_R01");
+    pid();
+    pv1();
+    for (int group = 1; group <= orderGroups; group++) {
+      obr(group);
+      nte();
+      for (int obx = 1; obx <= observationsPerGroup; obx++) {
+        obx(obx);
+        nte();
+      }
+    }
+  }
+
+  private void generateAdt() {
+    msh("ADT^A01^ADT_A01");
+    segment("EVN|A01|", timestamp());
+    pid();
+    pv1();
+    for (int obx = 1; obx <= orderGroups * observationsPerGroup; obx++) {
+      obx(obx);
+    }
+  }
+
+  private void generateVxu() {
+    msh("VXU^V04^VXU_V04");
+    pid();
+    pv1();
+    for (int group = 1; group <= orderGroups; group++) {
+      String[] vaccine = VACCINES[random.nextInt(VACCINES.length)];
+      String administered = timestamp();
+      segment("ORC|RE||", "VAC" + group, "^SYNTH");
+      segment("RXA|0|1|", administered, "|", administered, "|", vaccine[0], "^", vaccine[1],
+          "^CVX|0.5|mL^MilliLiter^UCUM||||||||||||||CP|A");
+      for (int obx = 1; obx <= observationsPerGroup; obx++) {
+        obx(obx);
+        nte();
+      }
+    }
+  }
+
+  private void generateMdm() {
+    msh("MDM^T02^MDM_T02");
+    segment("EVN||", timestamp());
+    pid();
+    pv1();
+    for (int group = 1; group <= orderGroups; group++) {
+      segment("ORC|NW|", "PLC" + group);
+      obr(group);
+      nte();
+    }
+    segment("TXA|1|CN^Consultation note|TX||||", timestamp(), "||||||DOC", nextId(),
+        "||||||AU");
+    for (int obx = 1; obx <= orderGroups * observationsPerGroup; obx++) {
+      if (embeddedDataSize > 0) {
+        obx(obx);
+      } else {
+        segment("OBX|", Integer.toString(obx), "|TX|11488-4^Consultation note^LN||Line ",
+            Integer.toString(obx), " of the consultation note||||||F");
+      }
+      nte();
+    }
+  }
+
+  private void generateRde() {
+    msh("RDE^O11^RDE_O11");
+    pid();
+    pv1();
+    for (int group = 1; group <= orderGroups; group++) {
+      String[] medication = MEDICATIONS[random.nextInt(MEDICATIONS.length)];
+      String ordered = timestamp();
+      segment("ORC|NW|", "RX" + group, "|||||||", ordered);
+      segment("RXE|^Q24H&0600^^", ordered, "^^ROU|", medication[0], "^", medication[1],
+          "^RXNORM|2||g");
+      segment("RXR|IM^Intramuscular^HL70162");
+      for (int obx = 1; obx <= observationsPerGroup; obx++) {
+        obx(obx);
+        nte();
+      }
+    }
+  }
+
+  private void msh(String messageCode) {
+    segment("MSH|^~\\&|SYNTH|SYNTHFAC|CONVERTER|CONVFAC|", timestamp(), "||", messageCode, "|MSG",
+        nextId(), "|P|2.6");
+  }
+
+  private void pid() {
+    message.append("PID|1||");
+    for (int i = 0; i < patientIdentifiers; i++) {
+      if (i > 0) {
+        message.append('~');
+      }
+      message.append("ID").append(nextId()).append(i == 0 ? "^^^SYNTH^MR" : "^^^OTHER^PI");
+    }
+    message.append("||").append(FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)]).append('^')
+        .append(GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)]).append("||19")
+        .append(50 + random.nextInt(50)).append("0615|").append(random.nextBoolean() ? 'F' : 'M')
+        .append("|||");
+    for (int i = 0; i < patientAddresses; i++) {
+      if (i > 0) {
+        message.append('~');
+      }
+      message.append(100 + random.nextInt(900)).append(" MAIN STREET^^")
+          .append(CITIES[random.nextInt(CITIES.length)]).append("^^").append(i == 0 ? 'H' : 'O');
+    }
+    message.append("||(555)").append(100 + random.nextInt(900)).append('-')
+        .append(1000 + random.nextInt(9000)).append('\r');
+  }
+
+  private void pv1() {
+    segment("PV1|1|I|||||1234^ADAMS^JOHN|||MED||||||||||VN", nextId(),
+        "|||||||||||||||||||||||||", timestamp());
+  }
+
+  private void obr(int group) {
+    String[] observation = OBSERVATIONS[random.nextInt(OBSERVATIONS.length)];
+    segment("OBR|", Integer.toString(group), "|PLC", Integer.toString(group), "|FIL",
+        Integer.toString(group), "^LAB|", observation[0], "^", observation[1], "^LN|||",
+        timestamp(), "||||||||||||||||F");
+  }
+
+  private void obx(int setId) {
+    String[] observation = OBSERVATIONS[random.nextInt(OBSERVATIONS.length)];
+    String code = observation[0] + "^" + observation[1] + "^LN";
+    if (embeddedDataSize > 0) {
+      message.append("OBX|").append(setId).append("|ED|").append(code)
+          .append("||^application^pdf^Base64^");
+      for (int i = 0; i < embeddedDataSize; i++) {
+        message.append(BASE64.charAt(random.nextInt(BASE64.length())));
+      }
+      message.append("||||||F\r");
+    } else if (random.nextInt(4) == 0) {
+      segment("OBX|", Integer.toString(setId), "|ST|", code, "||Result ",
+          Integer.toString(random.nextInt(1000)), " reviewed||||||F|||", timestamp());
+    } else {
+      segment("OBX|", Integer.toString(setId), "|NM|", code, "||",
+          Integer.toString(random.nextInt(200)), "|", observation[2], "|", observation[3],
+          "|N|||F|||", timestamp());
+    }
+  }
+
+  private void nte() {
+    for (int i = 1; i <= notes; i++) {
+      segment("NTE|", Integer.toString(i), "|L|Note ", Integer.toString(i),
+          " entered by the performing laboratory");
+    }
+  }
+
+  private void segment(String... parts) {
+    for (String part : parts) {
+      message.append(part);
+    }
+    message.append('\r');
+  }
+
+  private String timestamp() {
+    return BASE_TIME.plusSeconds(random.nextInt(86400 * 365)).format(TIMESTAMP);
+  }
+
+  private String nextId() {
+    return Integer.toString(100000 + random.nextInt(900000));
+  }
+
+  /**
+   * Settings of the generated message, by default a single order group with one observation, no
+   * notes, one patient identifier and address and no embedded data.
+   */
+  static class Builder {
+    private final String messageType;
+    private int orderGroups = 1;
+    private int observationsPerGroup = 1;
+    private int notes;
+    private int patientIdentifiers = 1;
+    private int patientAddresses = 1;
+    private int embeddedDataSize;
+    private long seed;
+
+    /**
+     * @param messageType - one of ORU_R01, ADT_A01, VXU_V04, MDM_T02 and RDE_O11
+     */
+    Builder(String messageType) {
+      boolean supported = false;
+      for (String type : SUPPORTED) {
+        supported |= type.equals(messageType);
+      }
+      if (!supported) {
+        throw new IllegalArgumentException("Unsupported message type " + messageType);
+      }
+      this.messageType = messageType;
+    }
+
+    Builder withOrderGroups(int orderGroups) {
+      checkPositive(orderGroups, "orderGroups");
+      this.orderGroups = orderGroups;
+      return this;
+    }
+
+    Builder withObservationsPerGroup(int observationsPerGroup) {
+      checkPositive(observationsPerGroup, "observationsPerGroup");
+      this.observationsPerGroup = observationsPerGroup;
+      return this;
+    }
+
+    /**
+     * Number of NTE segments following each OBR and OBX.
+     */
+    Builder withNotes(int notes) {
+      checkNotNegative(notes, "notes");
+      this.notes = notes;
+      return this;
+    }
+
+    /**
+     * Number of repetitions of PID-3.
+     */
+    Builder withPatientIdentifiers(int patientIdentifiers) {
+      checkPositive(patientIdentifiers, "patientIdentifiers");
+      this.patientIdentifiers = patientIdentifiers;
+      return this;
+    }
+
+    /**
+     * Number of repetitions of PID-11.
+     */
+    Builder withPatientAddresses(int patientAddresses) {
+      checkPositive(patientAddresses, "patientAddresses");
+      this.patientAddresses = patientAddresses;
+      return this;
+    }
+
+    /**
+     * Number of base64 characters of the encapsulated data of each OBX, the OBX are ED instead of
+     * NM, ST and TX when greater than 0.
+     */
+    Builder withEmbeddedDataSize(int embeddedDataSize) {
+      checkNotNegative(embeddedDataSize, "embeddedDataSize");
+      this.embeddedDataSize = embeddedDataSize;
+      return this;
+    }
+
+    Builder withSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    String generate() {
+      return new SyntheticMessages(this).generate();
+    }
+
+    private static void checkPositive(int value, String name) {
+      if (value < 1) {
+        throw new IllegalArgumentException(name + " should be greater than 0");
+      }
+    }
+
+    private static void checkNotNegative(int value, String name) {
+      if (value < 0) {
+        throw new IllegalArgumentException(name + " cannot be negative");
+      }
+    }
+  }
+
+}
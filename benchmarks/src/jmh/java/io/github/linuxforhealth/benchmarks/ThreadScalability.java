@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Runs {@link ConcurrentConversionBenchmark} with 1, 2, 4... up to N threads and reports, for each
+ * thread count, the throughput, the throughput per thread and the scaling efficiency: the
+ * throughput divided by the single thread throughput times the number of threads. An efficiency
+ * well below 100% with fewer threads than processors points at a serialization point.
+ * <p>
+ * The lock contention of each run is recorded with Java Flight Recorder, the contended monitors and
+ * parked locks with the most blocked time are reported by the converter frame that waited on them,
+ * the recordings are kept for Java Mission Control.
+ * <p>
+ * Arguments: the maximum number of threads, the number of processors by default, and the folder of
+ * the recordings, build/reports/jmh by default. Run with ./gradlew :benchmarks:jmhScalability.
+ */
+public final class ThreadScalability {
+
+  private static final int REPORTED_LOCKS = 10;
+  private static final String[] JDK_PACKAGES = {"java.", "javax.", "jdk.", "sun.", "com.sun."};
+
+  private ThreadScalability() {}
+
+  public static void main(String[] args) throws RunnerException, IOException {
+    int maxThreads =
+        args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    if (maxThreads < 1) {
+      throw new IllegalArgumentException("The maximum number of threads should be greater than 0");
+    }
+    Path folder = Paths.get(args.length > 1 ? args[1] : "build/reports/jmh").toAbsolutePath();
+    Files.createDirectories(folder);
+
+    List<Integer> threadCounts = new ArrayList<>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(maxThreads);
+
+    Map<Integer, Result> results = new HashMap<>();
+    Map<Integer, Path> recordings = new HashMap<>();
+    for (int threads : threadCounts) {
+      Path recording = folder.resolve("contention-" + threads + "-threads.jfr");
+      Result result = new Runner(new OptionsBuilder()
+          .include(ConcurrentConversionBenchmark.class.getName() + ".convert")
+          .threads(threads).forks(1).warmupIterations(3).warmupTime(TimeValue.seconds(10))
+          .measurementIterations(5).measurementTime(TimeValue.seconds(10))
+          .jvmArgsAppend("-D" + ConcurrentConversionBenchmark.CONTENTION_FILE_PROPERTY + "="
+              + recording)
+          .build()).runSingle().getPrimaryResult();
+      results.put(threads, result);
+      recordings.put(threads, recording);
+    }
+
+    double singleThread = results.get(1).getScore();
+    System.out.println();
+    System.out.println("Threads  Throughput (ops/s)  Per thread (ops/s)  Efficiency");
+    for (int threads : threadCounts) {
+      double score = results.get(threads).getScore();
+      System.out.println(String.format(Locale.ROOT, "%7d  %18.1f  %18.1f  %9.0f%%", threads, score,
+          score / threads, 100 * score / (singleThread * threads)));
+    }
+    for (int threads : threadCounts) {
+      System.out.println();
+      Path recording = recordings.get(threads);
+      System.out.println("Lock contention with " + threads + " threads, " + recording);
+      printContention(recording);
+    }
+  }
+
+  private static void printContention(Path recording) throws IOException {
+    if (!Files.exists(recording)) {
+      System.out.println("  no recording");
+      return;
+    }
+    Map<String, Contention> byLock = new HashMap<>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+      String lock;
+      if ("jdk.JavaMonitorEnter".equals(event.getEventType().getName())) {
+        lock = "monitor " + className(event.getClass("monitorClass"));
+      } else if ("jdk.ThreadPark".equals(event.getEventType().getName())) {
+        lock = "park " + className(event.getClass("parkedClass"));
+      } else {
+        continue;
+      }
+      String frame = waitingFrame(event.getStackTrace());
+      if (frame == null) {
+        // idle JDK threads, a pool waiting for tasks for example
+        continue;
+      }
+      String key = lock + " in " + frame;
+      Contention contention = byLock.computeIfAbsent(key, k -> new Contention());
+      contention.events++;
+      contention.nanos += event.getDuration().toNanos();
+    }
+    if (byLock.isEmpty()) {
+      System.out.println("  no contended lock above "
+          + ConcurrentConversionBenchmark.CONTENTION_THRESHOLD.toNanos() / 1000 + " us");
+      return;
+    }
+    byLock.entrySet().stream()
+        .sorted((a, b) -> Long.compare(b.getValue().nanos, a.getValue().nanos))
+        .limit(REPORTED_LOCKS)
+        .forEach(e -> System.out.println(String.format(Locale.ROOT, "  %10.1f ms %8d waits  %s",
+            e.getValue().nanos / 1e6, e.getValue().events, e.getKey())));
+  }
+
+  private static String className(RecordedClass recordedClass) {
+    return recordedClass != null ? recordedClass.getName() : "unknown";
+  }
+
+  // first frame outside of the JDK, the converter or library code that waited on the lock, null
+  // if the whole stack is JDK code
+  private static String waitingFrame(RecordedStackTrace stackTrace) {
+    if (stackTrace == null) {
+      return "unknown";
+    }
+    for (RecordedFrame frame : stackTrace.getFrames()) {
+      String type = frame.getMethod().getType().getName();
+      boolean jdk = false;
+      for (String jdkPackage : JDK_PACKAGES) {
+        jdk |= type.startsWith(jdkPackage);
+      }
+      if (!jdk) {
+        return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+      }
+    }
+    return null;
+  }
+
+  private static class Contention {
+    private long events;
+    private long nanos;
+  }
+
+}
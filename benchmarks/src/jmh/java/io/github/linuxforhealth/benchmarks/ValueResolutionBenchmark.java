@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.Segment;
+import ca.uhn.hl7v2.model.Structure;
+import ca.uhn.hl7v2.model.Type;
+import io.github.linuxforhealth.core.terminology.SimpleCode;
+import io.github.linuxforhealth.core.terminology.TerminologyLookup;
+import io.github.linuxforhealth.core.terminology.UrlLookup;
+import io.github.linuxforhealth.hl7.data.Hl7DataHandlerUtil;
+import io.github.linuxforhealth.hl7.data.date.DateUtil;
+import io.github.linuxforhealth.hl7.parsing.HL7HapiParser;
+
+/**
+ * Per call cost of the value resolution helpers the expressions call for every field: date
+ * formatting, string value of the HL7 data types, terminology and coding system url lookups. Each
+ * benchmark cycles through inputs representative of the converted messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueResolutionBenchmark {
+
+  // HL7 DTM values of different precisions, with and without offset
+  private static final String[] DATES = {"20150502090000", "20150502090000", "201505020900",
+      "20150502", "19800202", "20150502090000-0500", "20120912011230.1234+0100", "2015", "198002"};
+
+  private static final String[] SYSTEMS = {"LN", "LN", "LN", "SCT", "ICD10CM", "CVX", "RXNORM",
+      "HL70203", "UNKNOWN"};
+
+  // v2 table codes looked up for the display, a known code, an unknown code and unknown systems
+  private static final String[][] CODES = {{"v2-0001", "F"}, {"v2-0004", "I"}, {"v2-0203", "MR"},
+      {"v2-0005", "2106-3"}, {"v2-0078", "H"}, {"v2-0085", "F"}, {"v2-0002", "M"},
+      {"v2-0131", "C"}, {"v2-0001", "Z"}, {"v2-0136", "Y"}, {"UNKNOWN", "X"}};
+
+  // segments of the sample messages whose fields are resolved
+  private static final String[][] MESSAGE_SEGMENTS =
+      {{"ADT_A01", "PID", "PV1"}, {"ORU_R01", "PID", "OBX"}, {"VXU_V04", "PID", "RXA"}};
+
+  private final List<Object> fieldValues = new ArrayList<>();
+  private int next;
+
+  @Setup
+  public void setUp() throws HL7Exception {
+    UrlLookup.init();
+    TerminologyLookup.init();
+    HL7HapiParser parser = new HL7HapiParser();
+    for (String[] messageSegments : MESSAGE_SEGMENTS) {
+      Message message = parser.getParser().parse(SampleMessages.get(messageSegments[0])
+          .replace('\n', '\r'));
+      for (int i = 1; i < messageSegments.length; i++) {
+        addFieldValues(findSegment(message, messageSegments[i]));
+      }
+    }
+  }
+
+  @Benchmark
+  public String formatDate() {
+    return DateUtil.formatToDateTimeWithZone(DATES[nextIndex(DATES.length)]);
+  }
+
+  @Benchmark
+  public String getStringValue() {
+    return Hl7DataHandlerUtil.getStringValue(fieldValues.get(nextIndex(fieldValues.size())));
+  }
+
+  @Benchmark
+  public String getSystemUrl() {
+    return UrlLookup.getSystemUrl(SYSTEMS[nextIndex(SYSTEMS.length)]);
+  }
+
+  @Benchmark
+  public SimpleCode lookupCode() {
+    String[] code = CODES[nextIndex(CODES.length)];
+    return TerminologyLookup.lookup(code[0], code[1]);
+  }
+
+  // non empty fields of the segment, as the expressions get them: a single value, or the list of
+  // the repetitions
+  private void addFieldValues(Segment segment) throws HL7Exception {
+    for (int field = 1; field <= segment.numFields(); field++) {
+      Type[] repetitions = segment.getField(field);
+      if (repetitions.length == 1 && !repetitions[0].isEmpty()) {
+        fieldValues.add(repetitions[0]);
+      } else if (repetitions.length > 1) {
+        fieldValues.add(Arrays.asList(repetitions));
+      }
+    }
+  }
+
+  private static Segment findSegment(Structure structure, String name) throws HL7Exception {
+    if (structure instanceof Segment) {
+      return name.equals(structure.getName()) ? (Segment) structure : null;
+    }
+    ca.uhn.hl7v2.model.Group group = (ca.uhn.hl7v2.model.Group) structure;
+    for (String child : group.getNames()) {
+      for (Structure rep : group.getAll(child)) {
+        Segment found = findSegment(rep, name);
+        if (found != null) {
+          return found;
+        }
+      }
+    }
+    return null;
+  }
+
+  // index of the next input, also after the counter overflows
+  private int nextIndex(int count) {
+    return (next++ & Integer.MAX_VALUE) % count;
+  }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.api;
+
+/**
+ * Receives the metrics of the conversions. Implement this interface to publish the metrics to a
+ * monitoring system, all the methods default to doing nothing. Implementations are called
+ * concurrently by the converting threads and should not block.
+ * <p>
+ * Template names are the names of the resource templates of the message templates, for example
+ * Patient or Observation.
+ *
+ */
+public interface ConversionMetrics {
+
+  /** Metrics that are not recorded. */
+  ConversionMetrics NOOP = new ConversionMetrics() {};
+
+  /** Message type of the messages whose type cannot be read. */
+  String UNKNOWN_MESSAGE_TYPE = "UNKNOWN";
+
+  /**
+   * Records the time spent in a stage for one message.
+   *
+   * @param stage - conversion stage
+   * @param messageType - message type, for example ADT_A01
+   * @param nanos - time spent in the stage for the message, in nanoseconds
+   */
+  default void recordLatency(ConversionStage stage, String messageType, long nanos) {}
+
+  /**
+   * Counts a message that could not be converted.
+   *
+   * @param messageType - message type, read from the MSH segment of the message even if the
+   *        message cannot be parsed, {@link #UNKNOWN_MESSAGE_TYPE} if the MSH segment cannot be
+   *        read
+   */
+  default void incrementFailures(String messageType) {}
+
+  /**
+   * Counts a resource not generated because its evaluation failed or produced no value.
+   *
+   * @param messageType - message type
+   * @param resourceTemplate - name of the resource template
+   */
+  default void incrementSkippedResources(String messageType, String resourceTemplate) {}
+
+  /**
+   * Counts a required constraint of a template expression that was not satisfied.
+   *
+   * @param messageType - message type
+   * @param resourceTemplate - name of the resource template being generated
+   */
+  default void incrementConstraintFailures(String messageType, String resourceTemplate) {}
+
+}
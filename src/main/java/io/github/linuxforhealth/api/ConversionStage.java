@@ -0,0 +1,25 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.api;
+
+/**
+ * Stages of the conversion of a message, reported to {@link ConversionMetrics}.
+ *
+ */
+public enum ConversionStage {
+  /** Parsing of the HL7 message with HAPI. */
+  PARSE,
+  /** Extraction of the segments and segment groups each resource template is generated from. */
+  SEGMENT_EXTRACTION,
+  /** Evaluation of the resource templates, including the expressions evaluated later. */
+  RESOURCE_EVALUATION,
+  /** Building of the bundle entries from the evaluated resources. */
+  BUNDLE_ASSEMBLY,
+  /** Validation of the bundle, only when resource validation is enabled. */
+  VALIDATION,
+  /** Encoding of the bundle or of the NDJSON resources. */
+  ENCODING
+}
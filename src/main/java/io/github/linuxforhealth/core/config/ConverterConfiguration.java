@@ -7,6 +7,7 @@ package io.github.linuxforhealth.core.config;
 
 import java.time.DateTimeException;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -32,6 +33,19 @@ public class ConverterConfiguration {
   private static final String DEFAULT_ZONE_ID = "default.zoneid";
   private static final String CONFIG_PROPERTIES = "config.properties";
   private static final String ADDITIONAL_CONCEPT_MAPS_FILE = "additional.conceptmap.file";
+  private static final String STRUCTURE_DIAGNOSTICS_SAMPLE_RATE =
+      "structure.diagnostics.sample.rate";
+  private static final String STRUCTURE_DIAGNOSTICS_MESSAGE_TYPES =
+      "structure.diagnostics.message.types";
+  private static final String STRUCTURE_DIAGNOSTICS_MAX_CHARS = "structure.diagnostics.max.chars";
+  private static final int DEFAULT_STRUCTURE_DIAGNOSTICS_MAX_CHARS = 8192;
+  private static final String TEMPLATE_SNAPSHOT_FILE = "template.snapshot.file";
+  private static final String TEMPLATE_LOADING = "template.loading";
+  private static final String TEMPLATE_LOADING_LAZY = "lazy";
+  private static final String TEMPLATE_PRELOAD = "template.preload";
+  private static final String TEMPLATE_PROFILING = "template.profiling";
+  private static final String PARTIAL_PARSING = "partial.parsing";
+  private static final String ER7_DATA_EXTRACTION = "er7.data.extraction";
 
   private static ConverterConfiguration configuration;
 
@@ -40,6 +54,15 @@ public class ConverterConfiguration {
   private List<String> supportedMessageTemplates;
   private ZoneId zoneId;
   private String additionalConceptmapFile;
+  private double structureDiagnosticsSampleRate;
+  private List<String> structureDiagnosticsMessageTypes;
+  private int structureDiagnosticsMaxChars;
+  private String templateSnapshotFile;
+  private boolean lazyTemplateLoading;
+  private boolean templatePreload;
+  private boolean templateProfiling;
+  private boolean partialParsing;
+  private boolean er7DataExtraction;
   private ConverterConfiguration() {
     try {
       
@@ -84,6 +107,28 @@ public class ConverterConfiguration {
       // get additional concept map
       additionalConceptmapFile = config.getString(ADDITIONAL_CONCEPT_MAPS_FILE, null);
 
+      // message structure diagnostics, disabled by default
+      structureDiagnosticsSampleRate = config.getDouble(STRUCTURE_DIAGNOSTICS_SAMPLE_RATE, 0.0);
+      structureDiagnosticsMessageTypes =
+          config.getList(STRUCTURE_DIAGNOSTICS_MESSAGE_TYPES, new ArrayList<>()).stream()
+              .filter(v -> v != null && StringUtils.isNotBlank(v.toString()))
+              .map(v -> v.toString().trim()).collect(Collectors.toList());
+      structureDiagnosticsMaxChars = config.getInt(STRUCTURE_DIAGNOSTICS_MAX_CHARS,
+          DEFAULT_STRUCTURE_DIAGNOSTICS_MAX_CHARS);
+
+      // parsed templates snapshot, the bundled snapshot is used when not configured
+      templateSnapshotFile = config.getString(TEMPLATE_SNAPSHOT_FILE, null);
+
+      // message templates are loaded at startup unless lazy loading is configured
+      lazyTemplateLoading =
+          TEMPLATE_LOADING_LAZY.equalsIgnoreCase(config.getString(TEMPLATE_LOADING, "eager"));
+      templatePreload = config.getBoolean(TEMPLATE_PRELOAD, true);
+      templateProfiling = config.getBoolean(TEMPLATE_PROFILING, false);
+      // the segments the templates never read are not parsed unless disabled
+      partialParsing = config.getBoolean(PARTIAL_PARSING, true);
+      // the templates read the fields of the header segments from the message text if enabled
+      er7DataExtraction = config.getBoolean(ER7_DATA_EXTRACTION, false);
+
     } catch (ConfigurationException e) {
       throw new IllegalStateException("Cannot read configuration for resource location", e);
     }
@@ -105,7 +150,7 @@ public class ConverterConfiguration {
   }
 
 
-  public static ConverterConfiguration getInstance() {
+  public static synchronized ConverterConfiguration getInstance() {
     if (configuration == null) {
       configuration = new ConverterConfiguration();
     }
@@ -114,7 +159,7 @@ public class ConverterConfiguration {
 
 
 
-  public static void reset() {
+  public static synchronized void reset() {
     configuration = null;
   }
 
@@ -149,4 +194,49 @@ public class ConverterConfiguration {
   }
 
 
+  public double getStructureDiagnosticsSampleRate() {
+    return structureDiagnosticsSampleRate;
+  }
+
+
+  public List<String> getStructureDiagnosticsMessageTypes() {
+    return structureDiagnosticsMessageTypes;
+  }
+
+
+  public int getStructureDiagnosticsMaxChars() {
+    return structureDiagnosticsMaxChars;
+  }
+
+
+  public String getTemplateSnapshotFile() {
+    return templateSnapshotFile;
+  }
+
+
+  public boolean isLazyTemplateLoading() {
+    return lazyTemplateLoading;
+  }
+
+
+  public boolean isTemplatePreload() {
+    return templatePreload;
+  }
+
+
+  public boolean isTemplateProfiling() {
+    return templateProfiling;
+  }
+
+
+  public boolean isPartialParsing() {
+    return partialParsing;
+  }
+
+
+  public boolean isER7DataExtraction() {
+    return er7DataExtraction;
+  }
+
+
 }
@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.jexl3.JexlBuilder;
 import org.apache.commons.jexl3.JexlContext;
 import org.apache.commons.jexl3.JexlEngine;
@@ -32,7 +33,8 @@ public final class JexlEngineUtil {
   private JexlEngine jexl;
   private Map<String, Object> functions = new HashMap<>();
 
-  private Map<String, JexlExpression> exprCache = new HashMap<String, JexlExpression>();
+  // shared by all the threads using this engine
+  private Map<String, JexlExpression> exprCache = new ConcurrentHashMap<>();
 
   public JexlEngineUtil() {
     jexl = new JexlBuilder().silent(false).debug(true).strict(true).create();
@@ -68,11 +70,7 @@ public final class JexlEngineUtil {
     Map<String, Object> localContext = new HashMap<>(functions);
     localContext.putAll(context);
 
-    JexlExpression exp = exprCache.get(trimedJexlExp);
-    if(exp == null) {
-    	exp = jexl.createExpression(trimedJexlExp);
-    	exprCache.put(trimedJexlExp, exp);
-    }
+    JexlExpression exp = exprCache.computeIfAbsent(trimedJexlExp, jexl::createExpression);
     
     JexlContext jc = new MapContext();
     localContext.entrySet().forEach(e -> jc.set(e.getKey(), e.getValue()));
@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.core.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import io.github.linuxforhealth.api.ConversionMetrics;
+import io.github.linuxforhealth.api.ConversionStage;
+
+/**
+ * Reference implementation of {@link ConversionMetrics} keeping the metrics in memory: a
+ * {@link LatencyHistogram} per stage and message type, and the counters by message type or resource
+ * template. Read the metrics with the getters or as text with {@link #report()}.
+ *
+ */
+public class HistogramConversionMetrics implements ConversionMetrics {
+
+  private final Map<ConversionStage, Map<String, LatencyHistogram>> latencies =
+      new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> skippedResources = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> constraintFailures = new ConcurrentHashMap<>();
+
+  @Override
+  public void recordLatency(ConversionStage stage, String messageType, long nanos) {
+    latencies.computeIfAbsent(stage, k -> new ConcurrentHashMap<>())
+        .computeIfAbsent(messageType, k -> new LatencyHistogram()).record(nanos);
+  }
+
+  @Override
+  public void incrementFailures(String messageType) {
+    increment(failures, messageType);
+  }
+
+  @Override
+  public void incrementSkippedResources(String messageType, String resourceTemplate) {
+    increment(skippedResources, resourceTemplate);
+  }
+
+  @Override
+  public void incrementConstraintFailures(String messageType, String resourceTemplate) {
+    increment(constraintFailures, resourceTemplate);
+  }
+
+  /**
+   * @param stage - conversion stage
+   * @param messageType - message type, for example ADT_A01
+   * @return the latencies of the stage for the message type, null if none were recorded
+   */
+  public LatencyHistogram getLatency(ConversionStage stage, String messageType) {
+    Map<String, LatencyHistogram> byType = latencies.get(stage);
+    return byType != null ? byType.get(messageType) : null;
+  }
+
+  /**
+   * @return number of messages that could not be converted, by message type
+   */
+  public Map<String, Long> getFailures() {
+    return snapshot(failures);
+  }
+
+  /**
+   * @return number of resources not generated, by resource template
+   */
+  public Map<String, Long> getSkippedResources() {
+    return snapshot(skippedResources);
+  }
+
+  /**
+   * @return number of required constraints not satisfied, by resource template
+   */
+  public Map<String, Long> getConstraintFailures() {
+    return snapshot(constraintFailures);
+  }
+
+  /**
+   * @return the metrics as text, with the count, percentiles and maximum in milliseconds of each
+   *         stage by message type, followed by the counters
+   */
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    for (ConversionStage stage : ConversionStage.values()) {
+      Map<String, LatencyHistogram> byType = latencies.get(stage);
+      if (byType == null) {
+        continue;
+      }
+      for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(byType).entrySet()) {
+        LatencyHistogram h = e.getValue();
+        report.append(String.format("%-20s %-12s count=%d p50=%.3f p90=%.3f p99=%.3f max=%.3f%n",
+            stage, e.getKey(), h.getCount(), toMillis(h.getValueAtPercentile(50)),
+            toMillis(h.getValueAtPercentile(90)), toMillis(h.getValueAtPercentile(99)),
+            toMillis(h.getMax())));
+      }
+    }
+    appendCounters(report, "failures", getFailures());
+    appendCounters(report, "skipped resources", getSkippedResources());
+    appendCounters(report, "constraint failures", getConstraintFailures());
+    return report.toString();
+  }
+
+  private static void appendCounters(StringBuilder report, String name,
+      Map<String, Long> counters) {
+    counters.forEach((key, value) -> report.append(String.format("%-20s %-12s %d%n", name, key,
+        value)));
+  }
+
+  private static void increment(Map<String, LongAdder> counters, String key) {
+    counters.computeIfAbsent(String.valueOf(key), k -> new LongAdder()).increment();
+  }
+
+  private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+    Map<String, Long> values = new TreeMap<>();
+    counters.forEach((key, value) -> values.put(key, value.sum()));
+    return Collections.unmodifiableMap(values);
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+}
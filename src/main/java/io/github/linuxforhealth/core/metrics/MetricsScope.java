@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.core.metrics;
+
+import com.google.common.base.Preconditions;
+import io.github.linuxforhealth.api.ConversionMetrics;
+import io.github.linuxforhealth.api.ConversionStage;
+
+/**
+ * Metrics of the message being converted by the current thread. The time spent in each stage is
+ * summed while the message is converted and reported once per stage when the scope is closed, so
+ * that stages entered once per resource, such as the resource evaluation, are reported as one
+ * latency for the message.
+ * <p>
+ * The static methods record into the scope of the current thread and do nothing when no scope is
+ * open, they can be called from any code of the conversion without passing the metrics along.
+ *
+ */
+public final class MetricsScope implements AutoCloseable {
+
+  private static final ThreadLocal<MetricsScope> CURRENT = new ThreadLocal<>();
+  private static final long NOT_TIMED = Long.MIN_VALUE;
+  private static final MetricsScope INERT = new MetricsScope(ConversionMetrics.NOOP, null, null);
+
+  private final ConversionMetrics metrics;
+  private final String messageType;
+  private final MetricsScope previous;
+  private final long[] stageNanos = new long[ConversionStage.values().length];
+  private String resourceTemplate;
+
+  private MetricsScope(ConversionMetrics metrics, String messageType, MetricsScope previous) {
+    this.metrics = metrics;
+    this.messageType = messageType;
+    this.previous = previous;
+  }
+
+  /**
+   * Opens the scope of a message on the current thread, until it is closed.
+   *
+   * @param metrics - metrics the latencies and counters are reported to
+   * @param messageType - message type, for example ADT_A01
+   * @return {@link MetricsScope}, that does nothing for {@link ConversionMetrics#NOOP}
+   */
+  public static MetricsScope open(ConversionMetrics metrics, String messageType) {
+    Preconditions.checkArgument(metrics != null, "metrics cannot be null");
+    if (metrics == ConversionMetrics.NOOP) {
+      return INERT;
+    }
+    MetricsScope scope = new MetricsScope(metrics, messageType, CURRENT.get());
+    CURRENT.set(scope);
+    return scope;
+  }
+
+  /**
+   * @return start time to pass to {@link #stopTimer(ConversionStage, long)}, without reading the
+   *         clock when no scope is open
+   */
+  public static long startTimer() {
+    return CURRENT.get() != null ? System.nanoTime() : NOT_TIMED;
+  }
+
+  /**
+   * Adds the time elapsed since the start time to the stage of the current scope.
+   *
+   * @param stage - conversion stage
+   * @param start - value returned by {@link #startTimer()}
+   */
+  public static void stopTimer(ConversionStage stage, long start) {
+    if (start == NOT_TIMED) {
+      return;
+    }
+    MetricsScope scope = CURRENT.get();
+    if (scope != null) {
+      scope.addLatency(stage, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Sets the resource template being generated, the counters are recorded for it.
+   *
+   * @param name - name of the resource template
+   */
+  public static void setResourceTemplate(String name) {
+    MetricsScope scope = CURRENT.get();
+    if (scope != null) {
+      scope.resourceTemplate = name;
+    }
+  }
+
+  /**
+   * Counts a resource of the current resource template that was not generated.
+   */
+  public static void recordSkippedResource() {
+    MetricsScope scope = CURRENT.get();
+    if (scope != null) {
+      scope.metrics.incrementSkippedResources(scope.messageType, scope.resourceTemplate);
+    }
+  }
+
+  /**
+   * Counts a required constraint not satisfied in the current resource template.
+   */
+  public static void recordConstraintFailure() {
+    MetricsScope scope = CURRENT.get();
+    if (scope != null) {
+      scope.metrics.incrementConstraintFailures(scope.messageType, scope.resourceTemplate);
+    }
+  }
+
+  /**
+   * Adds time spent in a stage, for stages timed before the scope was opened.
+   *
+   * @param stage - conversion stage
+   * @param nanos - time spent, in nanoseconds
+   */
+  public void addLatency(ConversionStage stage, long nanos) {
+    if (this != INERT) {
+      stageNanos[stage.ordinal()] += nanos;
+    }
+  }
+
+  /**
+   * Reports the time spent in each stage entered and restores the scope that was open before.
+   */
+  @Override
+  public void close() {
+    if (this == INERT) {
+      return;
+    }
+    if (previous != null) {
+      CURRENT.set(previous);
+    } else {
+      CURRENT.remove();
+    }
+    ConversionStage[] stages = ConversionStage.values();
+    for (int i = 0; i < stages.length; i++) {
+      if (stageNanos[i] > 0) {
+        metrics.recordLatency(stages[i], messageType, stageNanos[i]);
+      }
+    }
+  }
+
+}
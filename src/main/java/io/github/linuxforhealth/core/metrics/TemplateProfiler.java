@@ -0,0 +1,256 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import com.google.common.base.Preconditions;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+
+/**
+ * Aggregates, across all the converted messages, the evaluation time, number of evaluations and
+ * allocated bytes of every template expression, by template path and expression name, to find the
+ * expressions that dominate the conversion of a message type.
+ * <p>
+ * The time and bytes are recorded both in total, including the nested expressions and resources
+ * the expression evaluates, and as self values, excluding them. The report ranks the expressions by
+ * self time. Expressions of the common template (resource/Common) are reported once for all the
+ * resources they are added to.
+ * <p>
+ * Profiling is disabled by default, enabled with the template.profiling setting or
+ * {@link #setEnabled(boolean)}. When disabled, an evaluation only reads a volatile flag. Allocated
+ * bytes are only recorded when the JVM supports thread allocation accounting.
+ *
+ */
+public final class TemplateProfiler {
+
+  public static final String UNKNOWN_TEMPLATE = "unknown";
+  private static final int NOT_PROFILED = -1;
+
+  private static volatile boolean enabled =
+      ConverterConfiguration.getInstance().isTemplateProfiling();
+  private static final Map<String, Map<String, Stats>> STATS = new ConcurrentHashMap<>();
+  private static final ThreadLocal<Frames> FRAMES = ThreadLocal.withInitial(Frames::new);
+  private static final com.sun.management.ThreadMXBean ALLOCATIONS = getAllocationBean();
+
+  private TemplateProfiler() {}
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enables or disables the profiling, the statistics already recorded are kept.
+   *
+   * @param enable - true to record the expression evaluations
+   */
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+   * Starts profiling an expression evaluation on the current thread.
+   *
+   * @return frame to pass to {@link #exit(int, String, String)}
+   */
+  public static int enter() {
+    if (!enabled) {
+      return NOT_PROFILED;
+    }
+    return FRAMES.get().push(System.nanoTime(), allocatedBytes());
+  }
+
+  /**
+   * Records the expression evaluation started by {@link #enter()}.
+   *
+   * @param frame - value returned by {@link #enter()}
+   * @param templatePath - path of the template the expression is defined in, for example
+   *        resource/Observation
+   * @param expressionName - name of the expression in the template
+   */
+  public static void exit(int frame, String templatePath, String expressionName) {
+    if (frame == NOT_PROFILED) {
+      return;
+    }
+    long nanos = System.nanoTime();
+    long bytes = allocatedBytes();
+    Frames frames = FRAMES.get();
+    frames.pop(frame);
+    long totalNanos = nanos - frames.startNanos[frame];
+    long totalBytes = bytes - frames.startBytes[frame];
+    long selfNanos = totalNanos - frames.childNanos[frame];
+    long selfBytes = totalBytes - frames.childBytes[frame];
+    if (frame > 0) {
+      frames.childNanos[frame - 1] += totalNanos;
+      frames.childBytes[frame - 1] += totalBytes;
+    }
+    STATS
+        .computeIfAbsent(templatePath != null ? templatePath : UNKNOWN_TEMPLATE,
+            k -> new ConcurrentHashMap<>())
+        .computeIfAbsent(String.valueOf(expressionName), k -> new Stats())
+        .add(totalNanos, selfNanos, totalBytes, selfBytes);
+  }
+
+  /**
+   * @return the statistics of all the expressions evaluated, ranked by self time
+   */
+  public static List<ExpressionProfile> getProfiles() {
+    List<ExpressionProfile> profiles = new ArrayList<>();
+    STATS.forEach((template, byName) -> byName
+        .forEach((name, stats) -> profiles.add(new ExpressionProfile(template, name, stats))));
+    profiles.sort(Comparator.comparingLong(ExpressionProfile::getSelfNanos).reversed());
+    return profiles;
+  }
+
+  /**
+   * Returns the expressions with the highest self time as text, one line per expression with its
+   * template path, name, evaluations, self and total time in milliseconds and self allocated
+   * bytes.
+   *
+   * @param limit - maximum number of expressions reported
+   * @return report
+   */
+  public static String report(int limit) {
+    Preconditions.checkArgument(limit > 0, "limit should be greater than 0");
+    StringBuilder report = new StringBuilder(String.format("%-36s %-24s %10s %12s %12s %14s%n",
+        "template", "expression", "count", "self ms", "total ms", "self bytes"));
+    getProfiles().stream().limit(limit)
+        .forEach(p -> report.append(String.format("%-36s %-24s %10d %12.3f %12.3f %14d%n",
+            p.getTemplatePath(), p.getExpressionName(), p.getCount(), p.getSelfNanos() / 1e6,
+            p.getTotalNanos() / 1e6, p.getSelfBytes())));
+    return report.toString();
+  }
+
+  /**
+   * Clears the statistics recorded so far.
+   */
+  public static void reset() {
+    STATS.clear();
+  }
+
+  private static long allocatedBytes() {
+    return ALLOCATIONS != null ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId())
+        : 0;
+  }
+
+  private static com.sun.management.ThreadMXBean getAllocationBean() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+      if (allocations.isThreadAllocatedMemorySupported()
+          && allocations.isThreadAllocatedMemoryEnabled()) {
+        return allocations;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Statistics of one expression.
+   */
+  public static class ExpressionProfile {
+    private final String templatePath;
+    private final String expressionName;
+    private final long count;
+    private final long totalNanos;
+    private final long selfNanos;
+    private final long totalBytes;
+    private final long selfBytes;
+
+    private ExpressionProfile(String templatePath, String expressionName, Stats stats) {
+      this.templatePath = templatePath;
+      this.expressionName = expressionName;
+      this.count = stats.count.sum();
+      this.totalNanos = stats.totalNanos.sum();
+      this.selfNanos = stats.selfNanos.sum();
+      this.totalBytes = stats.totalBytes.sum();
+      this.selfBytes = stats.selfBytes.sum();
+    }
+
+    public String getTemplatePath() {
+      return templatePath;
+    }
+
+    public String getExpressionName() {
+      return expressionName;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    public long getSelfNanos() {
+      return selfNanos;
+    }
+
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    public long getSelfBytes() {
+      return selfBytes;
+    }
+  }
+
+  private static class Stats {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder selfNanos = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder selfBytes = new LongAdder();
+
+    private void add(long total, long self, long totalAllocated, long selfAllocated) {
+      count.increment();
+      totalNanos.add(total);
+      selfNanos.add(self);
+      totalBytes.add(totalAllocated);
+      selfBytes.add(selfAllocated);
+    }
+  }
+
+  /**
+   * Expression evaluations in progress on a thread, innermost last.
+   */
+  private static class Frames {
+    private long[] startNanos = new long[16];
+    private long[] startBytes = new long[16];
+    private long[] childNanos = new long[16];
+    private long[] childBytes = new long[16];
+    private int depth;
+
+    private int push(long nanos, long bytes) {
+      if (depth == startNanos.length) {
+        int length = depth * 2;
+        startNanos = Arrays.copyOf(startNanos, length);
+        startBytes = Arrays.copyOf(startBytes, length);
+        childNanos = Arrays.copyOf(childNanos, length);
+        childBytes = Arrays.copyOf(childBytes, length);
+      }
+      startNanos[depth] = nanos;
+      startBytes[depth] = bytes;
+      childNanos[depth] = 0;
+      childBytes[depth] = 0;
+      return depth++;
+    }
+
+    private void pop(int frame) {
+      // frames above are dropped if an evaluation did not exit
+      depth = frame;
+    }
+  }
+
+}
@@ -20,31 +20,37 @@ import io.github.linuxforhealth.hl7.resource.ResourceReader;
  */
 public class Hl7v2Mapping {
   private Map<String, Map<String, String>> mapping;
-  private static Hl7v2Mapping hl7Mapping;
-  private Hl7v2Mapping() {
+
+  private Hl7v2Mapping(ResourceReader reader) {
     try {
-      mapping = loadV2Mappings();
+      mapping = loadV2Mappings(reader);
     } catch (IOException e) {
       throw new IllegalStateException("Cannot initialize mapping", e);
     }
   }
 
-  private static Map<String, Map<String, String>> loadV2Mappings() throws IOException {
+  private static Map<String, Map<String, String>> loadV2Mappings(ResourceReader reader)
+      throws IOException {
 
     TypeReference<Map<String, Map<String, String>>> typeRef =
         new TypeReference<Map<String, Map<String, String>>>() {};
-    String content =
-        ResourceReader.getInstance().getResourceInHl7Folder(Constants.V2_TO_FHIR_MAPPING_PATH);
+    String content = reader.getResourceInHl7Folder(Constants.V2_TO_FHIR_MAPPING_PATH);
     return ObjectMapperUtil.getYAMLInstance()
         .readValue(content, typeRef);
   }
 
 
+  // the mapping is loaded once per resource reader, so it is reloaded with the templates
+  private static Hl7v2Mapping getInstance() {
+    return ResourceReader.getInstance().getComponent(Hl7v2Mapping.class, Hl7v2Mapping::new);
+  }
+
+  public static void init() {
+    getInstance();
+  }
+
   public static Map<String, String> getMapping(String fhirConceptName) {
-    if (hl7Mapping == null) {
-      hl7Mapping = new Hl7v2Mapping();
-    }
-    return hl7Mapping.mapping.get(fhirConceptName);
+    return getInstance().mapping.get(fhirConceptName);
   }
 
 }
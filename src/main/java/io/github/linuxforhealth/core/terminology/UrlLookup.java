@@ -10,9 +10,11 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.github.linuxforhealth.core.Constants;
 import io.github.linuxforhealth.core.ObjectMapperUtil;
 import io.github.linuxforhealth.core.config.ConverterConfiguration;
@@ -26,7 +28,6 @@ import io.github.linuxforhealth.hl7.resource.ResourceReader;
  */
 public class UrlLookup {
 
-    static Map<String, Map<String, CodingSystem>> urlMaps = new HashMap<>(); // key is urlType
     static Map<String, String> urlMappingPaths; // key=urlType, value=resource mapping path
     static {
         urlMappingPaths = new HashMap<>();
@@ -79,7 +80,7 @@ public class UrlLookup {
      * Reloads the urls from the file.
      */
     public static void reset() {
-        urlMaps.clear();
+        urlMaps().clear();
         getUrlMap(Constants.CODING_SYSTEM_MAPPING);
         getUrlMap(Constants.EXTENSION_URL_MAPPING);
     }
@@ -91,11 +92,12 @@ public class UrlLookup {
     }
 
     public static void reset(String urlType) {
-        urlMaps.remove(urlType);
+        urlMaps().remove(urlType);
         getUrlMap(urlType);
     }
 
     private static Map<String, CodingSystem> getUrlMap(String urlKey) {
+        Map<String, Map<String, CodingSystem>> urlMaps = urlMaps();
         if (urlMaps.get(urlKey) == null) {
             Map<String, CodingSystem> urls = loadFromFile(urlKey);
             urls.putAll(loadAdditionalFromFile());
@@ -104,16 +106,26 @@ public class UrlLookup {
         return urlMaps.get(urlKey);
     }
 
+    // the urls are loaded from the resources of the current reader and reloaded with them
+    private static Map<String, Map<String, CodingSystem>> urlMaps() {
+        return ResourceReader.getInstance().getComponent(UrlMaps.class, reader -> new UrlMaps()).maps;
+    }
+
+    private static class UrlMaps {
+        private final Map<String, Map<String, CodingSystem>> maps = new ConcurrentHashMap<>(); // key is urlType
+    }
+
     // ConverterConfiguration
     private static Map<String, CodingSystem> loadFromFile(String urlKey) {
         TypeReference<List<CodingSystem>> typeRef = new TypeReference<List<CodingSystem>>() {
         };
         try {
-            String content = ResourceReader.getInstance().getResourceInHl7Folder(urlMappingPaths.get(urlKey));
-            List<CodingSystem> systems = ObjectMapperUtil.getYAMLInstance().readValue(content, typeRef);
+            JsonNode content = ResourceReader.getInstance()
+                    .getTemplateTree(Constants.HL7_BASE_PATH + urlMappingPaths.get(urlKey));
+            List<CodingSystem> systems = ObjectMapperUtil.getYAMLInstance().convertValue(content, typeRef);
             return systems.stream().collect(Collectors.toMap(CodingSystem::getId, codeSystem -> codeSystem));
 
-        } catch (IOException e) {
+        } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Cannot read extension/ExtensionUrlMapping.yml", e);
         }
     }
@@ -6,11 +6,17 @@
 package io.github.linuxforhealth.fhir;
 
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ca.uhn.fhir.context.FhirContext;
@@ -20,14 +26,21 @@ import ca.uhn.fhir.validation.IValidatorModule;
 import ca.uhn.fhir.validation.ResultSeverityEnum;
 import ca.uhn.fhir.validation.SingleValidationMessage;
 import ca.uhn.fhir.validation.ValidationResult;
+import io.github.linuxforhealth.api.ConversionStage;
 import io.github.linuxforhealth.core.Constants;
+import io.github.linuxforhealth.core.metrics.MetricsScope;
 
 public class FHIRContext {
   private static final Logger LOGGER = LoggerFactory.getLogger(FHIRContext.class);
 
   private static final FhirContext CTX = FhirContext.forR4();
+  private static final FHIRElementMetadata METADATA = new FHIRElementMetadata(CTX);
+  private static final FHIRResourceBinder BINDER = new FHIRResourceBinder(METADATA);
+  private static final FHIRJsonEmitter EMITTER = new FHIRJsonEmitter(METADATA);
   private IParser parser;
+  private IParser ndjsonParser;
   private static FhirValidator validator;
+  private boolean prettyPrint;
   private boolean validateResource;
 
   /**
@@ -36,6 +49,8 @@ public class FHIRContext {
   public FHIRContext(boolean isPrettyPrint, boolean validateResource) {
     parser = CTX.newJsonParser();
     parser.setPrettyPrint(isPrettyPrint);
+    this.prettyPrint = isPrettyPrint;
+    this.ndjsonParser = isPrettyPrint ? CTX.newJsonParser() : parser;
     this.validateResource = validateResource;
 
   }
@@ -54,6 +69,32 @@ public class FHIRContext {
     return CTX;
   }
 
+  /**
+   * Shared binder creating FHIR resources directly from resolved resource values.
+   * 
+   * @return {@link FHIRResourceBinder}
+   */
+  public FHIRResourceBinder getResourceBinder() {
+    return BINDER;
+  }
+
+  /**
+   * Shared emitter writing FHIR bundle JSON directly from resolved resource values.
+   * 
+   * @return {@link FHIRJsonEmitter}
+   */
+  public FHIRJsonEmitter getJsonEmitter() {
+    return EMITTER;
+  }
+
+  public boolean isPrettyPrint() {
+    return prettyPrint;
+  }
+
+  public boolean isValidateResource() {
+    return validateResource;
+  }
+
 
 
   public static FhirValidator getValidator() {
@@ -64,8 +105,75 @@ public class FHIRContext {
 
 
   public String encodeResourceToString(Bundle bundle) {
+    validate(bundle);
+    long start = MetricsScope.startTimer();
+    String json = this.parser.encodeResourceToString(bundle);
+    MetricsScope.stopTimer(ConversionStage.ENCODING, start);
+    return json;
+  }
+
+  /**
+   * Encodes the bundle onto the writer, without building the JSON representation in memory. The
+   * writer is not closed.
+   * 
+   * @param bundle
+   * @param writer
+   * @throws IOException - if the writer fails
+   * @throws IllegalArgumentException - if validation is enabled and the bundle is not valid
+   */
+  public void encodeResourceToWriter(Bundle bundle, Writer writer) throws IOException {
+    validate(bundle);
+    long start = MetricsScope.startTimer();
+    this.parser.encodeResourceToWriter(bundle, writer);
+    MetricsScope.stopTimer(ConversionStage.ENCODING, start);
+  }
+
+  /**
+   * Encodes the resource as compact JSON on a single line, whatever the pretty print setting of this
+   * context.
+   * 
+   * @param resource
+   * @return JSON of the resource without line breaks
+   */
+  public String encodeResourceToNDJSON(Resource resource) {
+    long start = MetricsScope.startTimer();
+    String json = this.ndjsonParser.encodeResourceToString(resource);
+    MetricsScope.stopTimer(ConversionStage.ENCODING, start);
+    return json;
+  }
+
+  /**
+   * Encodes the resources of the bundle entries as compact JSON, grouped by resource type in entry
+   * order.
+   * 
+   * @param bundle
+   * @return JSON of the resources by resource type
+   * @throws IllegalArgumentException - if validation is enabled and the bundle is not valid
+   */
+  public Map<String, List<String>> encodeEntriesToNDJSON(Bundle bundle) {
+    validate(bundle);
+    Map<String, List<String>> resources = new LinkedHashMap<>();
+    for (BundleEntryComponent entry : bundle.getEntry()) {
+      Resource resource = entry.getResource();
+      if (resource != null) {
+        resources.computeIfAbsent(resource.fhirType(), k -> new ArrayList<>())
+            .add(encodeResourceToNDJSON(resource));
+      }
+    }
+    return resources;
+  }
+
+  /**
+   * Validates the bundle if resource validation is enabled for this context.
+   * 
+   * @param bundle
+   * @throws IllegalArgumentException - if validation issues of severity error or fatal are found
+   */
+  public void validate(Bundle bundle) {
     if (validateResource) {
+    long start = MetricsScope.startTimer();
     ValidationResult result = getValidator().validateWithResult(bundle);
+    MetricsScope.stopTimer(ConversionStage.VALIDATION, start);
     // The result object now contains the validation results
       List<String> validationIssues = new ArrayList<>();
     for (SingleValidationMessage next : result.getMessages()) {
@@ -86,10 +194,9 @@ public class FHIRContext {
 
       }
     }
-    return this.parser.encodeResourceToString(bundle);
   }
 
-  private static void initValidator() {
+  private static synchronized void initValidator() {
     if (validator == null) {
       validator = CTX.newValidator();
       // Create a validation module and register it
@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.fhir;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import com.google.common.base.Preconditions;
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import io.github.linuxforhealth.core.terminology.SimpleCode;
+
+/**
+ * Cache of the FHIR element metadata used to map the resolved resource values, keyed by JSON
+ * element name, to the HAPI runtime definitions. The lookups, including the choice type names like
+ * valueQuantity, are resolved once per element type and shared by all the threads.
+ *
+ */
+class FHIRElementMetadata {
+  private static final String MODIFIER_EXTENSION = "modifierExtension";
+
+  private final FhirContext ctx;
+  // element type -> JSON element name -> binding, empty if the name is not a supported element
+  private final Map<Class<?>, Map<String, Optional<ChildBinding>>> bindings =
+      new ConcurrentHashMap<>();
+
+  FHIRElementMetadata(FhirContext ctx) {
+    Preconditions.checkArgument(ctx != null, "ctx cannot be null");
+    this.ctx = ctx;
+  }
+
+  FhirContext getCtx() {
+    return ctx;
+  }
+
+  /**
+   * Returns the binding of the JSON element name in the composite element, null if the name is not
+   * an element of the composite.
+   */
+  ChildBinding getBinding(BaseRuntimeElementCompositeDefinition<?> def, String name) {
+    return bindings.computeIfAbsent(def.getImplementingClass(), k -> new ConcurrentHashMap<>())
+        .computeIfAbsent(name, n -> resolveBinding(def, n)).orElse(null);
+  }
+
+  /**
+   * Text of a scalar value, identical to the text the JSON parser would read after the value is
+   * serialized by Jackson.
+   *
+   * @return the text, null if the value is not a supported scalar
+   */
+  static String toText(Object value) {
+    if (value instanceof String) {
+      return (String) value;
+    } else if (value instanceof UUID || value instanceof Boolean || value instanceof Integer
+        || value instanceof Long || value instanceof Short || value instanceof BigInteger
+        || value instanceof BigDecimal) {
+      return value.toString();
+    } else if (value instanceof Double || value instanceof Float) {
+      String text = value.toString();
+      // exponent notation and non finite values are normalized differently by the parser
+      if (text.indexOf('E') < 0 && !text.equals("NaN") && !text.contains("Infinity")) {
+        return text;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Same properties as written by Jackson for the code.
+   */
+  static Map<String, Object> toMap(SimpleCode code) {
+    Map<String, Object> values = new HashMap<>();
+    values.put("system", code.getSystem());
+    values.put("code", code.getCode());
+    values.put("display", code.getDisplay());
+    values.put("version", code.getVersion());
+    return values;
+  }
+
+  static boolean isEmptyString(Object value) {
+    return value instanceof String && ((String) value).isEmpty();
+  }
+
+  private static Optional<ChildBinding> resolveBinding(
+      BaseRuntimeElementCompositeDefinition<?> def, String name) {
+    // the HAPI extension child does not resolve the modifierExtension element type
+    if (MODIFIER_EXTENSION.equals(name)) {
+      return Optional.empty();
+    }
+    BaseRuntimeChildDefinition child = def.getChildByName(name);
+    if (child == null) {
+      return Optional.empty();
+    }
+    BaseRuntimeElementDefinition<?> element = child.getChildByName(name);
+    if (element == null) {
+      return Optional.empty();
+    }
+    return Optional.of(new ChildBinding(child, element, def.getChildren().indexOf(child)));
+  }
+
+  /**
+   * Child definition and element type of a JSON element name, with the position of the child in
+   * the FHIR element order.
+   */
+  static class ChildBinding {
+    private final BaseRuntimeChildDefinition child;
+    private final BaseRuntimeElementDefinition<?> element;
+    private final int order;
+
+    private ChildBinding(BaseRuntimeChildDefinition child, BaseRuntimeElementDefinition<?> element,
+        int order) {
+      this.child = child;
+      this.element = element;
+      this.order = order;
+    }
+
+    BaseRuntimeChildDefinition getChild() {
+      return child;
+    }
+
+    BaseRuntimeElementDefinition<?> getElement() {
+      return element;
+    }
+
+    int getOrder() {
+      return order;
+    }
+
+    boolean isRepeatable() {
+      return child.getMax() != 1;
+    }
+  }
+
+}
@@ -0,0 +1,479 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.fhir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseBooleanDatatype;
+import org.hl7.fhir.instance.model.api.IBaseDecimalDatatype;
+import org.hl7.fhir.instance.model.api.IBaseIntegerDatatype;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Resource;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.core.util.Separators;
+import com.google.common.base.Preconditions;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import io.github.linuxforhealth.core.terminology.SimpleCode;
+import io.github.linuxforhealth.fhir.FHIRElementMetadata.ChildBinding;
+
+/**
+ * Writes the FHIR bundle JSON directly from the resolved resource values, the
+ * <code>Map&lt;String, Object&gt;</code> produced by the resource templates, with a streaming
+ * Jackson generator. The HAPI model objects are not built and the HAPI encoder is not involved.
+ * <p>
+ * The output is the same as the HAPI JSON encoding of the bundle built by the
+ * {@link FHIRResourceBinder}: the elements are written in FHIR definition order, empty elements
+ * are omitted, integers, decimals and booleans are written as JSON literals and the pretty printed
+ * layout is the one of the HAPI parser. The scalar values are still checked and normalized with the
+ * HAPI primitive types, so a value that the target type rejects is not written as is.
+ * <p>
+ * Resources are converted in two steps. {@link #prepare(Class, Map)} checks and orders the values
+ * and returns null for the constructs that cannot be written directly, the same ones as the
+ * {@link FHIRResourceBinder}, in which case the caller should fall back to the HAPI encoding.
+ * {@link #writeBundle(Bundle, List, Writer, boolean)} then writes the prepared resources.
+ *
+ */
+public class FHIRJsonEmitter {
+  private static final String RESOURCE_TYPE = "resourceType";
+  private static final String ID = "id";
+  private static final String URL = "url";
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final FHIRElementMetadata metadata;
+
+  public FHIRJsonEmitter(FhirContext ctx) {
+    this(new FHIRElementMetadata(ctx));
+  }
+
+  FHIRJsonEmitter(FHIRElementMetadata metadata) {
+    Preconditions.checkArgument(metadata != null, "metadata cannot be null");
+    this.metadata = metadata;
+  }
+
+  /**
+   * Checks, normalizes and orders the resolved values of a resource.
+   *
+   * @param resourceClass
+   * @param values - resolved resource values, with the same structure as FHIR JSON
+   * @return the prepared resource, or null if the values contain constructs that cannot be written
+   *         directly
+   */
+  public PreparedResource prepare(Class<? extends Resource> resourceClass,
+      Map<String, Object> values) {
+    Preconditions.checkArgument(resourceClass != null, "resourceClass cannot be null");
+    Preconditions.checkArgument(values != null, "values cannot be null");
+    RuntimeResourceDefinition def = metadata.getCtx().getResourceDefinition(resourceClass);
+    // the JSON parser rejects resources without a matching resourceType
+    if (!def.getName().equals(values.get(RESOURCE_TYPE))) {
+      return null;
+    }
+    try {
+      CompositeNode root = prepareComposite(def, values, true);
+      String fullUrl = null;
+      PrimitiveNode id = root.getId();
+      if (id != null) {
+        // same qualified id as set by the JSON parser, for example Patient/123
+        if (id.text.indexOf('/') >= 0) {
+          return null;
+        }
+        fullUrl = def.getName() + "/" + id.text;
+      }
+      return new PreparedResource(def.getName(), fullUrl, root);
+    } catch (UnsupportedValueException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the bundle with the prepared resources as entries. The id, meta.lastUpdated and type of
+   * the bundle are taken from the header, its entries are ignored. The writer is flushed but not
+   * closed.
+   *
+   * @param header - bundle providing the id, last updated and type
+   * @param resources - resources prepared by {@link #prepare(Class, Map)}
+   * @param writer
+   * @param prettyPrint
+   * @throws IOException - if the writer fails
+   */
+  public void writeBundle(Bundle header, List<PreparedResource> resources, Writer writer,
+      boolean prettyPrint) throws IOException {
+    Preconditions.checkArgument(header != null, "header cannot be null");
+    Preconditions.checkArgument(resources != null, "resources cannot be null");
+    Preconditions.checkArgument(writer != null, "writer cannot be null");
+
+    JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    if (prettyPrint) {
+      generator.setPrettyPrinter(newPrettyPrinter());
+    }
+    generator.writeStartObject();
+    generator.writeStringField(RESOURCE_TYPE, "Bundle");
+    if (header.getIdElement().hasIdPart()) {
+      generator.writeStringField(ID, header.getIdElement().getIdPart());
+    }
+    if (header.getMeta().hasLastUpdated()) {
+      generator.writeObjectFieldStart("meta");
+      generator.writeStringField("lastUpdated",
+          header.getMeta().getLastUpdatedElement().getValueAsString());
+      generator.writeEndObject();
+    }
+    if (header.hasType()) {
+      generator.writeStringField("type", header.getTypeElement().getValueAsString());
+    }
+    if (!resources.isEmpty()) {
+      generator.writeArrayFieldStart("entry");
+      for (PreparedResource resource : resources) {
+        generator.writeStartObject();
+        if (resource.fullUrl != null) {
+          generator.writeStringField("fullUrl", resource.fullUrl);
+        }
+        generator.writeFieldName("resource");
+        writeResource(generator, resource);
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+    generator.flush();
+  }
+
+  /**
+   * Writes the prepared resource as compact JSON, on a single line. The writer is flushed but not
+   * closed.
+   *
+   * @param resource - resource prepared by {@link #prepare(Class, Map)}
+   * @param writer
+   * @throws IOException - if the writer fails
+   */
+  public void writeResource(PreparedResource resource, Writer writer) throws IOException {
+    Preconditions.checkArgument(resource != null, "resource cannot be null");
+    Preconditions.checkArgument(writer != null, "writer cannot be null");
+    JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    writeResource(generator, resource);
+    generator.flush();
+  }
+
+  private static void writeResource(JsonGenerator generator, PreparedResource resource)
+      throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField(RESOURCE_TYPE, resource.resourceType);
+    resource.root.writeFields(generator);
+    generator.writeEndObject();
+  }
+
+  /**
+   * Same layout as the HAPI JSON parser: two spaces indentation for the objects, "name": value and
+   * arrays on the line of their first element.
+   */
+  private static DefaultPrettyPrinter newPrettyPrinter() {
+    DefaultPrettyPrinter printer = new DefaultPrettyPrinter() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public DefaultPrettyPrinter withSeparators(Separators separators) {
+        _separators = separators;
+        _objectFieldValueSeparatorWithSpaces = separators.getObjectFieldValueSeparator() + " ";
+        return this;
+      }
+    };
+    return printer.withObjectIndenter(new DefaultIndenter("  ", "\n"));
+  }
+
+  private CompositeNode prepareComposite(BaseRuntimeElementCompositeDefinition<?> def,
+      Map<?, ?> values, boolean resource) throws UnsupportedValueException {
+    boolean extension = Extension.class.equals(def.getImplementingClass());
+    CompositeNode node = new CompositeNode();
+    for (Entry<?, ?> e : values.entrySet()) {
+      Object value = e.getValue();
+      if (value == null || RESOURCE_TYPE.equals(e.getKey())) {
+        continue;
+      }
+      ChildBinding binding = getBinding(def, e.getKey());
+      String name = (String) e.getKey();
+      // element ids are written before the other elements by the HAPI encoder
+      if (!resource && ID.equals(name)) {
+        throw new UnsupportedValueException();
+      }
+      List<Node> nodes = new ArrayList<>();
+      if (value instanceof List) {
+        prepareValues(binding, (List<?>) value, nodes);
+      } else {
+        addNode(nodes, prepareValue(binding, value));
+      }
+      if (!nodes.isEmpty()) {
+        // the extension url is written first by the HAPI encoder
+        int order = extension && URL.equals(name) ? -1 : binding.getOrder();
+        node.add(new FieldNode(name, order, binding.isRepeatable(), nodes));
+      }
+    }
+    if (extension && !node.hasValue()) {
+      // extensions without value nor nested extensions are empty for the HAPI encoder
+      return new CompositeNode();
+    }
+    node.sort();
+    return node;
+  }
+
+  private void prepareValues(ChildBinding binding, List<?> values, List<Node> nodes)
+      throws UnsupportedValueException {
+    boolean repeatable = binding.isRepeatable();
+    int count = 0;
+    for (Object item : values) {
+      if (item == null) {
+        // null repetitions are skipped by the JSON parser
+        continue;
+      }
+      // the JSON parser keeps the first repetition of a non repeatable element and logs a warning
+      if (!repeatable && ++count > 1) {
+        throw new UnsupportedValueException();
+      }
+      if (repeatable && FHIRElementMetadata.isEmptyString(item)) {
+        throw new UnsupportedValueException();
+      }
+      addNode(nodes, prepareValue(binding, item));
+    }
+  }
+
+  private Node prepareValue(ChildBinding binding, Object value) throws UnsupportedValueException {
+    if (FHIRElementMetadata.isEmptyString(value)) {
+      // empty values are dropped by the JSON parser
+      return null;
+    }
+    BaseRuntimeElementDefinition<?> element = binding.getElement();
+    switch (element.getChildType()) {
+      case PRIMITIVE_DATATYPE:
+      case ID_DATATYPE:
+        return preparePrimitive(binding, value);
+      case COMPOSITE_DATATYPE:
+      case RESOURCE_BLOCK:
+        if (value instanceof SimpleCode) {
+          value = FHIRElementMetadata.toMap((SimpleCode) value);
+        }
+        if (!(value instanceof Map)) {
+          throw new UnsupportedValueException();
+        }
+        return prepareComposite((BaseRuntimeElementCompositeDefinition<?>) element,
+            (Map<?, ?>) value, false);
+      default:
+        throw new UnsupportedValueException();
+    }
+  }
+
+  private static PrimitiveNode preparePrimitive(ChildBinding binding, Object value)
+      throws UnsupportedValueException {
+    String text = FHIRElementMetadata.toText(value);
+    if (text == null) {
+      throw new UnsupportedValueException();
+    }
+    IPrimitiveType<?> primitive = (IPrimitiveType<?>) binding.getElement()
+        .newInstance(binding.getChild().getInstanceConstructorArguments());
+    try {
+      primitive.setValueAsString(text);
+    } catch (RuntimeException e) {
+      // invalid value for the type, the JSON parser reports it
+      throw new UnsupportedValueException();
+    }
+    String normalized = primitive.getValueAsString();
+    if (StringUtils.isBlank(normalized)) {
+      return null;
+    }
+    if (primitive instanceof IBaseIntegerDatatype) {
+      return new PrimitiveNode(PrimitiveKind.NUMBER,
+          String.valueOf(((IBaseIntegerDatatype) primitive).getValue()));
+    } else if (primitive instanceof IBaseDecimalDatatype) {
+      return new PrimitiveNode(PrimitiveKind.NUMBER, normalized);
+    } else if (primitive instanceof IBaseBooleanDatatype) {
+      return new PrimitiveNode(PrimitiveKind.BOOLEAN,
+          String.valueOf(((IBaseBooleanDatatype) primitive).getValue()));
+    }
+    return new PrimitiveNode(PrimitiveKind.STRING, normalized);
+  }
+
+  private static void addNode(List<Node> nodes, Node node) {
+    if (node != null && !node.isEmpty()) {
+      nodes.add(node);
+    }
+  }
+
+  private ChildBinding getBinding(BaseRuntimeElementCompositeDefinition<?> def, Object name)
+      throws UnsupportedValueException {
+    if (!(name instanceof String)) {
+      throw new UnsupportedValueException();
+    }
+    ChildBinding binding = metadata.getBinding(def, (String) name);
+    if (binding == null) {
+      throw new UnsupportedValueException();
+    }
+    return binding;
+  }
+
+  /**
+   * Resource values checked and ordered by {@link FHIRJsonEmitter#prepare(Class, Map)}, ready to
+   * be written.
+   */
+  public static final class PreparedResource {
+    private final String resourceType;
+    private final String fullUrl;
+    private final CompositeNode root;
+
+    private PreparedResource(String resourceType, String fullUrl, CompositeNode root) {
+      this.resourceType = resourceType;
+      this.fullUrl = fullUrl;
+      this.root = root;
+    }
+
+    public String getResourceType() {
+      return resourceType;
+    }
+
+    /**
+     * @return the qualified id of the resource, for example Patient/123, null if it has no id.
+     */
+    public String getFullUrl() {
+      return fullUrl;
+    }
+  }
+
+  private enum PrimitiveKind {
+    STRING, NUMBER, BOOLEAN
+  }
+
+  private interface Node {
+    boolean isEmpty();
+
+    void write(JsonGenerator generator) throws IOException;
+  }
+
+  private static final class PrimitiveNode implements Node {
+    private final PrimitiveKind kind;
+    private final String text;
+
+    private PrimitiveNode(PrimitiveKind kind, String text) {
+      this.kind = kind;
+      this.text = text;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return false;
+    }
+
+    @Override
+    public void write(JsonGenerator generator) throws IOException {
+      switch (kind) {
+        case NUMBER:
+          generator.writeNumber(text);
+          break;
+        case BOOLEAN:
+          generator.writeBoolean(Boolean.parseBoolean(text));
+          break;
+        default:
+          generator.writeString(text);
+      }
+    }
+  }
+
+  private static final class FieldNode {
+    private final String name;
+    private final int order;
+    private final boolean repeatable;
+    private final List<Node> values;
+
+    private FieldNode(String name, int order, boolean repeatable, List<Node> values) {
+      this.name = name;
+      this.order = order;
+      this.repeatable = repeatable;
+      this.values = values;
+    }
+  }
+
+  private static final class CompositeNode implements Node {
+    private static final Comparator<FieldNode> ORDER = Comparator.comparingInt(f -> f.order);
+    private final List<FieldNode> fields = new ArrayList<>();
+
+    private void add(FieldNode field) throws UnsupportedValueException {
+      for (FieldNode f : fields) {
+        // two names of the same element, for example two types of a choice element
+        if (f.order == field.order) {
+          throw new UnsupportedValueException();
+        }
+      }
+      fields.add(field);
+    }
+
+    private void sort() {
+      fields.sort(ORDER);
+    }
+
+    private boolean hasValue() {
+      return fields.stream().anyMatch(f -> !URL.equals(f.name));
+    }
+
+    private PrimitiveNode getId() {
+      for (FieldNode f : fields) {
+        if (ID.equals(f.name)) {
+          return (PrimitiveNode) f.values.get(0);
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return fields.isEmpty();
+    }
+
+    @Override
+    public void write(JsonGenerator generator) throws IOException {
+      generator.writeStartObject();
+      writeFields(generator);
+      generator.writeEndObject();
+    }
+
+    private void writeFields(JsonGenerator generator) throws IOException {
+      for (FieldNode f : fields) {
+        generator.writeFieldName(f.name);
+        if (f.repeatable) {
+          generator.writeStartArray();
+          for (Node value : f.values) {
+            value.write(generator);
+          }
+          generator.writeEndArray();
+        } else {
+          f.values.get(0).write(generator);
+        }
+      }
+    }
+  }
+
+  /**
+   * Signals that the values cannot be written directly, no stack trace as it is used for control
+   * flow.
+   */
+  private static class UnsupportedValueException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private UnsupportedValueException() {
+      super(null, null, false, false);
+    }
+  }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.fhir;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+import com.google.common.base.Preconditions;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import io.github.linuxforhealth.core.terminology.SimpleCode;
+import io.github.linuxforhealth.fhir.FHIRElementMetadata.ChildBinding;
+
+/**
+ * Builds HAPI FHIR model objects directly from the resolved resource values, the
+ * <code>Map&lt;String, Object&gt;</code> produced by the resource templates, without serializing
+ * them to JSON and parsing them back.
+ * <p>
+ * The element lookups (JSON name to child definition, including choice types like valueQuantity)
+ * are cached per element type. The binder only handles the constructs that bind exactly as the
+ * HAPI JSON parser would: nested maps, lists, strings, booleans, numbers, UUIDs and
+ * {@link SimpleCode}. For anything else,
+ * for example narrative, contained resources, primitive extensions (_element), values that the
+ * target type rejects or unknown element names, {@link #bind(Class, Map)} returns null and the
+ * caller should fall back to the JSON parser, which also reports the issue.
+ *
+ */
+public class FHIRResourceBinder {
+  private static final String RESOURCE_TYPE = "resourceType";
+
+  private final FHIRElementMetadata metadata;
+
+  public FHIRResourceBinder(FhirContext ctx) {
+    this(new FHIRElementMetadata(ctx));
+  }
+
+  FHIRResourceBinder(FHIRElementMetadata metadata) {
+    Preconditions.checkArgument(metadata != null, "metadata cannot be null");
+    this.metadata = metadata;
+  }
+
+  /**
+   * Creates the resource of the given type from the resolved values.
+   *
+   * @param resourceClass
+   * @param values - resolved resource values, with the same structure as FHIR JSON
+   * @return the resource, or null if the values contain constructs that cannot be bound directly
+   */
+  public <T extends Resource> T bind(Class<T> resourceClass, Map<String, Object> values) {
+    Preconditions.checkArgument(resourceClass != null, "resourceClass cannot be null");
+    Preconditions.checkArgument(values != null, "values cannot be null");
+    RuntimeResourceDefinition def = metadata.getCtx().getResourceDefinition(resourceClass);
+    // the JSON parser rejects resources without a matching resourceType
+    if (!def.getName().equals(values.get(RESOURCE_TYPE))) {
+      return null;
+    }
+    T resource = resourceClass.cast(def.newInstance());
+    try {
+      bindComposite(def, resource, values);
+    } catch (UnsupportedBindingException e) {
+      return null;
+    }
+    IdType id = resource.getIdElement();
+    if (id.hasIdPart()) {
+      // same qualified id as set by the JSON parser, for example Patient/123
+      if (id.getIdPart().indexOf('/') >= 0) {
+        return null;
+      }
+      resource.setIdElement(new IdType(def.getName(), id.getIdPart()));
+    }
+    return resource;
+  }
+
+  private void bindComposite(BaseRuntimeElementCompositeDefinition<?> def, IBase target,
+      Map<?, ?> values) throws UnsupportedBindingException {
+    for (Entry<?, ?> e : values.entrySet()) {
+      Object value = e.getValue();
+      if (value == null || RESOURCE_TYPE.equals(e.getKey())) {
+        continue;
+      }
+      ChildBinding binding = getBinding(def, e.getKey());
+      if (value instanceof List) {
+        bindValues(binding, target, (List<?>) value);
+      } else {
+        bindValue(binding, target, value);
+      }
+    }
+  }
+
+  private void bindValues(ChildBinding binding, IBase target, List<?> values)
+      throws UnsupportedBindingException {
+    boolean repeatable = binding.isRepeatable();
+    int count = 0;
+    for (Object item : values) {
+      if (item == null) {
+        // null repetitions are skipped by the JSON parser
+        continue;
+      }
+      // the JSON parser keeps the first repetition of a non repeatable element and logs a warning
+      if (!repeatable && ++count > 1) {
+        throw new UnsupportedBindingException();
+      }
+      if (repeatable && FHIRElementMetadata.isEmptyString(item)) {
+        throw new UnsupportedBindingException();
+      }
+      bindValue(binding, target, item);
+    }
+  }
+
+  private void bindValue(ChildBinding binding, IBase target, Object value)
+      throws UnsupportedBindingException {
+    if (FHIRElementMetadata.isEmptyString(value)) {
+      // empty values are dropped by the JSON parser
+      return;
+    }
+    BaseRuntimeElementDefinition<?> element = binding.getElement();
+    IBase instance = element.newInstance(binding.getChild().getInstanceConstructorArguments());
+    switch (element.getChildType()) {
+      case PRIMITIVE_DATATYPE:
+      case ID_DATATYPE:
+        setPrimitiveValue((IPrimitiveType<?>) instance, value);
+        break;
+      case COMPOSITE_DATATYPE:
+      case RESOURCE_BLOCK:
+        if (value instanceof SimpleCode) {
+          value = FHIRElementMetadata.toMap((SimpleCode) value);
+        }
+        if (!(value instanceof Map)) {
+          throw new UnsupportedBindingException();
+        }
+        bindComposite((BaseRuntimeElementCompositeDefinition<?>) element, instance,
+            (Map<?, ?>) value);
+        break;
+      default:
+        throw new UnsupportedBindingException();
+    }
+    binding.getChild().getMutator().addValue(target, instance);
+  }
+
+  private static void setPrimitiveValue(IPrimitiveType<?> primitive, Object value)
+      throws UnsupportedBindingException {
+    String text = FHIRElementMetadata.toText(value);
+    if (text == null) {
+      throw new UnsupportedBindingException();
+    }
+    try {
+      primitive.setValueAsString(text);
+    } catch (RuntimeException e) {
+      // invalid value for the type, the JSON parser reports it
+      throw new UnsupportedBindingException();
+    }
+  }
+
+  private ChildBinding getBinding(BaseRuntimeElementCompositeDefinition<?> def, Object name)
+      throws UnsupportedBindingException {
+    if (!(name instanceof String)) {
+      throw new UnsupportedBindingException();
+    }
+    ChildBinding binding = metadata.getBinding(def, (String) name);
+    if (binding == null) {
+      throw new UnsupportedBindingException();
+    }
+    return binding;
+  }
+
+  /**
+   * Signals that the values cannot be bound directly, no stack trace as it is used for control
+   * flow.
+   */
+  private static class UnsupportedBindingException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private UnsupportedBindingException() {
+      super(null, null, false, false);
+    }
+  }
+
+}
@@ -15,12 +15,10 @@ import io.github.linuxforhealth.hl7.resource.ResourceReader;
 
 public class FHIRResourceMapper {
 
-  private static FHIRResourceMapper fhirResourceMapper;
-
   private Map<String, String> resourceMapping;
 
-  private FHIRResourceMapper() {
-    String resource = ResourceReader.getInstance().getResource(Constants.RESOURCE_MAPPING_PATH);
+  private FHIRResourceMapper(ResourceReader reader) {
+    String resource = reader.getResource(Constants.RESOURCE_MAPPING_PATH);
     try {
       resourceMapping = ObjectMapperUtil.getYAMLInstance().readValue(resource, Map.class);
     } catch (JsonProcessingException e) {
@@ -31,11 +29,17 @@ public class FHIRResourceMapper {
 
 
 
+  private static FHIRResourceMapper getInstance() {
+    return ResourceReader.getInstance().getComponent(FHIRResourceMapper.class,
+        FHIRResourceMapper::new);
+  }
+
+  public static void init() {
+    getInstance();
+  }
+
   public static Class<? extends Resource> getResourceClass(String name) {
-    if (fhirResourceMapper == null) {
-      fhirResourceMapper = new FHIRResourceMapper();
-    }
-    String resourceName = fhirResourceMapper.resourceMapping.get(name);
+    String resourceName = getInstance().resourceMapping.get(name);
 
     if (resourceName != null) {
       try {
@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.fhir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes FHIR resources as NDJSON, one file per resource type named after the type, for example
+ * Patient.ndjson, the layout expected by the FHIR bulk data loaders. Existing files are
+ * overwritten.
+ * <p>
+ * The resources are appended to a large in-memory buffer per resource type and the buffers are
+ * written to the {@link FileChannel} of the file when they are full, so that the resources of many
+ * messages are written with a single system call. {@link #flush()} writes all the buffers and
+ * forces the files to the storage device, committing all the resources written so far as a group.
+ * <p>
+ * The writer is thread-safe, it is meant to be shared by all the threads converting messages. The
+ * resources of each type of a message are appended together, but each type is written to its file
+ * on its own: if a file cannot be written, the other types of the message may still be written.
+ *
+ */
+public class NDJSONResourceWriter implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(NDJSONResourceWriter.class);
+
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  private static final String EXTENSION = ".ndjson";
+  private static final byte NEW_LINE = '\n';
+
+  private final Path folder;
+  private final int bufferSize;
+  private final Map<String, ResourceFile> files = new ConcurrentHashMap<>();
+  // writes share the lock, close takes it alone so that no write is in progress when it runs
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private boolean closed;
+
+  /**
+   * Creates the writer with a buffer of {@link #DEFAULT_BUFFER_SIZE} bytes per resource type.
+   *
+   * @param folder - existing folder the NDJSON files are written to
+   */
+  public NDJSONResourceWriter(Path folder) {
+    this(folder, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   *
+   * @param folder - existing folder the NDJSON files are written to
+   * @param bufferSize - size in bytes of the buffer of each resource type
+   */
+  public NDJSONResourceWriter(Path folder, int bufferSize) {
+    Preconditions.checkArgument(folder != null && Files.isDirectory(folder),
+        "folder should be an existing directory");
+    Preconditions.checkArgument(bufferSize > 0, "bufferSize should be greater than 0");
+    this.folder = folder;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Appends the resources to the files of their resource type.
+   *
+   * @param resourcesByType - JSON of the resources, without line breaks, by resource type
+   * @throws UncheckedIOException - if a file cannot be written
+   * @throws IllegalStateException - if the writer is closed
+   */
+  public void write(Map<String, List<String>> resourcesByType) {
+    Preconditions.checkArgument(resourcesByType != null, "resourcesByType cannot be null");
+    lock.readLock().lock();
+    try {
+      Preconditions.checkState(!closed, "NDJSON writer is closed");
+      for (Entry<String, List<String>> e : resourcesByType.entrySet()) {
+        if (!e.getValue().isEmpty()) {
+          getFile(e.getKey()).append(e.getValue());
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Writes the buffered resources and forces the files to the storage device.
+   *
+   * @throws UncheckedIOException - if a file cannot be written
+   */
+  public void flush() {
+    lock.readLock().lock();
+    try {
+      for (ResourceFile file : files.values()) {
+        file.flush();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Flushes and closes the files, further writes are rejected with {@link IllegalStateException}.
+   */
+  @Override
+  public void close() {
+    UncheckedIOException failure = null;
+    lock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (ResourceFile file : files.values()) {
+        try {
+          file.close();
+        } catch (UncheckedIOException e) {
+          failure = e;
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private ResourceFile getFile(String resourceType) {
+    Preconditions.checkArgument(resourceType != null && resourceType.matches("[A-Za-z]+"),
+        "Invalid resource type");
+    return files.computeIfAbsent(resourceType,
+        type -> new ResourceFile(folder.resolve(type + EXTENSION), bufferSize));
+  }
+
+  private static class ResourceFile {
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private ResourceFile(Path path, int bufferSize) {
+      this.path = path;
+      try {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot open NDJSON file " + path, e);
+      }
+      this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    private synchronized void append(List<String> resources) {
+      try {
+        for (String resource : resources) {
+          byte[] bytes = resource.getBytes(StandardCharsets.UTF_8);
+          if (bytes.length + 1 > buffer.remaining()) {
+            drain();
+          }
+          if (bytes.length + 1 > buffer.capacity()) {
+            // larger than the buffer, written on its own
+            writeFully(ByteBuffer.wrap(bytes));
+            writeFully(ByteBuffer.wrap(new byte[] {NEW_LINE}));
+          } else {
+            buffer.put(bytes).put(NEW_LINE);
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot write NDJSON file " + path, e);
+      }
+    }
+
+    private synchronized void flush() {
+      try {
+        drain();
+        if (channel.isOpen()) {
+          channel.force(false);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot write NDJSON file " + path, e);
+      }
+    }
+
+    private synchronized void close() {
+      try {
+        flush();
+      } finally {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          LOGGER.warn("Failure to close NDJSON file.");
+          LOGGER.debug("Failure to close NDJSON file {}", path, e);
+        }
+      }
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      writeFully(buffer);
+      buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,384 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import com.google.common.base.Preconditions;
+
+/**
+ * Converts the HL7 messages published by an upstream publisher and publishes the
+ * {@link ConversionResult} to a single downstream subscriber, for use as a stage of a reactive
+ * pipeline.
+ * <p>
+ * The demand is bounded: at most bufferSize messages are requested from upstream and not yet
+ * delivered downstream, so a subscriber that stops requesting results stops the upstream feed.
+ * Up to parallelism messages are converted concurrently. Results are delivered in the order of
+ * the messages, or as soon as they are converted when the processor is unordered. A message that
+ * cannot be converted does not end the stream, its result holds the exception instead. An upstream
+ * error is delivered after the results of the messages already received.
+ * <p>
+ * Conversions run on the executor provided to the {@link Builder}, or else on daemon threads
+ * created for the processor and stopped when the stream terminates or is cancelled.
+ *
+ * @param <T> - message type, {@link String} or byte[]
+ */
+public class ConversionProcessor<T> implements Flow.Processor<T, ConversionResult> {
+
+  private final HL7ToFHIRConverter converter;
+  private final Function<T, String> conversion;
+  private final int parallelism;
+  private final int bufferSize;
+  private final boolean ordered;
+  private final Executor executor;
+  // executor created for the processor, shut down when the stream terminates
+  private final ExecutorService ownedExecutor;
+
+  private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+  private final AtomicReference<Flow.Subscriber<? super ConversionResult>> downstream =
+      new AtomicReference<>();
+  private volatile boolean downstreamReady;
+  private final AtomicLong requested = new AtomicLong();
+  private final AtomicLong received = new AtomicLong();
+  private volatile boolean upstreamDone;
+  private volatile Throwable upstreamError;
+  private volatile Throwable requestError;
+  private volatile boolean cancelled;
+
+  private final Queue<Message<T>> pending = new ConcurrentLinkedQueue<>();
+  private final Queue<ConversionResult> completed = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger running = new AtomicInteger();
+  // number of threads requesting a drain, only the first one drains
+  private final AtomicInteger wip = new AtomicInteger();
+
+  // only accessed by the draining thread
+  private final Map<Long, ConversionResult> reorderBuffer = new HashMap<>();
+  private long nextIndex;
+  private long upstreamRequested;
+  private long emitted;
+  private boolean terminated;
+
+  private ConversionProcessor(Builder builder, Function<T, String> conversion) {
+    this.converter = builder.converter;
+    this.conversion = conversion;
+    this.parallelism = builder.parallelism;
+    this.bufferSize = builder.bufferSize > 0 ? Math.max(builder.bufferSize, builder.parallelism)
+        : 2 * builder.parallelism;
+    this.ordered = builder.ordered;
+    if (builder.executor != null) {
+      this.executor = builder.executor;
+      this.ownedExecutor = null;
+    } else {
+      AtomicInteger threadCount = new AtomicInteger();
+      this.ownedExecutor = Executors.newFixedThreadPool(builder.parallelism, r -> {
+        Thread t = new Thread(r, "hl7-conversion-processor-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+      this.executor = ownedExecutor;
+    }
+  }
+
+  public static class Builder {
+    private final HL7ToFHIRConverter converter;
+    private ConverterOptions options = ConverterOptions.SIMPLE_OPTIONS;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int bufferSize;
+    private boolean ordered = true;
+    private Executor executor;
+
+    /**
+     * @param converter - converter shared with the rest of the application, it is not closed by
+     *        the processor
+     */
+    public Builder(HL7ToFHIRConverter converter) {
+      Preconditions.checkArgument(converter != null, "converter cannot be null");
+      this.converter = converter;
+    }
+
+    public Builder withOptions(ConverterOptions options) {
+      Preconditions.checkArgument(options != null, "options cannot be null");
+      this.options = options;
+      return this;
+    }
+
+    /**
+     * Maximum number of messages converted concurrently, defaults to the number of available
+     * processors.
+     */
+    public Builder withParallelism(int parallelism) {
+      Preconditions.checkArgument(parallelism > 0, "parallelism should be greater than 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Maximum number of messages requested from upstream and not yet delivered downstream,
+     * defaults to twice the parallelism. Values below the parallelism are raised to it.
+     */
+    public Builder withBufferSize(int bufferSize) {
+      Preconditions.checkArgument(bufferSize > 0, "bufferSize should be greater than 0");
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    /**
+     * Delivers the results as soon as the messages are converted, instead of in the order of the
+     * messages.
+     */
+    public Builder unordered() {
+      this.ordered = false;
+      return this;
+    }
+
+    /**
+     * Executor running the conversions, it is not shut down by the processor.
+     */
+    public Builder withExecutor(Executor executor) {
+      Preconditions.checkArgument(executor != null, "executor cannot be null");
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Builds a processor of ER7 encoded messages.
+     */
+    public ConversionProcessor<String> buildForStrings() {
+      ConverterOptions opts = options;
+      return new ConversionProcessor<>(this,
+          message -> converter.convert(message, opts));
+    }
+
+    /**
+     * Builds a processor of raw messages, decoded with the character set declared in MSH-18.
+     *
+     * @see HL7ToFHIRConverter#convert(byte[], ConverterOptions)
+     */
+    public ConversionProcessor<byte[]> buildForBytes() {
+      ConverterOptions opts = options;
+      return new ConversionProcessor<>(this,
+          message -> converter.convert(message, opts));
+    }
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super ConversionResult> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber cannot be null");
+    if (!downstream.compareAndSet(null, subscriber)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+          // the subscription is rejected
+        }
+
+        @Override
+        public void cancel() {
+          // the subscription is rejected
+        }
+      });
+      subscriber.onError(
+          new IllegalStateException("ConversionProcessor supports a single subscriber."));
+      return;
+    }
+    subscriber.onSubscribe(new DownstreamSubscription());
+    downstreamReady = true;
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription, "subscription cannot be null");
+    if (!upstream.compareAndSet(null, subscription) || cancelled || requestError != null) {
+      subscription.cancel();
+      return;
+    }
+    drain();
+  }
+
+  @Override
+  public void onNext(T item) {
+    Objects.requireNonNull(item, "item cannot be null");
+    pending.offer(new Message<>(received.getAndIncrement(), item));
+    drain();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    Objects.requireNonNull(throwable, "throwable cannot be null");
+    upstreamError = throwable;
+    upstreamDone = true;
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    upstreamDone = true;
+    drain();
+  }
+
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      if (cancelled || terminated) {
+        pending.clear();
+        completed.clear();
+        reorderBuffer.clear();
+      } else {
+        submitPending();
+        Flow.Subscriber<? super ConversionResult> subscriber =
+            downstreamReady ? downstream.get() : null;
+        if (subscriber != null) {
+          emit(subscriber);
+        }
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void submitPending() {
+    while (running.get() < parallelism) {
+      Message<T> message = pending.poll();
+      if (message == null) {
+        return;
+      }
+      running.incrementAndGet();
+      try {
+        executor.execute(() -> complete(converter.convertSafely(message.index,
+            () -> conversion.apply(message.value))));
+      } catch (RejectedExecutionException e) {
+        complete(ConversionResult.failure(message.index, e));
+      }
+    }
+  }
+
+  private void complete(ConversionResult result) {
+    completed.offer(result);
+    running.decrementAndGet();
+    drain();
+  }
+
+  private void emit(Flow.Subscriber<? super ConversionResult> subscriber) {
+    if (requestError != null) {
+      terminate(subscriber, requestError);
+      return;
+    }
+    long demand = requested.get();
+    long count = 0;
+    while (count != demand && !cancelled) {
+      ConversionResult result = nextResult();
+      if (result == null) {
+        break;
+      }
+      subscriber.onNext(result);
+      count++;
+    }
+    emitted += count;
+    if (count != 0 && demand != Long.MAX_VALUE) {
+      requested.addAndGet(-count);
+    }
+    if (cancelled) {
+      return;
+    }
+
+    if (upstreamDone && emitted == received.get()) {
+      terminate(subscriber, upstreamError);
+      return;
+    }
+    Flow.Subscription subscription = upstream.get();
+    long held = upstreamRequested - emitted;
+    if (subscription != null && !upstreamDone && held < bufferSize) {
+      upstreamRequested += bufferSize - held;
+      subscription.request(bufferSize - held);
+    }
+  }
+
+  private ConversionResult nextResult() {
+    if (!ordered) {
+      return completed.poll();
+    }
+    ConversionResult result;
+    while ((result = completed.poll()) != null) {
+      reorderBuffer.put(result.getIndex(), result);
+    }
+    result = reorderBuffer.remove(nextIndex);
+    if (result != null) {
+      nextIndex++;
+    }
+    return result;
+  }
+
+  private void terminate(Flow.Subscriber<? super ConversionResult> subscriber, Throwable error) {
+    terminated = true;
+    shutdownOwnedExecutor();
+    if (error != null) {
+      subscriber.onError(error);
+    } else {
+      subscriber.onComplete();
+    }
+  }
+
+  private void cancelUpstream() {
+    Flow.Subscription subscription = upstream.get();
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  private void shutdownOwnedExecutor() {
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+  }
+
+  private class DownstreamSubscription implements Flow.Subscription {
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        requestError = new IllegalArgumentException(
+            "Requested number of results should be greater than 0, was " + n);
+        cancelUpstream();
+      } else {
+        requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      cancelUpstream();
+      shutdownOwnedExecutor();
+      drain();
+    }
+  }
+
+  private static class Message<T> {
+    private final long index;
+    private final T value;
+
+    private Message(long index, T value) {
+      this.index = index;
+      this.value = value;
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Result of converting one message of a batch. Holds either the JSON representation of the FHIR
+ * bundle or the exception encountered while converting the message, along with the position of
+ * the message in the input.
+ *
+ */
+public class ConversionResult {
+
+  private final long index;
+  private final String output;
+  private final RuntimeException error;
+
+  private ConversionResult(long index, String output, RuntimeException error) {
+    this.index = index;
+    this.output = output;
+    this.error = error;
+  }
+
+  public static ConversionResult success(long index, String output) {
+    return new ConversionResult(index, output, null);
+  }
+
+  public static ConversionResult failure(long index, RuntimeException error) {
+    return new ConversionResult(index, null, error);
+  }
+
+  /**
+   * Position of the message in the input, starting at 0.
+   *
+   * @return long
+   */
+  public long getIndex() {
+    return index;
+  }
+
+  /**
+   * JSON representation of FHIR bundle, null if the conversion failed.
+   *
+   * @return String
+   */
+  public String getOutput() {
+    return output;
+  }
+
+  /**
+   * Exception encountered during the conversion, null if the conversion succeeded.
+   *
+   * @return {@link RuntimeException}
+   */
+  public RuntimeException getError() {
+    return error;
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  @Override
+  public String toString() {
+    // output is not included as it can contain PHI
+    return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("index", index)
+        .append("success", isSuccess())
+        .append("error", error != null ? error.getClass().getName() : null).build();
+  }
+
+}
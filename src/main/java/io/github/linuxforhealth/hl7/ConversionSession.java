@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.github.linuxforhealth.fhir.FHIRContext;
+import io.github.linuxforhealth.hl7.message.HL7MessageEngine;
+import io.github.linuxforhealth.hl7.parsing.HL7HapiParser;
+import io.github.linuxforhealth.hl7.parsing.HL7MessageDecoder;
+
+/**
+ * Holds the per-thread objects needed for converting a HL7 message: the HAPI HL7 parser, the HAPI
+ * FHIR JSON parser, the {@link HL7MessageEngine} and the {@link HL7MessageDecoder} of byte input.
+ * None of these objects are shared between sessions, so a session can be reused for any number of
+ * messages as long as it is only used by one thread at a time. Sessions are handed out by
+ * {@link ConversionSessionPool}.
+ *
+ */
+public class ConversionSession implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConversionSession.class);
+
+  private final HL7HapiParser hparser;
+  private final HL7MessageDecoder decoder = new HL7MessageDecoder();
+  // key is the combination of options that affect the FHIR context and the engine
+  private final Map<String, HL7MessageEngine> engines = new HashMap<>();
+
+  public ConversionSession() {
+    this.hparser = new HL7HapiParser();
+  }
+
+  public HL7HapiParser getHapiParser() {
+    return hparser;
+  }
+
+  public HL7MessageDecoder getMessageDecoder() {
+    return decoder;
+  }
+
+  /**
+   * Returns the engine for the options, the engine and its {@link FHIRContext} are created on first
+   * use and reused for the following messages converted with the same options.
+   *
+   * @param options - {@link ConverterOptions}
+   * @return {@link HL7MessageEngine}
+   */
+  public HL7MessageEngine getEngine(ConverterOptions options) {
+    String key = options.isPrettyPrint() + ":" + options.isValidateResource() + ":"
+        + options.getBundleType() + ":" + options.isHapiJsonEncoding();
+    return engines.computeIfAbsent(key, k -> new HL7MessageEngine(
+        new FHIRContext(options.isPrettyPrint(), options.isValidateResource()),
+        options.getBundleType(), !options.isHapiJsonEncoding()));
+  }
+
+  @Override
+  public void close() {
+    engines.clear();
+    try {
+      hparser.getContext().close();
+    } catch (IOException e) {
+      LOGGER.warn("Failure to close HL7 parser.");
+      LOGGER.debug("Failure to close HL7 parser.", e);
+    }
+  }
+
+}
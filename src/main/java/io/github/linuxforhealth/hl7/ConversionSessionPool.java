@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounded pool of {@link ConversionSession}. At most maxSessions sessions are created, they are
+ * created lazily when a session is borrowed and no idle session is available. If all the sessions
+ * are in use, borrow blocks until one is released.
+ *
+ * The pool is thread-safe.
+ *
+ */
+public class ConversionSessionPool implements Closeable {
+
+  private final int maxSessions;
+  private final Semaphore permits;
+  private final ConcurrentLinkedQueue<ConversionSession> idleSessions =
+      new ConcurrentLinkedQueue<>();
+  private volatile boolean closed;
+
+  public ConversionSessionPool(int maxSessions) {
+    Preconditions.checkArgument(maxSessions > 0, "maxSessions should be greater than 0");
+    this.maxSessions = maxSessions;
+    this.permits = new Semaphore(maxSessions, true);
+  }
+
+  /**
+   * Returns an idle session or creates one if the pool has not reached maxSessions. Blocks if all
+   * the sessions are in use.
+   *
+   * @return {@link ConversionSession}
+   * @throws IllegalStateException - if the pool is closed or the thread is interrupted while waiting
+   *         for a session.
+   */
+  public ConversionSession borrow() {
+    Preconditions.checkState(!closed, "Conversion session pool is closed.");
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a conversion session.", e);
+    }
+    ConversionSession session = idleSessions.poll();
+    if (session == null) {
+      try {
+        session = new ConversionSession();
+      } catch (RuntimeException e) {
+        permits.release();
+        throw e;
+      }
+    }
+    return session;
+  }
+
+  /**
+   * Returns the session to the pool. If the pool is closed the session is closed.
+   *
+   * @param session - session returned by {@link #borrow()}
+   */
+  public void release(ConversionSession session) {
+    if (session == null) {
+      return;
+    }
+    if (closed) {
+      session.close();
+    } else {
+      idleSessions.offer(session);
+      // the pool could have been closed while the session was offered
+      if (closed && idleSessions.remove(session)) {
+        session.close();
+      }
+    }
+    permits.release();
+  }
+
+  public int getMaxSessions() {
+    return maxSessions;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Closes all the idle sessions. Sessions that are in use are closed when they are released.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    ConversionSession session;
+    while ((session = idleSessions.poll()) != null) {
+      session.close();
+    }
+  }
+
+}
@@ -23,6 +23,7 @@ public class ConverterOptions {
   private BundleType bundleType;
   private boolean prettyPrint;
   private boolean validateResource;
+  private boolean hapiJsonEncoding;
 
 
   private ConverterOptions(Builder builder) {
@@ -33,6 +34,7 @@ public class ConverterOptions {
     }
     this.prettyPrint = builder.prettyPrint;
     this.validateResource = builder.validateResource;
+    this.hapiJsonEncoding = builder.hapiJsonEncoding;
 
   }
 
@@ -40,6 +42,7 @@ public class ConverterOptions {
     private BundleType bundleType;
     private boolean prettyPrint;
     private boolean validateResource;
+    private boolean hapiJsonEncoding;
 
 
     public Builder withBundleType(BundleType bundleType) {
@@ -58,6 +61,15 @@ public class ConverterOptions {
       return this;
     }
 
+    /**
+     * Encodes the JSON output with the HAPI FHIR parser instead of writing it directly from the
+     * resolved resource values. The direct writing is only used when validation is not enabled and
+     * produces the same output.
+     */
+    public Builder withHapiJsonEncoding() {
+      this.hapiJsonEncoding = true;
+      return this;
+    }
 
 
 
@@ -81,6 +93,10 @@ public class ConverterOptions {
     return validateResource;
   }
 
+  public boolean isHapiJsonEncoding() {
+    return hapiJsonEncoding;
+  }
+
 
 
 }
\ No newline at end of file
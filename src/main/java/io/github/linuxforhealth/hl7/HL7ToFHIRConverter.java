@@ -6,54 +6,155 @@
 
 package io.github.linuxforhealth.hl7;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.commons.io.input.CharSequenceReader;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.model.Message;
 import ca.uhn.hl7v2.util.Hl7InputStreamMessageStringIterator;
+import io.github.linuxforhealth.api.ConversionMetrics;
+import io.github.linuxforhealth.api.ConversionStage;
+import io.github.linuxforhealth.api.InputDataExtractor;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+import io.github.linuxforhealth.core.metrics.HistogramConversionMetrics;
+import io.github.linuxforhealth.core.metrics.MetricsScope;
+import io.github.linuxforhealth.core.terminology.Hl7v2Mapping;
 import io.github.linuxforhealth.core.terminology.TerminologyLookup;
 import io.github.linuxforhealth.core.terminology.UrlLookup;
-import io.github.linuxforhealth.fhir.FHIRContext;
+import io.github.linuxforhealth.fhir.FHIRResourceMapper;
+import io.github.linuxforhealth.fhir.NDJSONResourceWriter;
 import io.github.linuxforhealth.hl7.message.HL7MessageEngine;
 import io.github.linuxforhealth.hl7.message.HL7MessageModel;
 import io.github.linuxforhealth.hl7.parsing.HL7DataExtractor;
 import io.github.linuxforhealth.hl7.parsing.HL7HapiParser;
+import io.github.linuxforhealth.hl7.parsing.HL7MessageDecoder;
+import io.github.linuxforhealth.hl7.parsing.HL7MessageHeader;
+import io.github.linuxforhealth.hl7.parsing.HL7MessageStreamReader;
+import io.github.linuxforhealth.hl7.parsing.SegmentPruner;
 import io.github.linuxforhealth.hl7.resource.ResourceReader;
 
 /**
  * Converts HL7 message to FHIR bundle resource based on the customizable templates.
+ * <p>
+ * The converter is thread-safe. The templates are loaded once and shared, while the HL7 parser,
+ * the FHIR parser and the message engine are taken from a bounded pool of
+ * {@link ConversionSession} so that each session is only used by one thread at a time. A single
+ * converter instance should be shared by all the worker threads and closed when no longer needed.
+ * <p>
+ * The templates can be reloaded while the converter is in use, see {@link #reloadTemplates()}.
  * 
  *
  * @author pbhallam
  */
-public class HL7ToFHIRConverter {
-  private static HL7HapiParser hparser = new HL7HapiParser();
+public class HL7ToFHIRConverter implements Closeable {
   private static final Logger LOGGER = LoggerFactory.getLogger(HL7ToFHIRConverter.class);
   private static final String FALLBACK_BASE = "Fallback_Base"; // fallback configuration file to use when Trigger Event does not match anything (only used if enabled in supported.hl7.messages)
-  private Map<String, HL7MessageModel> messagetemplates = new HashMap<>();
+  private volatile MessageTemplateRegistry messageTemplates;
+  private final Object reloadLock = new Object();
+  private final ConversionSessionPool sessionPool;
+  private final MessageStructureDiagnostics diagnostics;
+  private final boolean ownsDiagnostics;
+  private final ConversionMetrics metrics;
+  private final boolean partialParsing;
 
   /**
    * Constructor initialized all the templates used for converting the HL7 to FHIR bundle resource.
+   * The number of conversion sessions is bounded by the number of available processors.
    * 
    * @throws IllegalStateException - If any issues are encountered when loading the templates.
    */
   public HL7ToFHIRConverter() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor initialized all the templates used for converting the HL7 to FHIR bundle resource.
+   * 
+   * @param maxSessions - maximum number of messages that can be converted concurrently, callers
+   *        above this limit wait for a session to be released.
+   * @throws IllegalStateException - If any issues are encountered when loading the templates.
+   */
+  public HL7ToFHIRConverter(int maxSessions) {
+    this(maxSessions, null);
+  }
+
+  /**
+   * Constructor initialized all the templates used for converting the HL7 to FHIR bundle resource.
+   * 
+   * @param maxSessions - maximum number of messages that can be converted concurrently, callers
+   *        above this limit wait for a session to be released.
+   * @param diagnostics - logging of the converted message structures, if null the diagnostics are
+   *        created from the converter configuration. Diagnostics provided by the caller are not
+   *        closed with the converter.
+   * @throws IllegalStateException - If any issues are encountered when loading the templates.
+   */
+  public HL7ToFHIRConverter(int maxSessions, MessageStructureDiagnostics diagnostics) {
+    this(maxSessions, diagnostics, ConversionMetrics.NOOP);
+  }
 
+  /**
+   * Constructor initialized all the templates used for converting the HL7 to FHIR bundle resource.
+   * 
+   * @param maxSessions - maximum number of messages that can be converted concurrently, callers
+   *        above this limit wait for a session to be released.
+   * @param diagnostics - logging of the converted message structures, if null the diagnostics are
+   *        created from the converter configuration. Diagnostics provided by the caller are not
+   *        closed with the converter.
+   * @param metrics - receives the latency of each conversion stage and the failure counters, see
+   *        {@link HistogramConversionMetrics}
+   * @throws IllegalStateException - If any issues are encountered when loading the templates.
+   */
+  public HL7ToFHIRConverter(int maxSessions, MessageStructureDiagnostics diagnostics,
+      ConversionMetrics metrics) {
+    Preconditions.checkArgument(maxSessions > 0, "maxSessions should be greater than 0");
+    Preconditions.checkArgument(metrics != null, "metrics cannot be null");
+    this.metrics = metrics;
+    this.sessionPool = new ConversionSessionPool(maxSessions);
+    this.ownsDiagnostics = diagnostics == null;
+    this.diagnostics =
+        diagnostics != null ? diagnostics : MessageStructureDiagnostics.fromConfiguration();
+    this.partialParsing = ConverterConfiguration.getInstance().isPartialParsing();
     try {
-      messagetemplates.putAll(ResourceReader.getInstance().getMessageTemplates());
+      messageTemplates = MessageTemplateRegistry.fromConfiguration();
+      HL7HapiParser.preload(messageTemplates.getMessageTypes());
       TerminologyLookup.init();
       UrlLookup.init();
+      messageTemplates.saveTemplateSnapshot();
     } catch (IllegalArgumentException e) {
       throw new IllegalStateException("Failure to initialize the templates for the converter.", e);
     }
@@ -78,7 +179,8 @@ public class HL7ToFHIRConverter {
   }
 
   /**
-   * Converts the input HL7 file (.hl7) into FHIR bundle resource.
+   * Converts the input HL7 file (.hl7) into FHIR bundle resource. The file is decoded with the
+   * character set declared in MSH-18, UTF-8 if not specified.
    * 
    * @param hl7MessageFile
    * @param options
@@ -89,10 +191,69 @@ public class HL7ToFHIRConverter {
    */
   public String convert(File hl7MessageFile, ConverterOptions options) throws IOException {
     Preconditions.checkArgument(hl7MessageFile != null, "Input HL7 message file cannot be null.");
-    return convert(FileUtils.readFileToString(hl7MessageFile, StandardCharsets.UTF_8), options);
+    try (InputStream in = Files.newInputStream(hl7MessageFile.toPath())) {
+      return convert(in, options);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
 
   }
 
+  /**
+   * Converts the input HL7 message (raw bytes) into FHIR bundle resource. The bytes are decoded
+   * once, with the character set declared in MSH-18, UTF-8 if not specified.
+   * 
+   * @param hl7MessageData - Single message only
+   * @param options
+   * 
+   * @return JSON representation of FHIR {@link Bundle} resource.
+   * @throws UnsupportedOperationException - if message type is not supported
+   */
+  public String convert(byte[] hl7MessageData, ConverterOptions options) {
+    Preconditions.checkArgument(hl7MessageData != null && hl7MessageData.length > 0,
+        "Input HL7 message cannot be empty");
+    return convert(ByteBuffer.wrap(hl7MessageData), options);
+  }
+
+  /**
+   * Converts the input HL7 message (raw bytes) into FHIR bundle resource. The bytes between the
+   * position and the limit of the buffer are decoded once, with the character set declared in
+   * MSH-18, UTF-8 if not specified. The position of the buffer is not changed, so direct and memory
+   * mapped buffers are read in place.
+   * 
+   * @param hl7MessageData - Single message only
+   * @param options
+   * 
+   * @return JSON representation of FHIR {@link Bundle} resource.
+   * @throws UnsupportedOperationException - if message type is not supported
+   */
+  public String convert(ByteBuffer hl7MessageData, ConverterOptions options) {
+    Preconditions.checkArgument(hl7MessageData != null && hl7MessageData.hasRemaining(),
+        "Input HL7 message cannot be empty");
+    Preconditions.checkArgument(options != null, "options cannot be null.");
+    return convert(session -> new CharSequenceReader(
+        session.getMessageDecoder().decode(hl7MessageData)), options, HL7MessageModel::convert);
+  }
+
+  /**
+   * Converts the input HL7 message (input stream) into FHIR bundle resource. The stream is decoded
+   * as it is parsed, with the character set declared in MSH-18, UTF-8 if not specified. The stream
+   * is not closed.
+   * 
+   * @param hl7MessageData - Single message only
+   * @param options
+   * 
+   * @return JSON representation of FHIR {@link Bundle} resource.
+   * @throws UnsupportedOperationException - if message type is not supported
+   * @throws UncheckedIOException - if the input stream cannot be read
+   */
+  public String convert(InputStream hl7MessageData, ConverterOptions options) {
+    Preconditions.checkArgument(hl7MessageData != null, "Input HL7 message cannot be null.");
+    Preconditions.checkArgument(options != null, "options cannot be null.");
+    return convert(session -> session.getMessageDecoder().newReader(hl7MessageData), options,
+        HL7MessageModel::convert);
+  }
+
 
   /**
    * Converts the input HL7 message (String data) into FHIR bundle resource.
@@ -121,79 +282,511 @@ public class HL7ToFHIRConverter {
     Preconditions.checkArgument(StringUtils.isNotBlank(hl7MessageData),
         "Input HL7 message cannot be blank");
     Preconditions.checkArgument(options != null, "options cannot be null.");
-    FHIRContext context = new FHIRContext(options.isPrettyPrint(), options.isValidateResource());
-    HL7MessageEngine engine = new HL7MessageEngine(context, options.getBundleType());
+    return convert(toSource(hl7MessageData), options, HL7MessageModel::convert);
+  }
 
-    Message hl7message = getHl7Message(hl7MessageData);
-    if (hl7message != null) {
-      String messageType = HL7DataExtractor.getMessageType(hl7message);
-      HL7MessageModel hl7MessageTemplateModel = messagetemplates.get(messageType);
-      if (hl7MessageTemplateModel != null) {
-        return hl7MessageTemplateModel.convert(hl7message, engine);
-      } else {
-        // try to get the our fallback template
-        hl7MessageTemplateModel = messagetemplates.get(FALLBACK_BASE);
-        if (hl7MessageTemplateModel != null) {
-          // fallback template is enabled so use it just like a normal message template model
-          return hl7MessageTemplateModel.convert(hl7message, engine);
+  /**
+   * Converts the input HL7 message (String data) into FHIR bundle resource, without encoding it.
+   * Avoids the JSON round trip for callers that work with the FHIR model. The pretty print option
+   * has no effect.
+   * 
+   * @param hl7MessageData
+   * @param options
+   * 
+   * @return FHIR {@link Bundle} resource, null if the message cannot be transformed.
+   * @throws UnsupportedOperationException - if message type is not supported
+   */
+  public Bundle convertToBundle(String hl7MessageData, ConverterOptions options) {
+    Preconditions.checkArgument(StringUtils.isNotBlank(hl7MessageData),
+        "Input HL7 message cannot be blank");
+    Preconditions.checkArgument(options != null, "options cannot be null.");
+    return convert(toSource(hl7MessageData), options, HL7MessageModel::convertToBundle);
+  }
+
+  /**
+   * Converts the input HL7 message (String data) into FHIR resources.
+   * 
+   * @param hl7MessageData
+   * @param options
+   * 
+   * @return List of FHIR {@link Resource} in bundle entry order, empty if the message cannot be
+   *         transformed.
+   * @throws UnsupportedOperationException - if message type is not supported
+   */
+  public List<Resource> convertToResources(String hl7MessageData, ConverterOptions options) {
+    Bundle bundle = convertToBundle(hl7MessageData, options);
+    if (bundle == null) {
+      return new ArrayList<>();
+    }
+    return bundle.getEntry().stream().map(BundleEntryComponent::getResource)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Converts the input HL7 message (String data) and encodes the FHIR bundle directly onto the
+   * writer, without building the JSON representation in memory. The writer is not closed.
+   * 
+   * @param hl7MessageData
+   * @param options
+   * @param writer
+   * 
+   * @return true if the bundle was written, false if the message cannot be transformed.
+   * @throws UnsupportedOperationException - if message type is not supported
+   * @throws UncheckedIOException - if the writer fails
+   */
+  public boolean convert(String hl7MessageData, ConverterOptions options, Writer writer) {
+    Preconditions.checkArgument(StringUtils.isNotBlank(hl7MessageData),
+        "Input HL7 message cannot be blank");
+    Preconditions.checkArgument(options != null, "options cannot be null.");
+    Preconditions.checkArgument(writer != null, "writer cannot be null.");
+    return convert(toSource(hl7MessageData), options,
+        (template, dataSource, engine) -> template.convert(dataSource, engine, writer));
+  }
+
+  /**
+   * Converts the input HL7 message (String data) and encodes the FHIR bundle as UTF-8 JSON
+   * directly onto the output stream. The output stream is flushed but not closed.
+   * 
+   * @param hl7MessageData
+   * @param options
+   * @param out
+   * 
+   * @return true if the bundle was written, false if the message cannot be transformed.
+   * @throws UnsupportedOperationException - if message type is not supported
+   * @throws UncheckedIOException - if the output stream fails
+   */
+  public boolean convert(String hl7MessageData, ConverterOptions options, OutputStream out) {
+    Preconditions.checkArgument(out != null, "output stream cannot be null.");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    boolean written = convert(hl7MessageData, options, writer);
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failure writing the FHIR bundle.", e);
+    }
+    return written;
+  }
+
+  /**
+   * Converts the input HL7 message (String data) and appends the FHIR resources to the NDJSON
+   * files of their resource type, without building the bundle JSON. The resources of a message are
+   * only written if the whole message is converted.
+   * 
+   * @param hl7MessageData
+   * @param options - the pretty print option has no effect, NDJSON is always compact
+   * @param ndjson - writer shared by all the conversions of a bulk export
+   * 
+   * @return true if the resources were written, false if the message cannot be transformed.
+   * @throws UnsupportedOperationException - if message type is not supported
+   * @throws UncheckedIOException - if the NDJSON files cannot be written
+   */
+  public boolean convert(String hl7MessageData, ConverterOptions options,
+      NDJSONResourceWriter ndjson) {
+    Preconditions.checkArgument(StringUtils.isNotBlank(hl7MessageData),
+        "Input HL7 message cannot be blank");
+    Preconditions.checkArgument(options != null, "options cannot be null.");
+    Preconditions.checkArgument(ndjson != null, "ndjson cannot be null.");
+    return convert(toSource(hl7MessageData), options,
+        (template, dataSource, engine) -> template.convert(dataSource, engine, ndjson));
+  }
+
+  /**
+   * Converts a batch of HL7 messages in parallel. The messages are converted on a thread pool
+   * created for this call and shut down when the batch completes.
+   * 
+   * @param hl7Messages - messages to convert, one HL7 message per element
+   * @param options
+   * @param parallelism - number of messages converted concurrently
+   * 
+   * @return List of {@link ConversionResult} in the same order as the input. A message that cannot
+   *         be converted does not fail the batch, its result holds the exception instead.
+   */
+  public List<ConversionResult> convertAll(Iterable<String> hl7Messages, ConverterOptions options,
+      int parallelism) {
+    Preconditions.checkArgument(parallelism > 0, "parallelism should be greater than 0");
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      return convertAll(hl7Messages, options, parallelism, executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Converts a stream of HL7 messages in parallel.
+   * 
+   * @see #convertAll(Iterable, ConverterOptions, int)
+   */
+  public List<ConversionResult> convertAll(Stream<String> hl7Messages, ConverterOptions options,
+      int parallelism) {
+    Preconditions.checkArgument(hl7Messages != null, "Input HL7 messages cannot be null.");
+    return convertAll(hl7Messages::iterator, options, parallelism);
+  }
+
+  /**
+   * Converts a batch of HL7 messages on the executor provided by the caller. At most parallelism
+   * messages are submitted to the executor at any time, the input is consumed as the conversions
+   * complete.
+   * 
+   * @param hl7Messages - messages to convert, one HL7 message per element
+   * @param options
+   * @param parallelism - maximum number of messages submitted to the executor concurrently
+   * @param executor - executor used for running the conversions, it is not shut down by this method
+   * 
+   * @return List of {@link ConversionResult} in the same order as the input.
+   */
+  public List<ConversionResult> convertAll(Iterable<String> hl7Messages, ConverterOptions options,
+      int parallelism, Executor executor) {
+    Preconditions.checkArgument(hl7Messages != null, "Input HL7 messages cannot be null.");
+    Preconditions.checkArgument(options != null, "options cannot be null.");
+    Preconditions.checkArgument(parallelism > 0, "parallelism should be greater than 0");
+    Preconditions.checkArgument(executor != null, "executor cannot be null.");
+
+    Semaphore inFlight = new Semaphore(parallelism);
+    List<CompletableFuture<ConversionResult>> results = new ArrayList<>();
+    long index = 0;
+    for (String hl7MessageData : hl7Messages) {
+      acquire(inFlight);
+      long messageIndex = index++;
+      CompletableFuture<ConversionResult> result;
+      try {
+        result = CompletableFuture
+            .supplyAsync(() -> convertSafely(messageIndex, hl7MessageData, options), executor);
+      } catch (RuntimeException e) {
+        inFlight.release();
+        throw e;
+      }
+      results.add(result.whenComplete((r, e) -> inFlight.release()));
+    }
+
+    List<ConversionResult> orderedResults = new ArrayList<>(results.size());
+    for (CompletableFuture<ConversionResult> result : results) {
+      try {
+        orderedResults.add(result.join());
+      } catch (CompletionException e) {
+        // convertSafely does not throw, so this is a failure of the executor itself
+        throw new IllegalStateException("Failure running the batch conversion.", e.getCause());
+      }
+    }
+    return orderedResults;
+  }
+
+  /**
+   * Converts a stream containing any number of HL7 messages, for example a batch file with FHS/BHS
+   * envelope, into FHIR bundle resources. The input is read lazily as the returned stream is
+   * consumed, only one message is held in memory at a time. The input is decoded with the
+   * character set declared in MSH-18 of the first message, UTF-8 if not specified, all the messages
+   * of the stream are expected to share it.
+   * <p>
+   * The returned stream should be closed once consumed, closing it closes the input stream.
+   * 
+   * @param hl7Messages - stream of ER7 encoded HL7 messages
+   * @param options
+   * 
+   * @return Lazy, sequential stream of {@link ConversionResult}, one per message in input order. A
+   *         message that cannot be converted does not end the stream, its result holds the
+   *         exception instead.
+   * @throws UncheckedIOException - if the input cannot be read
+   */
+  public Stream<ConversionResult> convertStream(InputStream hl7Messages,
+      ConverterOptions options) {
+    Preconditions.checkArgument(hl7Messages != null, "Input HL7 messages cannot be null.");
+    Preconditions.checkArgument(options != null, "options cannot be null.");
+    HL7MessageStreamReader reader;
+    try {
+      // the decoder of a session cannot be used, the stream outlives the conversions
+      reader = new HL7MessageStreamReader(new HL7MessageDecoder().newReader(hl7Messages));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read the messages.", e);
+    }
+    AtomicLong index = new AtomicLong();
+    return StreamSupport
+        .stream(Spliterators.spliteratorUnknownSize(reader,
+            Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .map(hl7MessageData -> convertSafely(index.getAndIncrement(), hl7MessageData, options))
+        .onClose(() -> {
+          try {
+            reader.close();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  /**
+   * Converts a HL7 file containing any number of messages into FHIR bundle resources.
+   * 
+   * @param hl7MessageFile - path of the file, single message, multiple messages or batch file
+   * @param options
+   * 
+   * @return Lazy stream of {@link ConversionResult}, it should be closed to release the file.
+   * @throws IOException - if the file cannot be opened or read
+   * @see #convertStream(InputStream, ConverterOptions)
+   */
+  public Stream<ConversionResult> convertStream(Path hl7MessageFile, ConverterOptions options)
+      throws IOException {
+    Preconditions.checkArgument(hl7MessageFile != null, "Input HL7 message file cannot be null.");
+    Preconditions.checkArgument(options != null, "options cannot be null.");
+    InputStream in = Files.newInputStream(hl7MessageFile);
+    try {
+      return convertStream(in, options);
+    } catch (UncheckedIOException e) {
+      in.close();
+      throw e.getCause();
+    }
+  }
+
+  private ConversionResult convertSafely(long index, String hl7MessageData,
+      ConverterOptions options) {
+    return convertSafely(index, () -> convert(hl7MessageData, options));
+  }
+
+  /**
+   * Runs the conversion of the message at the index, reporting a failure in the result instead of
+   * throwing it.
+   */
+  ConversionResult convertSafely(long index, Supplier<String> conversion) {
+    try {
+      String output = conversion.get();
+      if (output == null) {
+        return ConversionResult.failure(index,
+            new IllegalStateException("Error transforming HL7 message, see logs."));
+      }
+      return ConversionResult.success(index, output);
+    } catch (RuntimeException e) {
+      // The exception is not logged as the message can contain PHI.
+      LOGGER.warn("Failure converting message at index {}.", index);
+      return ConversionResult.failure(index, e);
+    }
+  }
+
+  private static void acquire(Semaphore semaphore) {
+    try {
+      semaphore.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a conversion to complete.", e);
+    }
+  }
+
+  private <T> T convert(MessageSource source, ConverterOptions options,
+      MessageConversion<T> conversion) {
+    // the conversion uses the templates and mappings current when it starts, even if reloaded
+    MessageTemplateRegistry templates = messageTemplates;
+    return templates.getResourceReader()
+        .callWith(() -> convert(source, options, conversion, templates));
+  }
+
+  private <T> T convert(MessageSource source, ConverterOptions options,
+      MessageConversion<T> conversion, MessageTemplateRegistry templates) {
+    ConversionSession session = sessionPool.borrow();
+    try {
+      HL7MessageEngine engine = session.getEngine(options);
+
+      long parseStart = System.nanoTime();
+      String hl7text;
+      try {
+        hl7text = readMessage(source, session);
+      } catch (RuntimeException e) {
+        metrics.incrementFailures(ConversionMetrics.UNKNOWN_MESSAGE_TYPE);
+        throw e;
+      }
+      // the message is routed to its template from its header, unsupported message types are
+      // rejected before the message is parsed
+      HL7MessageHeader header = hl7text != null ? HL7MessageHeader.scan(hl7text) : null;
+      String messageType = header != null ? header.getMessageType() : null;
+      HL7MessageModel template = null;
+      if (messageType != null) {
+        try {
+          template = getMessageTemplate(templates, messageType);
+        } catch (RuntimeException e) {
+          metrics.incrementFailures(messageType);
+          throw e;
+        }
+      }
+      // the segments the template never reads are reduced to their name, so that their fields
+      // are not parsed
+      boolean pruned = partialParsing && template != null;
+      Message hl7message;
+      try {
+        hl7message = parse(hl7text, header, pruned ? template : null, session);
+        if (hl7message == null) {
+          throw new IllegalArgumentException("Parsed HL7 message was null.");
+        }
+      } catch (RuntimeException e) {
+        metrics.incrementFailures(
+            messageType != null ? messageType : ConversionMetrics.UNKNOWN_MESSAGE_TYPE);
+        throw e;
+      }
+      long parseNanos = System.nanoTime() - parseStart;
+      if (messageType == null) {
+        // the header could not be read from the text, the type is read from the parsed message
+        messageType = HL7DataExtractor.getMessageType(hl7message);
+      }
+      try (MetricsScope scope = MetricsScope.open(metrics, messageType)) {
+        scope.addLatency(ConversionStage.PARSE, parseNanos);
+        if (template == null) {
+          template = getMessageTemplate(templates, messageType);
+        }
+        T result = conversion.convert(template,
+            HL7MessageModel.newDataSource(hl7text, hl7message), engine);
+        if (result == null || Boolean.FALSE.equals(result)) {
+          metrics.incrementFailures(messageType);
+        }
+        return result;
+      } catch (RuntimeException e) {
+        metrics.incrementFailures(messageType);
+        throw e;
+      } finally {
+        if (pruned) {
+          // the structure of the original message, not of the pruned one
+          diagnostics.submit(hl7text, messageType);
         } else {
-          // it is not enabled by being in the supported.hl7.messages
-          throw new UnsupportedOperationException("Message type not yet supported " + messageType);
+          // the structure is rendered once the conversion no longer reads the message
+          diagnostics.submit(hl7message, messageType);
         }
       }
+    } finally {
+      sessionPool.release(session);
+    }
+  }
+
+  private static HL7MessageModel getMessageTemplate(MessageTemplateRegistry templates,
+      String messageType) {
+    HL7MessageModel hl7MessageTemplateModel = templates.get(messageType);
+    if (hl7MessageTemplateModel != null) {
+      return hl7MessageTemplateModel;
     } else {
-      throw new IllegalArgumentException("Parsed HL7 message was null.");
+      // try to get the our fallback template
+      hl7MessageTemplateModel = templates.get(FALLBACK_BASE);
+      if (hl7MessageTemplateModel != null) {
+        // fallback template is enabled so use it just like a normal message template model
+        return hl7MessageTemplateModel;
+      } else {
+        // it is not enabled by being in the supported.hl7.messages
+        throw new UnsupportedOperationException("Message type not yet supported " + messageType);
+      }
     }
   }
 
-  
-  private static Message getHl7Message(String data) {
-    Message hl7message = null;
-    try (InputStream ins = IOUtils.toInputStream(data, StandardCharsets.UTF_8)) {
-      Hl7InputStreamMessageStringIterator iterator = new Hl7InputStreamMessageStringIterator(ins);
+  /**
+   * Produces the output of the conversion from the message template and the data of the message.
+   */
+  @FunctionalInterface
+  private interface MessageConversion<T> {
+    T convert(HL7MessageModel template, InputDataExtractor dataSource, HL7MessageEngine engine);
+  }
+
+  /**
+   * Provides the characters of the message to parse, decoded with the session resources.
+   */
+  @FunctionalInterface
+  private interface MessageSource {
+    Reader open(ConversionSession session) throws IOException;
+  }
+
+  private static MessageSource toSource(String hl7MessageData) {
+    return session -> new StringReader(hl7MessageData);
+  }
+
+  // the text of the first message of the source, null if the source is empty
+  private static String readMessage(MessageSource source, ConversionSession session) {
+    try {
+      // the reader is not closed, closing it would close the caller's input stream
+      Hl7InputStreamMessageStringIterator iterator =
+          new Hl7InputStreamMessageStringIterator(source.open(session));
       // only supports single message conversion.
-      if (iterator.hasNext()) {
-        
-        hl7message = hparser.getParser().parse(iterator.next());
-      }
-    } catch (HL7Exception e) {
-      throw new IllegalArgumentException("Cannot parse the message.", e);
+      return iterator.hasNext() ? iterator.next() : null;
     } catch (IOException ioe) {
-      throw new IllegalArgumentException("IOException encountered.", ioe);
-    }
-
-    try{
-        if(hl7message != null) {
-            String messageStructureInfo = hl7message.printStructure();
-            StringBuilder output = new StringBuilder();
-            String[] messageStructureInfoLines = messageStructureInfo.split(System.getProperty("line.separator"));
-            for (String line: messageStructureInfoLines) {
-                if(!line.contains("|")) {
-                    output.append(line);
-                }
-                else {
-                    int firstDash = line.indexOf("-");
-                    output.append(line.substring(0, firstDash+5));
-                }
-                output.append("\n");
-            }
-            if(output.length() > 0) {
-                LOGGER.info("HL7_MESSAGE_STRUCTURE=\n{}",output);
-            }
-        }
+      throw new UncheckedIOException("Cannot read the message.", ioe);
+    }
+  }
+
+  // parses the message, pruned to the segments the template reads when a template is given
+  private Message parse(String message, HL7MessageHeader header, HL7MessageModel template,
+      ConversionSession session) {
+    if (message == null) {
+      return null;
+    }
+    String text = message;
+    if (template != null) {
+      text = SegmentPruner.prune(message, template.getReferencedSegments());
+    }
+    try {
+      return session.getHapiParser().parse(text, header);
     } catch (HL7Exception e) {
-        throw new IllegalArgumentException("Error printing message structure.", e);
+      throw new IllegalArgumentException("Cannot parse the message.", e);
     }
-    return hl7message;
   }
 
-  private static void close(HL7HapiParser hparser) {
-    if (hparser != null) {
+  /**
+   * Reloads the message templates and the mappings (coding systems, extension urls, v2 to FHIR
+   * mappings and FHIR resource mapping) from their resources, without restarting the converter.
+   * The new templates are loaded on a background thread and the message templates in use are built
+   * from them, then the new templates replace the current ones for the conversions starting after
+   * the swap. Conversions in progress complete with the templates they started with. If the new
+   * templates cannot be loaded, the current ones are kept.
+   * <p>
+   * The converter configuration (config.properties) is not reloaded. Other converters of the
+   * application keep their templates until they are reloaded, converters created after the reload
+   * use the new templates.
+   * 
+   * @return future completed once the new templates are in use, completed exceptionally with
+   *         {@link IllegalStateException} if they cannot be loaded
+   */
+  public CompletableFuture<Void> reloadTemplates() {
+    CompletableFuture<Void> reloaded = new CompletableFuture<>();
+    Thread thread = new Thread(() -> {
+      try {
+        reload();
+        reloaded.complete(null);
+      } catch (RuntimeException e) {
+        reloaded.completeExceptionally(e);
+      }
+    }, "hl7-template-reload");
+    thread.setDaemon(true);
+    thread.start();
+    return reloaded;
+  }
+
+  private void reload() {
+    synchronized (reloadLock) {
+      MessageTemplateRegistry current = messageTemplates;
+      ResourceReader reader = ResourceReader.newInstance();
+      MessageTemplateRegistry reloaded;
       try {
-        hparser.getContext().close();
-      } catch (IOException e) {
-        throw new IllegalStateException("Failure to close HL7 parser.", e);
+        reloaded = reader.callWith(() -> {
+          MessageTemplateRegistry registry = MessageTemplateRegistry.fromConfiguration();
+          // the templates in use are built before the swap, so conversions never wait for them
+          registry.load(current.getMessageTypes().stream().filter(current::isLoaded)
+              .collect(Collectors.toList()));
+          UrlLookup.init();
+          Hl7v2Mapping.init();
+          FHIRResourceMapper.init();
+          return registry;
+        });
+      } catch (IllegalArgumentException | IllegalStateException e) {
+        LOGGER.warn("Cannot reload the templates, the current templates are kept.");
+        throw new IllegalStateException("Failure to reload the templates.", e);
       }
+      ResourceReader.install(reader);
+      messageTemplates = reloaded;
+      current.close();
+      reloaded.saveTemplateSnapshot();
+      LOGGER.info("Templates reloaded.");
+    }
+  }
+
+  /**
+   * Closes the pooled conversion sessions. Conversions that are in progress complete normally,
+   * new conversions are rejected with {@link IllegalStateException}.
+   */
+  @Override
+  public void close() {
+    sessionPool.close();
+    messageTemplates.close();
+    if (ownsDiagnostics) {
+      diagnostics.close();
     }
   }
 }
@@ -0,0 +1,239 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+import io.github.linuxforhealth.hl7.parsing.HL7HapiParser;
+import io.github.linuxforhealth.hl7.parsing.HL7MessageHeader;
+
+/**
+ * Opt-in logging of the structure of the converted HL7 messages. The field values are trimmed from
+ * the rendered structure so that only the segment and field names reach the log.
+ * <p>
+ * Rendering the structure of a large message costs about as much as parsing it, so it is disabled
+ * by default. When enabled, a sample of the messages, optionally restricted to some message types,
+ * is rendered on a background thread and the logged output is capped to a maximum size. Messages
+ * submitted while the background queue is full are not rendered.
+ * <p>
+ * Messages parsed partially, with the segments their template does not read reduced to their name,
+ * are submitted as text: the selected messages are parsed in full on the background thread, so the
+ * logged structure is the structure of the original message.
+ *
+ */
+public class MessageStructureDiagnostics implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageStructureDiagnostics.class);
+
+  public static final MessageStructureDiagnostics DISABLED = new Builder().build();
+
+  private static final int DEFAULT_MAX_CHARS = 8192;
+  private static final int QUEUE_CAPACITY = 64;
+  private static final String TRUNCATED = "...[truncated]";
+
+  private final double sampleRate;
+  private final Set<String> messageTypes;
+  private final int maxChars;
+  private final ExecutorService renderer;
+  // parses the messages submitted as text, only used by the renderer thread
+  private HL7HapiParser parser;
+
+  private MessageStructureDiagnostics(Builder builder) {
+    this.sampleRate = builder.sampleRate;
+    this.messageTypes = ImmutableSet.copyOf(builder.messageTypes);
+    this.maxChars = builder.maxChars;
+    if (sampleRate > 0) {
+      this.renderer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+            Thread t = new Thread(r, "hl7-structure-diagnostics");
+            t.setDaemon(true);
+            return t;
+          }, new ThreadPoolExecutor.DiscardPolicy());
+    } else {
+      this.renderer = null;
+    }
+  }
+
+  /**
+   * Creates the diagnostics from the structure.diagnostics.* settings of the converter
+   * configuration, disabled unless a sample rate is configured.
+   *
+   * @return {@link MessageStructureDiagnostics}
+   */
+  public static MessageStructureDiagnostics fromConfiguration() {
+    ConverterConfiguration config = ConverterConfiguration.getInstance();
+    if (config.getStructureDiagnosticsSampleRate() <= 0) {
+      return DISABLED;
+    }
+    return new Builder().withSampleRate(config.getStructureDiagnosticsSampleRate())
+        .withMessageTypes(config.getStructureDiagnosticsMessageTypes())
+        .withMaxChars(config.getStructureDiagnosticsMaxChars()).build();
+  }
+
+  public static class Builder {
+    private double sampleRate;
+    private Set<String> messageTypes = new HashSet<>();
+    private int maxChars = DEFAULT_MAX_CHARS;
+
+    /**
+     * Fraction of the messages whose structure is logged, 0 disables the diagnostics and 1 logs
+     * every message.
+     */
+    public Builder withSampleRate(double sampleRate) {
+      Preconditions.checkArgument(sampleRate >= 0 && sampleRate <= 1,
+          "sampleRate should be between 0 and 1");
+      this.sampleRate = sampleRate;
+      return this;
+    }
+
+    /**
+     * Restricts the diagnostics to the message types, for example ORU_R01. All the message types
+     * are logged when none are provided.
+     */
+    public Builder withMessageTypes(Iterable<String> messageTypes) {
+      Preconditions.checkArgument(messageTypes != null, "messageTypes cannot be null");
+      messageTypes.forEach(this.messageTypes::add);
+      return this;
+    }
+
+    /**
+     * Maximum number of characters of the rendered structure written to the log.
+     */
+    public Builder withMaxChars(int maxChars) {
+      Preconditions.checkArgument(maxChars > 0, "maxChars should be greater than 0");
+      this.maxChars = maxChars;
+      return this;
+    }
+
+    public MessageStructureDiagnostics build() {
+      return new MessageStructureDiagnostics(this);
+    }
+  }
+
+  public boolean isEnabled() {
+    return renderer != null;
+  }
+
+  /**
+   * Schedules the logging of the message structure if the message is selected by the message type
+   * filter and the sampling. The message should not be modified after it has been submitted.
+   *
+   * @param hl7message
+   * @param messageType - message type and trigger event, for example ADT_A01
+   */
+  public void submit(Message hl7message, String messageType) {
+    if (renderer == null || hl7message == null || !isSelected(messageType)) {
+      return;
+    }
+    if (!renderer.isShutdown()) {
+      renderer.execute(() -> log(hl7message));
+    }
+  }
+
+  /**
+   * Schedules the logging of the message structure if the message is selected by the message type
+   * filter and the sampling. Only the selected messages are parsed, on the background thread.
+   *
+   * @param hl7message - ER7 text of the message
+   * @param messageType - message type and trigger event, for example ADT_A01
+   */
+  public void submit(String hl7message, String messageType) {
+    if (renderer == null || hl7message == null || !isSelected(messageType)) {
+      return;
+    }
+    if (!renderer.isShutdown()) {
+      renderer.execute(() -> log(hl7message));
+    }
+  }
+
+  private boolean isSelected(String messageType) {
+    if (!messageTypes.isEmpty() && !messageTypes.contains(messageType)) {
+      return false;
+    }
+    return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+  }
+
+  private void log(String hl7message) {
+    try {
+      log(parse(hl7message));
+    } catch (HL7Exception | RuntimeException e) {
+      // The exception is not logged as the message can contain PHI.
+      LOGGER.warn("Error parsing message for its structure.");
+    }
+  }
+
+  private void log(Message hl7message) {
+    try {
+      String output = render(hl7message, maxChars);
+      if (!output.isEmpty()) {
+        LOGGER.info("HL7_MESSAGE_STRUCTURE=\n{}", output);
+      }
+    } catch (HL7Exception | RuntimeException e) {
+      // The exception is not logged as the message can contain PHI.
+      LOGGER.warn("Error printing message structure.");
+    }
+  }
+
+  // parses all the segments of the message, on the renderer thread
+  Message parse(String hl7message) throws HL7Exception {
+    if (parser == null) {
+      parser = new HL7HapiParser();
+    }
+    return parser.parse(hl7message, HL7MessageHeader.scan(hl7message));
+  }
+
+  /**
+   * Renders the structure of the message without the field values, the output is truncated after
+   * maxChars characters.
+   *
+   * @param hl7message
+   * @param maxChars
+   * @return String
+   * @throws HL7Exception
+   */
+  static String render(Message hl7message, int maxChars) throws HL7Exception {
+    String messageStructureInfo = hl7message.printStructure();
+    StringBuilder output = new StringBuilder();
+    for (String line : messageStructureInfo.split("\\R")) {
+      if (!line.contains("|")) {
+        output.append(line);
+      } else {
+        int firstDash = line.indexOf('-');
+        output.append(line, 0, Math.min(line.length(), firstDash + 5));
+      }
+      output.append("\n");
+      if (output.length() > maxChars) {
+        output.setLength(maxChars);
+        output.append(TRUNCATED);
+        break;
+      }
+    }
+    return output.toString();
+  }
+
+  /**
+   * Stops the background rendering, the messages already queued are discarded.
+   */
+  @Override
+  public void close() {
+    if (renderer != null) {
+      renderer.shutdownNow();
+    }
+  }
+
+}
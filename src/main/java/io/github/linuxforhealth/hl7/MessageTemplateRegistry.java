@@ -0,0 +1,300 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.io.Files;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+import io.github.linuxforhealth.hl7.message.HL7MessageModel;
+import io.github.linuxforhealth.hl7.resource.ResourceReader;
+
+/**
+ * Message templates of the converter by message type.
+ * <p>
+ * Templates are either all loaded when the registry is created, or registered by name only and
+ * loaded when a message of their type is first converted. With lazy loading and preload enabled, a
+ * background thread started by the first conversion loads the remaining templates, those whose
+ * message code (ADT, ORU...) was seen most often first. Without preload, templates of message
+ * types that are never converted are never loaded.
+ * <p>
+ * The templates are loaded from the resource reader returned by
+ * {@link ResourceReader#getInstance()} when the registry is created, also when they are loaded
+ * lazily after another reader was installed.
+ *
+ */
+public class MessageTemplateRegistry implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageTemplateRegistry.class);
+
+  private final ResourceReader reader;
+  // message templates by message type, in the order of supported.hl7.messages
+  private final Map<String, Template> templates;
+  private final boolean preload;
+  // number of messages converted by message code, messages without template included
+  private final Map<String, LongAdder> traffic = new ConcurrentHashMap<>();
+  private final AtomicBoolean preloadStarted = new AtomicBoolean();
+  private volatile Thread preloader;
+
+  private MessageTemplateRegistry(List<String> templateNames, boolean lazy, boolean preload) {
+    Preconditions.checkArgument(templateNames != null, "templateNames cannot be null");
+    this.reader = ResourceReader.getInstance();
+    Map<String, Template> byType = new LinkedHashMap<>();
+    for (String templateName : templateNames) {
+      byType.put(Files.getNameWithoutExtension(templateName), new Template(reader, templateName));
+    }
+    this.templates = Collections.unmodifiableMap(byType);
+    this.preload = lazy && preload;
+    if (!lazy) {
+      templates.values().parallelStream().forEach(Template::get);
+    }
+  }
+
+  /**
+   * Creates a registry with all the templates loaded.
+   *
+   * @param templateNames - names of the message templates, as listed in supported.hl7.messages
+   * @return {@link MessageTemplateRegistry}
+   * @throws IllegalStateException - if a template cannot be loaded
+   */
+  public static MessageTemplateRegistry eager(List<String> templateNames) {
+    return new MessageTemplateRegistry(templateNames, false, false);
+  }
+
+  /**
+   * Creates a registry loading each template on first use.
+   *
+   * @param templateNames - names of the message templates, as listed in supported.hl7.messages
+   * @param preload - if true the templates not yet used are loaded in the background once the
+   *        first message is converted
+   * @return {@link MessageTemplateRegistry}
+   */
+  public static MessageTemplateRegistry lazy(List<String> templateNames, boolean preload) {
+    return new MessageTemplateRegistry(templateNames, true, preload);
+  }
+
+  /**
+   * Creates the registry of the supported.hl7.messages templates, loaded as configured by the
+   * template.loading and template.preload settings.
+   *
+   * @return {@link MessageTemplateRegistry}
+   * @throws IllegalStateException - if the templates are loaded eagerly and one cannot be loaded
+   */
+  public static MessageTemplateRegistry fromConfiguration() {
+    ConverterConfiguration config = ConverterConfiguration.getInstance();
+    return new MessageTemplateRegistry(config.getSupportedMessageTemplates(),
+        config.isLazyTemplateLoading(), config.isTemplatePreload());
+  }
+
+  /**
+   * Returns the template of the message type, loading it if needed, and records the message type
+   * as observed traffic.
+   *
+   * @param messageType - message type, for example ADT_A01
+   * @return the message template, null if the message type has no template
+   * @throws IllegalStateException - if the template cannot be loaded
+   */
+  public HL7MessageModel get(String messageType) {
+    Preconditions.checkArgument(StringUtils.isNotBlank(messageType),
+        "messageType cannot be blank");
+    traffic.computeIfAbsent(getMessageCode(messageType), k -> new LongAdder()).increment();
+    Template template = templates.get(messageType);
+    if (template == null) {
+      return null;
+    }
+    HL7MessageModel model = template.get();
+    if (preload && preloadStarted.compareAndSet(false, true)) {
+      startPreload();
+    }
+    return model;
+  }
+
+  /**
+   * Returns the segments the template of the message type can read, loading the template if
+   * needed, without recording traffic.
+   *
+   * @param messageType - message type, for example ADT_A01
+   * @return names of the segments, null if the message type has no template
+   * @throws IllegalStateException - if the template cannot be loaded
+   * @see HL7MessageModel#getReferencedSegments()
+   */
+  public Set<String> getReferencedSegments(String messageType) {
+    Preconditions.checkArgument(StringUtils.isNotBlank(messageType),
+        "messageType cannot be blank");
+    Template template = templates.get(messageType);
+    return template != null ? template.get().getReferencedSegments() : null;
+  }
+
+  /**
+   * Loads the templates of the message types, in parallel, without recording traffic.
+   *
+   * @param messageTypes - message types with a template
+   * @throws IllegalStateException - if a template cannot be loaded
+   */
+  public void load(Collection<String> messageTypes) {
+    Preconditions.checkArgument(messageTypes != null, "messageTypes cannot be null");
+    messageTypes.parallelStream().map(templates::get).filter(Objects::nonNull)
+        .forEach(Template::get);
+  }
+
+  /**
+   * @return message types with a template, in the order of supported.hl7.messages
+   */
+  public Set<String> getMessageTypes() {
+    return templates.keySet();
+  }
+
+  /**
+   * @param messageType - message type, for example ADT_A01
+   * @return true if the template of the message type is loaded
+   */
+  public boolean isLoaded(String messageType) {
+    Template template = templates.get(messageType);
+    return template != null && template.model != null;
+  }
+
+  /**
+   * @return the resource reader the templates are loaded from
+   */
+  public ResourceReader getResourceReader() {
+    return reader;
+  }
+
+  /**
+   * Stops the background preload, templates being loaded complete normally. Templates are still
+   * loaded on first use after the registry is closed.
+   */
+  @Override
+  public void close() {
+    preloadStarted.set(true);
+    Thread thread = preloader;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Returns the message type of the next template to preload: the template not loaded whose
+   * message code has the most traffic, in the order of supported.hl7.messages for equal traffic.
+   *
+   * @return message type, null if all the templates are loaded or failed to load
+   */
+  String nextToPreload() {
+    String next = null;
+    long nextTraffic = -1;
+    for (Map.Entry<String, Template> e : templates.entrySet()) {
+      Template template = e.getValue();
+      if (template.model != null || template.failed) {
+        continue;
+      }
+      LongAdder count = traffic.get(getMessageCode(e.getKey()));
+      long observed = count != null ? count.sum() : 0;
+      if (observed > nextTraffic) {
+        next = e.getKey();
+        nextTraffic = observed;
+      }
+    }
+    return next;
+  }
+
+  private void startPreload() {
+    Thread thread = new Thread(this::preload, "hl7-template-preload");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    preloader = thread;
+    thread.start();
+  }
+
+  private void preload() {
+    String messageType;
+    while (!Thread.currentThread().isInterrupted() && (messageType = nextToPreload()) != null) {
+      Template template = templates.get(messageType);
+      try {
+        template.get();
+      } catch (IllegalStateException e) {
+        // loaded again and reported when a message of the type is converted
+        template.failed = true;
+        LOGGER.warn("Cannot preload template {}", template.name);
+        LOGGER.debug("Cannot preload template {}", template.name, e);
+      }
+    }
+    if (nextToPreload() == null) {
+      LOGGER.info("All message templates are loaded.");
+      saveTemplateSnapshot();
+    }
+  }
+
+  /**
+   * Writes the template snapshot of the reader, when a snapshot file is configured, so that the
+   * next start does not parse the templates again. Once all the templates are loaded the reader
+   * releases the snapshot, it is not needed anymore.
+   */
+  void saveTemplateSnapshot() {
+    if (nextToPreload() == null) {
+      reader.releaseTemplateSnapshot();
+    } else {
+      reader.saveTemplateSnapshot();
+    }
+  }
+
+  private static String getMessageCode(String messageType) {
+    int separator = messageType.indexOf('_');
+    return separator > 0 ? messageType.substring(0, separator) : messageType;
+  }
+
+  /**
+   * Template loaded once, on first use.
+   */
+  private static class Template {
+    private final ResourceReader reader;
+    private final String name;
+    private volatile HL7MessageModel model;
+    private volatile boolean failed;
+
+    private Template(ResourceReader reader, String name) {
+      this.reader = reader;
+      this.name = name;
+    }
+
+    private HL7MessageModel get() {
+      HL7MessageModel loaded = model;
+      if (loaded == null) {
+        synchronized (this) {
+          loaded = model;
+          if (loaded == null) {
+            loaded = load();
+            model = loaded;
+          }
+        }
+      }
+      return loaded;
+    }
+
+    private HL7MessageModel load() {
+      long start = System.nanoTime();
+      try {
+        HL7MessageModel loaded = reader.getMessageModel(name);
+        LOGGER.debug("Loaded template {} in {} ms", name, (System.nanoTime() - start) / 1000000);
+        return loaded;
+      } catch (IllegalArgumentException e) {
+        throw new IllegalStateException("Failure to load the message template " + name, e);
+      }
+    }
+  }
+
+}
@@ -10,6 +10,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +30,7 @@ import io.github.linuxforhealth.core.exception.RequiredConstraintFailureExceptio
 import io.github.linuxforhealth.core.expression.EmptyEvaluationResult;
 import io.github.linuxforhealth.core.expression.EvaluationResultFactory;
 import io.github.linuxforhealth.core.expression.VariableUtils;
+import io.github.linuxforhealth.core.metrics.TemplateProfiler;
 import io.github.linuxforhealth.hl7.expression.specification.SpecificationUtil;
 
 public abstract class AbstractExpression implements Expression {
@@ -38,9 +40,10 @@ public abstract class AbstractExpression implements Expression {
   private static final Logger LOGGER = LoggerFactory.getLogger(AbstractExpression.class);
 
 
+  // Expressions are shared by all the threads converting messages, so evaluation state is kept in
+  // local variables and not in fields.
   private ExpressionAttributes attr;
-  private String originalContext;
-  private boolean conditionSatisfiedState;
+
   public AbstractExpression(ExpressionAttributes attr) {
     this.attr = attr;
   }
@@ -100,8 +103,9 @@ public abstract class AbstractExpression implements Expression {
     Preconditions.checkArgument(contextValues != null, "contextValues cannot be null");
     Preconditions.checkArgument(baseValue != null, "baseValue cannot be null");
     EvaluationResult result;
+    String originalContext = setLoggingContext();
+    int profilerFrame = TemplateProfiler.enter();
     try {
-      setLoggingContext();
 
       LOGGER.debug("Started Evaluating with baseValue {} expression {} ", baseValue, this);
 
@@ -114,12 +118,14 @@ public abstract class AbstractExpression implements Expression {
       }
 
 
-      result = evaluateValueOfExpression(dataSource, localContextValues, baseValue);
+      MutableBoolean conditionSatisfiedState = new MutableBoolean(false);
+      result = evaluateValueOfExpression(dataSource, localContextValues, baseValue,
+          conditionSatisfiedState);
 
 
       LOGGER.debug("Completed Evaluating returned value  {} ----  for  expression {} ", result, this);
 
-      if (this.conditionSatisfiedState && this.isRequired()
+      if (conditionSatisfiedState.isTrue() && this.isRequired()
           && (result == null || result.isEmpty())) {
 
         String stringRep = this.toString();
@@ -134,24 +140,28 @@ public abstract class AbstractExpression implements Expression {
           this.attr.getName());
       return null;
     } finally {
-      resetLoggingContext();
+      TemplateProfiler.exit(profilerFrame, this.attr.getTemplatePath(),
+          this.attr.getProfileName());
+      resetLoggingContext(originalContext);
     }
   }
 
 
 
-  private void setLoggingContext() {
-    originalContext = MDC.get(RESOURCE);
+  private String setLoggingContext() {
+    String originalContext = MDC.get(RESOURCE);
     MDC.put(RESOURCE, originalContext + "-> Field:" + this.getExpressionAttr().getName());
+    return originalContext;
   }
 
-  private void resetLoggingContext() {
+  private static void resetLoggingContext(String originalContext) {
     MDC.put(RESOURCE, originalContext);
   }
 
 
   private EvaluationResult evaluateValueOfExpression(InputDataExtractor dataSource,
-      Map<String, EvaluationResult> localContextValues, EvaluationResult baseinputValue) {
+      Map<String, EvaluationResult> localContextValues, EvaluationResult baseinputValue,
+      MutableBoolean conditionSatisfiedState) {
     /**
      * Steps:
      * <ul>
@@ -180,7 +190,7 @@ public abstract class AbstractExpression implements Expression {
     if (!baseSpecvalues.isEmpty()) {
       for (Object o : baseSpecvalues) {
         EvaluationResult gen = generateValue(dataSource, localContextValues,  // BJCBJC SHould give me a value
-            EvaluationResultFactory.getEvaluationResult(o));
+            EvaluationResultFactory.getEvaluationResult(o), conditionSatisfiedState);
 
         if (gen != null && gen.getValue() != null && !gen.isEmpty()) {
           if (gen.getValue() instanceof List) {
@@ -197,7 +207,8 @@ public abstract class AbstractExpression implements Expression {
 
       }
     } else {
-      EvaluationResult gen = generateValue(dataSource, localContextValues, baseinputValue);
+      EvaluationResult gen =
+          generateValue(dataSource, localContextValues, baseinputValue, conditionSatisfiedState);
       if (gen != null && gen.getValue() != null && !gen.isEmpty()) {
         if (gen.getValue() instanceof List) {
           result.addAll(gen.getValue());
@@ -256,7 +267,8 @@ public abstract class AbstractExpression implements Expression {
 
 
   private EvaluationResult generateValue(InputDataExtractor dataSource,
-      Map<String, EvaluationResult> contextValues, EvaluationResult baseValue) {
+      Map<String, EvaluationResult> contextValues, EvaluationResult baseValue,
+      MutableBoolean conditionSatisfiedState) {
 
     // resolve variables
     Map<String, EvaluationResult> localContextValues = new HashMap<>(contextValues);
@@ -267,7 +279,7 @@ public abstract class AbstractExpression implements Expression {
         resolveVariables(this.getVariables(), ImmutableMap.copyOf(localContextValues), dataSource));
 
     if (this.isConditionSatisfied(localContextValues)) {
-      conditionSatisfiedState = true;
+      conditionSatisfiedState.setTrue();
       return evaluateExpression(dataSource, ImmutableMap.copyOf(localContextValues), baseValue);
 
     }
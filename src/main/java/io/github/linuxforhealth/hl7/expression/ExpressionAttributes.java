@@ -51,6 +51,9 @@ public class ExpressionAttributes {
   private final List<ExpressionAttributes> expressions;
   private final Map<String, ExpressionAttributes> expressionsMap;
   private final boolean isEvaluateLater;
+  // template the expression is defined in and its name in the template profile
+  private String templatePath;
+  private String profileName;
 
 
   // if valueof attribute ends with * then list of values will be generated
@@ -411,4 +414,35 @@ public class ExpressionAttributes {
     this.name = key;
 
   }
+
+  public String getTemplatePath() {
+    return templatePath;
+  }
+
+  public String getProfileName() {
+    return profileName != null ? profileName : name;
+  }
+
+  /**
+   * Sets the template the expression is defined in, also for its nested expressions that are
+   * profiled as name.key, or name[index] when listed without key.
+   * 
+   * @param path - template path, for example resource/Observation
+   */
+  public void setTemplatePath(String path) {
+    setProfileKey(path, this.name);
+  }
+
+  private void setProfileKey(String path, String profileName) {
+    this.templatePath = path;
+    this.profileName = profileName;
+    if (this.expressions != null) {
+      for (int i = 0; i < this.expressions.size(); i++) {
+        this.expressions.get(i).setProfileKey(path, profileName + "[" + i + "]");
+      }
+    }
+    if (this.expressionsMap != null) {
+      this.expressionsMap.forEach((key, e) -> e.setProfileKey(path, profileName + "." + key));
+    }
+  }
 }
\ No newline at end of file
@@ -94,4 +94,10 @@ public class Hl7Expression extends AbstractExpression {
   }
 
 
+
+  public List<Specification> getValueOfSpecs() {
+    return new ArrayList<>(this.valueof);
+  }
+
+
 }
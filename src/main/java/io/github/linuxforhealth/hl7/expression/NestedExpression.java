@@ -97,4 +97,10 @@ public class NestedExpression extends AbstractExpression {
     }
   }
 
+
+
+  public Collection<Expression> getChildExpressions() {
+    return new ArrayList<>(this.childexpressions.values());
+  }
+
 }
@@ -21,7 +21,7 @@ import io.github.linuxforhealth.api.ResourceValue;
 import io.github.linuxforhealth.core.expression.EvaluationResultFactory;
 import io.github.linuxforhealth.core.resource.ResourceResult;
 import io.github.linuxforhealth.hl7.resource.HL7DataBasedResourceModel;
-import io.github.linuxforhealth.hl7.resource.ResourceReader;
+import io.github.linuxforhealth.hl7.resource.ResourceModelLink;
 
 /**
  * Represent a expression that represents resolving a json template and creating a reference data
@@ -36,9 +36,8 @@ public class ReferenceExpression extends AbstractExpression {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceExpression.class);
 
-  private HL7DataBasedResourceModel data;
-  private HL7DataBasedResourceModel referenceModel = (HL7DataBasedResourceModel) ResourceReader
-      .getInstance().generateResourceModel("datatype/Reference");
+  private ResourceModelLink data;
+  private ResourceModelLink referenceModel = new ResourceModelLink("datatype/Reference");
   private String reference;
 
   @JsonCreator
@@ -46,9 +45,7 @@ public class ReferenceExpression extends AbstractExpression {
     super(expAttr);
 
     this.reference = expAttr.getValueOf();
-    this.data = (HL7DataBasedResourceModel) ResourceReader.getInstance()
-        .generateResourceModel(this.reference);
-    Preconditions.checkState(this.data != null, "Resource reference model cannot be null");
+    this.data = new ResourceModelLink(this.reference);
   }
 
 
@@ -74,7 +71,7 @@ public class ReferenceExpression extends AbstractExpression {
 
       Map<String, EvaluationResult> localContextValues = new HashMap<>(contextValues);
 
-      ResourceResult result = this.referenceModel.evaluate(dataSource,
+      ResourceResult result = this.referenceModel.get().evaluate(dataSource,
           ImmutableMap.copyOf(localContextValues), genBaseValue);
       if (result != null && result.getValue() != null) {
         ResourceValue resolvedvalues = result.getValue();
@@ -96,7 +93,7 @@ public class ReferenceExpression extends AbstractExpression {
   private ResourceResult evaluateResource(InputDataExtractor dataSource,
       Map<String, EvaluationResult> contextValues, EvaluationResult hl7SpecValue) {
     ResourceResult result =
-        this.data.evaluate(dataSource, ImmutableMap.copyOf(contextValues), hl7SpecValue);
+        this.data.get().evaluate(dataSource, ImmutableMap.copyOf(contextValues), hl7SpecValue);
     if (result != null && result.getValue() != null) {
       return result;
     }
@@ -112,4 +109,10 @@ public class ReferenceExpression extends AbstractExpression {
 
 
 
+  public HL7DataBasedResourceModel getData() {
+    return this.data.get();
+  }
+
+
+
 }
@@ -18,7 +18,7 @@ import io.github.linuxforhealth.api.ResourceValue;
 import io.github.linuxforhealth.core.expression.EvaluationResultFactory;
 import io.github.linuxforhealth.core.resource.ResourceResult;
 import io.github.linuxforhealth.hl7.resource.HL7DataBasedResourceModel;
-import io.github.linuxforhealth.hl7.resource.ResourceReader;
+import io.github.linuxforhealth.hl7.resource.ResourceModelLink;
 
 /**
  * Represent a expression that represents resolving a json template
@@ -32,7 +32,7 @@ public class ResourceExpression extends AbstractExpression {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ResourceExpression.class);
 
-  private HL7DataBasedResourceModel data;
+  private ResourceModelLink data;
   private String resourceToGenerate;
 
 
@@ -42,9 +42,7 @@ public class ResourceExpression extends AbstractExpression {
     super(expAttr);
 
     this.resourceToGenerate = expAttr.getValueOf();
-    this.data = (HL7DataBasedResourceModel) ResourceReader.getInstance()
-        .generateResourceModel(this.resourceToGenerate);
-    Preconditions.checkState(this.data != null, "Resource model cannot be null");
+    this.data = new ResourceModelLink(this.resourceToGenerate);
   }
 
 
@@ -58,7 +56,7 @@ public class ResourceExpression extends AbstractExpression {
     EvaluationResult evaluationResult = null;
 
     ResourceResult result =
-        this.data.evaluate(dataSource, ImmutableMap.copyOf(contextValues), baseValue);
+        this.data.get().evaluate(dataSource, ImmutableMap.copyOf(contextValues), baseValue);
     if (result != null && result.getValue() != null) {
       ResourceValue resolvedvalues = result.getValue();
 
@@ -82,8 +80,8 @@ public class ResourceExpression extends AbstractExpression {
 
 
 
-  HL7DataBasedResourceModel getData() {
-    return this.data;
+  public HL7DataBasedResourceModel getData() {
+    return this.data.get();
   }
 
 
@@ -0,0 +1,240 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.message;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.base.Preconditions;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Group;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.ModelClassFactory;
+import io.github.linuxforhealth.api.EvaluationResult;
+import io.github.linuxforhealth.api.InputDataExtractor;
+import io.github.linuxforhealth.api.Specification;
+import io.github.linuxforhealth.core.expression.EmptyEvaluationResult;
+import io.github.linuxforhealth.core.expression.EvaluationResultFactory;
+import io.github.linuxforhealth.hl7.expression.specification.HL7Specification;
+import io.github.linuxforhealth.hl7.parsing.ER7Index;
+import io.github.linuxforhealth.hl7.parsing.HL7DataExtractor;
+import io.github.linuxforhealth.hl7.parsing.HL7HapiParser;
+
+/**
+ * Extracts the values of a message from its ER7 text, through an {@link ER7Index}, without parsing
+ * it with HAPI. Specifications of a field of a segment of the message, PID.3 for example, are read
+ * from the index and return the same string values as {@link HL7MessageData}. The message is only
+ * parsed, once, when a specification needs the HAPI model: a whole segment, a field of a segment
+ * or composite value of the context, or the segments of a resource template
+ * ({@link #getHL7DataParser()}). When the message was already parsed, the parsed message is used
+ * instead.
+ * <p>
+ * Like the HAPI terser used by {@link HL7MessageData}, specifications read the segments that are
+ * direct children of the message structure. The index does not know in which group a segment of
+ * the text belongs, so it only reads the segments that are direct children of the structure and
+ * found in none of its groups, MSH, EVN or PID in ADT messages for example, the others are read
+ * from the parsed message. The segments of each message structure are read from the HAPI message
+ * class once and shared. Fields of variable type, such as OBX-5, are read from the text.
+ *
+ */
+public class ER7MessageData implements InputDataExtractor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ER7MessageData.class);
+
+  private static final String SUPPORTED_HL7_VERSION = "2.6";
+  // segments that are direct children of the message structures and not in any of their groups,
+  // by structure and by message type, only the structures HAPI has a class for are kept
+  private static final Map<String, Set<String>> BY_STRUCTURE = new ConcurrentHashMap<>();
+  private static final Map<String, Set<String>> BY_MESSAGE_TYPE = new ConcurrentHashMap<>();
+
+  private final String text;
+  private final HL7HapiParser parser;
+  private final Message message;
+  private final ER7Index index;
+  private Set<String> rootSegments;
+  private HL7MessageData parsed;
+
+  /**
+   * @param message - ER7 text of one message
+   * @param parser - parser of the message when the HAPI model is needed
+   * @throws IllegalArgumentException - if the message does not start with a MSH segment
+   */
+  public ER7MessageData(String message, HL7HapiParser parser) {
+    Preconditions.checkArgument(StringUtils.isNotBlank(message), "message cannot be blank");
+    Preconditions.checkArgument(parser != null, "parser cannot be null");
+    this.text = message;
+    this.parser = parser;
+    this.message = null;
+    this.index = ER7Index.of(message);
+  }
+
+  /**
+   * @param message - ER7 text of one message
+   * @param parsed - the message parsed from the text, used when the HAPI model is needed
+   * @throws IllegalArgumentException - if the message does not start with a MSH segment
+   */
+  public ER7MessageData(String message, Message parsed) {
+    Preconditions.checkArgument(StringUtils.isNotBlank(message), "message cannot be blank");
+    Preconditions.checkArgument(parsed != null, "parsed message cannot be null");
+    this.text = message;
+    this.parser = null;
+    this.message = parsed;
+    this.index = ER7Index.of(message);
+  }
+
+
+
+  @Override
+  public EvaluationResult extractMultipleValuesForSpec(Specification spec,
+      Map<String, EvaluationResult> contextValues) {
+    HL7Specification hl7spec = (HL7Specification) spec;
+    if (isIndexed(hl7spec, contextValues)) {
+      return EvaluationResultFactory.getEvaluationResult(getIndexedValue(hl7spec));
+    }
+    return getParsed().extractMultipleValuesForSpec(spec, contextValues);
+  }
+
+
+  @Override
+  public EvaluationResult extractValueForSpec(Specification spec,
+      Map<String, EvaluationResult> contextValues) {
+    HL7Specification hl7spec = (HL7Specification) spec;
+    if (isIndexed(hl7spec, contextValues)) {
+      String value = getIndexedValue(hl7spec);
+      return value != null ? EvaluationResultFactory.getEvaluationResult(value)
+          : new EmptyEvaluationResult();
+    }
+    return getParsed().extractValueForSpec(spec, contextValues);
+  }
+
+
+  @Override
+  public EvaluationResult evaluateJexlExpression(String expression,
+      Map<String, EvaluationResult> contextValues) {
+    return HL7MessageData.evaluateJexl(expression, contextValues);
+  }
+
+
+  @Override
+  public String getName() {
+    return index.getString(0, 9, 0, 1, 1) + "_" + index.getString(0, 9, 0, 2, 1);
+  }
+
+
+  @Override
+  public String getId() {
+    return index.getString(0, 10, 0, 1, 1);
+  }
+
+
+  /**
+   * @return true if the message was parsed with HAPI for a specification the index cannot read
+   */
+  public boolean isParsed() {
+    return parsed != null;
+  }
+
+
+  /**
+   * Returns the extractor of the parsed message, the segments of the resource templates are
+   * extracted from it. The message is parsed if needed.
+   *
+   * @return {@link HL7DataExtractor}
+   * @throws IllegalArgumentException - if the message cannot be parsed
+   */
+  public HL7DataExtractor getHL7DataParser() {
+    return getParsed().getHL7DataParser();
+  }
+
+
+  // a field of a segment of the message, not of a value of the context, that is only a direct
+  // child of the message structure
+  private boolean isIndexed(HL7Specification spec, Map<String, EvaluationResult> contextValues) {
+    if (StringUtils.isBlank(spec.getSegment()) || !NumberUtils.isDigits(spec.getField())
+        || NumberUtils.toInt(spec.getField()) < 1) {
+      return false;
+    }
+    EvaluationResult contextValue = contextValues.get(spec.getSegment());
+    return (contextValue == null || contextValue.getValue() == null)
+        && getRootSegments().contains(spec.getSegment());
+  }
+
+  private String getIndexedValue(HL7Specification spec) {
+    int segment = index.indexOf(spec.getSegment(), 0);
+    if (segment < 0) {
+      return null;
+    }
+    // as the terser, the first component of the first repetition
+    return index.getString(segment, NumberUtils.toInt(spec.getField()), 0, 1, 1);
+  }
+
+  private Set<String> getRootSegments() {
+    if (rootSegments == null) {
+      ModelClassFactory factory = HL7HapiParser.getModelClassFactory();
+      // the structure in MSH-9.3 if specified, otherwise the structure of the message type
+      String structure = index.getString(0, 9, 0, 3, 1);
+      Set<String> segments = structure != null
+          ? BY_STRUCTURE.computeIfAbsent(structure, k -> loadRootSegments(factory, k, true))
+          : BY_MESSAGE_TYPE.computeIfAbsent(getName(), k -> loadRootSegments(factory, k, false));
+      rootSegments = segments != null ? segments : Collections.emptySet();
+    }
+    return rootSegments;
+  }
+
+  private static Set<String> loadRootSegments(ModelClassFactory factory, String name,
+      boolean structure) {
+    try {
+      Class<? extends Message> messageClass =
+          factory.getMessageClass(name, SUPPORTED_HL7_VERSION, structure);
+      if (messageClass == null) {
+        return null;
+      }
+      Message empty = messageClass.getConstructor(ModelClassFactory.class).newInstance(factory);
+      Set<String> segments = new HashSet<>();
+      Set<String> grouped = new HashSet<>();
+      for (String child : empty.getNames()) {
+        if (Group.class.isAssignableFrom(empty.getClass(child))) {
+          addSegments((Group) empty.get(child), grouped);
+        } else {
+          segments.add(child);
+        }
+      }
+      segments.removeAll(grouped);
+      return Collections.unmodifiableSet(segments);
+    } catch (HL7Exception | ReflectiveOperationException | RuntimeException e) {
+      LOGGER.debug("Cannot read the structure of message {}", name, e);
+      return null;
+    }
+  }
+
+  private static void addSegments(Group group, Set<String> segments) throws HL7Exception {
+    for (String child : group.getNames()) {
+      if (Group.class.isAssignableFrom(group.getClass(child))) {
+        addSegments((Group) group.get(child), segments);
+      } else {
+        segments.add(child);
+      }
+    }
+  }
+
+  private HL7MessageData getParsed() {
+    if (parsed == null) {
+      try {
+        Message hl7message = message != null ? message : parser.getParser().parse(text);
+        parsed = new HL7MessageData(new HL7DataExtractor(hl7message));
+      } catch (HL7Exception e) {
+        throw new IllegalArgumentException("Cannot parse the message.", e);
+      }
+    }
+    return parsed;
+  }
+
+}
@@ -172,6 +172,12 @@ public class HL7MessageData implements InputDataExtractor {
   @Override
   public EvaluationResult evaluateJexlExpression(String expression,
       Map<String, EvaluationResult> contextValues) {
+    return evaluateJexl(expression, contextValues);
+  }
+
+
+  static EvaluationResult evaluateJexl(String expression,
+      Map<String, EvaluationResult> contextValues) {
     Preconditions.checkArgument(StringUtils.isNotBlank(expression), "jexlExp cannot be blank");
     Preconditions.checkArgument(contextValues != null, "context cannot be null");
     String trimedJexlExp = StringUtils.trim(expression);
@@ -5,12 +5,18 @@
  */
 package io.github.linuxforhealth.hl7.message;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.hl7.fhir.r4.model.Bundle;
@@ -26,6 +32,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import ca.uhn.hl7v2.model.Structure;
+import io.github.linuxforhealth.api.ConversionStage;
 import io.github.linuxforhealth.api.EvaluationResult;
 import io.github.linuxforhealth.api.FHIRResourceTemplate;
 import io.github.linuxforhealth.api.InputDataExtractor;
@@ -36,12 +43,15 @@ import io.github.linuxforhealth.core.Constants;
 import io.github.linuxforhealth.core.ObjectMapperUtil;
 import io.github.linuxforhealth.core.exception.RequiredConstraintFailureException;
 import io.github.linuxforhealth.core.expression.EvaluationResultFactory;
+import io.github.linuxforhealth.core.metrics.MetricsScope;
 import io.github.linuxforhealth.core.resource.ResourceResult;
 import io.github.linuxforhealth.core.resource.SimpleResourceValue;
 import io.github.linuxforhealth.fhir.FHIRContext;
+import io.github.linuxforhealth.fhir.FHIRJsonEmitter.PreparedResource;
 import io.github.linuxforhealth.fhir.FHIRResourceMapper;
 import io.github.linuxforhealth.hl7.message.util.SegmentExtractorUtil;
 import io.github.linuxforhealth.hl7.message.util.SegmentGroup;
+import io.github.linuxforhealth.hl7.parsing.HL7DataExtractor;
 import io.github.linuxforhealth.hl7.resource.ResourceEvaluationResult;
 import io.github.linuxforhealth.hl7.util.ExpressionUtility;
 
@@ -58,6 +68,7 @@ public class HL7MessageEngine implements MessageEngine {
   private static final ObjectMapper OBJ_MAPPER = ObjectMapperUtil.getJSONInstance();
   private FHIRContext context;
   private BundleType bundleType;
+  private boolean directJsonEncoding;
 
   /**
    * 
@@ -73,8 +84,21 @@ public class HL7MessageEngine implements MessageEngine {
    * @param bundleType
    */
   public HL7MessageEngine(FHIRContext context, BundleType bundleType) {
+    this(context, bundleType, true);
+  }
+
+  /**
+   * 
+   * @param context
+   * @param bundleType
+   * @param directJsonEncoding - if false, {@link #transformToJson} always encodes the bundle with
+   *        the HAPI parser
+   */
+  public HL7MessageEngine(FHIRContext context, BundleType bundleType,
+      boolean directJsonEncoding) {
     this.context = context;
     this.bundleType = bundleType;
+    this.directJsonEncoding = directJsonEncoding;
   }
 
   /**
@@ -91,8 +115,81 @@ public class HL7MessageEngine implements MessageEngine {
     Preconditions.checkArgument(contextValues != null, "contextValues cannot be null");
     Preconditions.checkArgument(resources != null, "resources cannot be null");
 
-    HL7MessageData hl7DataInput = (HL7MessageData) dataInput;
     Bundle bundle = initBundle();
+    generate(dataInput, resources, contextValues, obj -> addEntry(obj, bundle));
+    LOGGER.debug("Successfully converted Message: {} , Message Control Id: {} to FHIR bundle resource with id {}", dataInput.getName(), dataInput.getId(), bundle.getId());
+    return bundle;
+  }
+
+  /**
+   * Converts a HL7 message and writes the FHIR bundle JSON with the list of resources specified to
+   * the writer, the writer is not closed. When resource validation is not enabled, the JSON is
+   * written directly from the resolved resource values, without building and encoding the HAPI
+   * bundle. The output is the same in both cases.
+   * 
+   * @param dataInput
+   * @param resources
+   * @param contextValues
+   * @param writer
+   * @throws IOException - if the writer fails
+   */
+  public void transformToJson(final InputDataExtractor dataInput,
+      final Iterable<FHIRResourceTemplate> resources,
+      final Map<String, EvaluationResult> contextValues, Writer writer) throws IOException {
+    Preconditions.checkArgument(writer != null, "writer cannot be null");
+    if (!directJsonEncoding || context.isValidateResource()) {
+      context.encodeResourceToWriter(transform(dataInput, resources, contextValues), writer);
+      return;
+    }
+    Preconditions.checkArgument(dataInput != null, "dataInput cannot be null");
+    Preconditions.checkArgument(contextValues != null, "contextValues cannot be null");
+    Preconditions.checkArgument(resources != null, "resources cannot be null");
+
+    Bundle bundle = initBundle();
+    JsonEntrySink sink = new JsonEntrySink(bundle);
+    generate(dataInput, resources, contextValues, sink);
+    if (sink.direct) {
+      long start = MetricsScope.startTimer();
+      context.getJsonEmitter().writeBundle(bundle, sink.prepared, writer,
+          context.isPrettyPrint());
+      MetricsScope.stopTimer(ConversionStage.ENCODING, start);
+    } else {
+      context.encodeResourceToWriter(bundle, writer);
+    }
+  }
+
+  /**
+   * Converts a HL7 message to the compact JSON of the resources specified, grouped by resource
+   * type in bundle order, for writing them as NDJSON. When resource validation is not enabled, the
+   * JSON is written directly from the resolved resource values.
+   * 
+   * @param dataInput
+   * @param resources
+   * @param contextValues
+   * @return JSON of the resources by resource type
+   */
+  public Map<String, List<String>> transformToNDJSON(final InputDataExtractor dataInput,
+      final Iterable<FHIRResourceTemplate> resources,
+      final Map<String, EvaluationResult> contextValues) {
+    if (!directJsonEncoding || context.isValidateResource()) {
+      return context.encodeEntriesToNDJSON(transform(dataInput, resources, contextValues));
+    }
+    Preconditions.checkArgument(dataInput != null, "dataInput cannot be null");
+    Preconditions.checkArgument(contextValues != null, "contextValues cannot be null");
+    Preconditions.checkArgument(resources != null, "resources cannot be null");
+
+    Map<String, List<String>> lines = new LinkedHashMap<>();
+    generate(dataInput, resources, contextValues, obj -> addLine(obj, lines));
+    return lines;
+  }
+
+  /**
+   * Generates the resources of the templates and passes each resulting resource value to the sink,
+   * in bundle order.
+   */
+  private void generate(final InputDataExtractor dataInput,
+      final Iterable<FHIRResourceTemplate> resources,
+      final Map<String, EvaluationResult> contextValues, Consumer<ResourceValue> sink) {
     Map<String, EvaluationResult> localContextValues = new HashMap<>(contextValues);
     List<ResourceResult> resourceResultsWithEvalLater = new ArrayList<>();
     for (FHIRResourceTemplate genericTemplate : resources) {
@@ -101,8 +198,9 @@ public class HL7MessageEngine implements MessageEngine {
       List<ResourceResult> resourceResults = new ArrayList<>();
       try {
         MDC.put(RESOURCE, rs.getName());
+        MetricsScope.setResourceTemplate(rs.getName());
         List<ResourceResult> results =
-            generateResources(hl7DataInput, hl7ResourceTemplate, localContextValues);
+            generateResources(dataInput, hl7ResourceTemplate, localContextValues);
         if (results != null) {
           resourceResults.addAll(results);
           results.stream()
@@ -114,7 +212,7 @@ public class HL7MessageEngine implements MessageEngine {
                   r -> (r.getPendingExpressions() == null || r.getPendingExpressions().isEmpty()))
               .collect(Collectors.toList());
 
-          addResourceToBundle(bundle, resultsToAddToBundle);
+          addResourceToBundle(sink, resultsToAddToBundle);
 
         }
 
@@ -123,6 +221,7 @@ public class HL7MessageEngine implements MessageEngine {
             getContextValuesFromResource(hl7ResourceTemplate, resourceResults);
         localContextValues.putAll(newContextValues);
       } catch (IllegalArgumentException | IllegalStateException e) {
+        MetricsScope.recordSkippedResource();
         LOGGER.error("Exception during resource {} generation", rs.getName());
         LOGGER.debug("Exception during resource {} generation", rs.getName(), e);
 
@@ -132,13 +231,19 @@ public class HL7MessageEngine implements MessageEngine {
     }
     for (ResourceResult r : resourceResultsWithEvalLater) {
       MDC.put(RESOURCE, "PendingExpressions");
+      MetricsScope.setResourceTemplate(r.getValue().getFHIRResourceType());
       try {
         Map<String, EvaluationResult> primaryContextValues = new HashMap<>(localContextValues);
         r.getPendingExpressions().getContextValues().entrySet()
             .forEach(e -> primaryContextValues.putIfAbsent(e.getKey(), e.getValue()));
-      ResourceEvaluationResult res =
-          ExpressionUtility.evaluate(hl7DataInput, primaryContextValues,
-              r.getPendingExpressions().getExpressions());
+      long evaluationStart = MetricsScope.startTimer();
+      ResourceEvaluationResult res;
+      try {
+        res = ExpressionUtility.evaluate(dataInput, primaryContextValues,
+            r.getPendingExpressions().getExpressions());
+      } finally {
+        MetricsScope.stopTimer(ConversionStage.RESOURCE_EVALUATION, evaluationStart);
+      }
 
       Map<String, Object> resolvedValues = new HashMap<>();
       resolvedValues.putAll(r.getValue().getResource());
@@ -150,8 +255,9 @@ public class HL7MessageEngine implements MessageEngine {
           new SimpleResourceValue(resolvedValues, r.getValue().getFHIRResourceType()),
           additionalResources, r.getGroupId());
 
-      addResourceToBundle(bundle, Lists.newArrayList(updatedResourceResult));
+      addResourceToBundle(sink, Lists.newArrayList(updatedResourceResult));
     } catch (IllegalArgumentException | IllegalStateException e) {
+      MetricsScope.recordSkippedResource();
       LOGGER.error("Exception during resource PendingExpressions generation");
       LOGGER.debug("Exception during resource PendingExpressions generation", e);
 
@@ -161,32 +267,36 @@ public class HL7MessageEngine implements MessageEngine {
     }
 
     LOGGER.info("Successfully converted message");
-    LOGGER.debug("Successfully converted Message: {} , Message Control Id: {} to FHIR bundle resource with id {}", dataInput.getName(), dataInput.getId(), bundle.getId());
-    return bundle;
   }
 
-  private List<ResourceResult> generateResources(HL7MessageData hl7DataInput,
+  private List<ResourceResult> generateResources(InputDataExtractor dataInput,
       HL7FHIRResourceTemplate template, Map<String, EvaluationResult> contextValues) {
 
     ResourceModel resourceModel = template.getResource();
     List<String> segmentGroup = template.getAttributes().getSegment().getGroup();
     String segment = template.getAttributes().getSegment().getSegment();
     List<ResourceResult> resourceResults = null;
-    List<SegmentGroup> multipleSegments =
-        getMultipleSegments(hl7DataInput, template, segmentGroup, segment);
+    long extractionStart = MetricsScope.startTimer();
+    List<SegmentGroup> multipleSegments;
+    try {
+      multipleSegments = getMultipleSegments(dataInput, template, segmentGroup, segment);
+    } finally {
+      MetricsScope.stopTimer(ConversionStage.SEGMENT_EXTRACTION, extractionStart);
+    }
     if (!multipleSegments.isEmpty()) {
 
-      resourceResults = generateMultipleResources(hl7DataInput, resourceModel, contextValues,
+      resourceResults = generateMultipleResources(dataInput, resourceModel, contextValues,
           multipleSegments, template.isGenerateMultiple());
     }
     return resourceResults;
   }
 
-  private void addResourceToBundle(Bundle bundle, List<ResourceResult> resourceResults) {
+  private static void addResourceToBundle(Consumer<ResourceValue> sink,
+      List<ResourceResult> resourceResults) {
     if (resourceResults != null && !resourceResults.isEmpty()) {
       for (ResourceResult resReult : resourceResults) {
-        addToBundle(bundle, Lists.newArrayList(resReult.getValue()));
-        addToBundle(bundle, resReult.getAdditionalResources());
+        addToBundle(sink, Lists.newArrayList(resReult.getValue()));
+        addToBundle(sink, resReult.getAdditionalResources());
       }
     }
   }
@@ -255,24 +365,36 @@ public class HL7MessageEngine implements MessageEngine {
     return localContextValues;
   }
 
-  private static List<SegmentGroup> getMultipleSegments(final HL7MessageData hl7DataInput,
+  private static List<SegmentGroup> getMultipleSegments(final InputDataExtractor dataInput,
       final HL7FHIRResourceTemplate template, List<String> segmentGroup, String segment) {
+    HL7DataExtractor hl7DataParser = getHL7DataParser(dataInput);
     List<SegmentGroup> multipleSegments;
     if (segmentGroup != null && !segmentGroup.isEmpty()) {
       multipleSegments = SegmentExtractorUtil.extractSegmentGroups(segmentGroup, segment,
-          template.getAttributes().getAdditionalSegments(), hl7DataInput.getHL7DataParser(),
+          template.getAttributes().getAdditionalSegments(), hl7DataParser,
           template.getAttributes().getGroup());
 
 
     } else {
       multipleSegments = SegmentExtractorUtil.extractSegmentNonGroups(segment,
-          template.getAttributes().getAdditionalSegments(), hl7DataInput.getHL7DataParser());
+          template.getAttributes().getAdditionalSegments(), hl7DataParser);
 
     }
     return multipleSegments;
   }
 
-  private static List<ResourceResult> generateMultipleResources(final HL7MessageData hl7DataInput,
+  // the parsed message the segments of the resource templates are extracted from
+  private static HL7DataExtractor getHL7DataParser(InputDataExtractor dataInput) {
+    if (dataInput instanceof HL7MessageData) {
+      return ((HL7MessageData) dataInput).getHL7DataParser();
+    } else if (dataInput instanceof ER7MessageData) {
+      return ((ER7MessageData) dataInput).getHL7DataParser();
+    }
+    throw new IllegalArgumentException(
+        "Unsupported data input " + dataInput.getClass().getName());
+  }
+
+  private static List<ResourceResult> generateMultipleResources(final InputDataExtractor dataInput,
       final ResourceModel rs, final Map<String, EvaluationResult> contextValues,
       final List<SegmentGroup> multipleSegments, boolean generateMultiple) {
     List<ResourceResult> resourceResults = new ArrayList<>();
@@ -290,18 +412,27 @@ public class HL7MessageEngine implements MessageEngine {
       localContextValues.putAll(getContextMap(currentGroup));
 
       for (EvaluationResult baseValue : baseValues) {
+        long evaluationStart = MetricsScope.startTimer();
         try {
           ResourceResult result =
-              rs.evaluate(hl7DataInput, ImmutableMap.copyOf(localContextValues), baseValue);
+              rs.evaluate(dataInput, ImmutableMap.copyOf(localContextValues), baseValue);
+          MetricsScope.stopTimer(ConversionStage.RESOURCE_EVALUATION, evaluationStart);
           if (result != null && result.getValue() != null) {
             resourceResults.add(result);
             if (!generateMultiple) {
               // If only single resource needs to be generated then return.
               return resourceResults;
             }
+          } else {
+            MetricsScope.recordSkippedResource();
           }
         } catch (RequiredConstraintFailureException | IllegalArgumentException
             | IllegalStateException e) {
+          MetricsScope.stopTimer(ConversionStage.RESOURCE_EVALUATION, evaluationStart);
+          if (e instanceof RequiredConstraintFailureException) {
+            MetricsScope.recordConstraintFailure();
+          }
+          MetricsScope.recordSkippedResource();
           LOGGER.warn("generateMultipleResources - Exception encountered");
           LOGGER.debug("generateMultipleResources - Exception encountered", e);
         }
@@ -311,29 +442,74 @@ public class HL7MessageEngine implements MessageEngine {
   }
 
 
-  private void addToBundle(Bundle bundle, List<ResourceValue> objects) {
+  private static void addToBundle(Consumer<ResourceValue> sink, List<ResourceValue> objects) {
     if (objects != null && !objects.isEmpty()) {
-      objects.forEach(obj -> addEntry(obj.getFHIRResourceType(), obj, bundle));
+      objects.forEach(sink);
     }
   }
 
-  private void addEntry(String resourceClass, ResourceValue obj, Bundle bundle) {
+  private void addEntry(ResourceValue obj, Bundle bundle) {
+    if (obj != null) {
+      long start = MetricsScope.startTimer();
+      org.hl7.fhir.r4.model.Resource parsed =
+          toResource(obj, FHIRResourceMapper.getResourceClass(obj.getFHIRResourceType()));
+      if (parsed != null) {
+        bundle.addEntry().setResource(parsed).setFullUrl(parsed.getId());
+      }
+      MetricsScope.stopTimer(ConversionStage.BUNDLE_ASSEMBLY, start);
+    }
+  }
 
+  private void addLine(ResourceValue obj, Map<String, List<String>> lines) {
+    if (obj == null) {
+      return;
+    }
+    long start = MetricsScope.startTimer();
+    Class<? extends org.hl7.fhir.r4.model.Resource> resourceType =
+        FHIRResourceMapper.getResourceClass(obj.getFHIRResourceType());
+    PreparedResource prepared = context.getJsonEmitter().prepare(resourceType, obj.getResource());
+    if (prepared != null) {
+      MetricsScope.stopTimer(ConversionStage.BUNDLE_ASSEMBLY, start);
+      StringWriter writer = new StringWriter();
+      start = MetricsScope.startTimer();
+      try {
+        context.getJsonEmitter().writeResource(prepared, writer);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      MetricsScope.stopTimer(ConversionStage.ENCODING, start);
+      lines.computeIfAbsent(prepared.getResourceType(), k -> new ArrayList<>())
+          .add(writer.toString());
+    } else {
+      org.hl7.fhir.r4.model.Resource parsed = toResource(obj, resourceType);
+      MetricsScope.stopTimer(ConversionStage.BUNDLE_ASSEMBLY, start);
+      if (parsed != null) {
+        lines.computeIfAbsent(parsed.fhirType(), k -> new ArrayList<>())
+            .add(context.encodeResourceToNDJSON(parsed));
+      }
+    }
+  }
+
+  private org.hl7.fhir.r4.model.Resource toResource(ResourceValue obj,
+      Class<? extends org.hl7.fhir.r4.model.Resource> resourceType) {
+    String resourceClass = obj.getFHIRResourceType();
     try {
-      if (obj != null) {
-        LOGGER.debug("Converting resourceName {} to FHIR {}", resourceClass, obj.getResource());
+      LOGGER.debug("Converting resourceName {} to FHIR {}", resourceClass, obj.getResource());
+      org.hl7.fhir.r4.model.Resource parsed =
+          context.getResourceBinder().bind(resourceType, obj.getResource());
+      if (parsed == null) {
+        // values not supported by the binder, go through the JSON parser
         String json = OBJ_MAPPER.writeValueAsString(obj.getResource());
         LOGGER.debug("Adding resourceName {} to FHIR {}", resourceClass, json);
         if (json != null) {
-          org.hl7.fhir.r4.model.Resource parsed = context.getParser()
-              .parseResource(FHIRResourceMapper.getResourceClass(resourceClass), json);
-
-          bundle.addEntry().setResource(parsed).setFullUrl(parsed.getId());
+          parsed = context.getParser().parseResource(resourceType, json);
         }
       }
+      return parsed;
     } catch (JsonProcessingException e) {
       LOGGER.error("Processing exception when serialization");
       LOGGER.debug("Processing exception when serialization", e);
+      return null;
     }
   }
 
@@ -341,4 +517,47 @@ public class HL7MessageEngine implements MessageEngine {
   public FHIRContext getFHIRContext() {
     return context;
   }
+
+  /**
+   * Prepares the resource values for the direct JSON writing. As soon as a resource cannot be
+   * written directly, the resources received so far and all the following ones are added to the
+   * HAPI bundle instead.
+   */
+  private class JsonEntrySink implements Consumer<ResourceValue> {
+    private final Bundle bundle;
+    private final List<PreparedResource> prepared = new ArrayList<>();
+    private final List<ResourceValue> values = new ArrayList<>();
+    private boolean direct = true;
+
+    private JsonEntrySink(Bundle bundle) {
+      this.bundle = bundle;
+    }
+
+    @Override
+    public void accept(ResourceValue obj) {
+      if (obj == null) {
+        return;
+      }
+      if (direct) {
+        Class<? extends org.hl7.fhir.r4.model.Resource> resourceType =
+            FHIRResourceMapper.getResourceClass(obj.getFHIRResourceType());
+        long start = MetricsScope.startTimer();
+        PreparedResource resource =
+            context.getJsonEmitter().prepare(resourceType, obj.getResource());
+        MetricsScope.stopTimer(ConversionStage.BUNDLE_ASSEMBLY, start);
+        if (resource != null) {
+          prepared.add(resource);
+          values.add(obj);
+          return;
+        }
+        LOGGER.debug("Resource {} not supported by the JSON emitter, using the HAPI encoder",
+            obj.getFHIRResourceType());
+        direct = false;
+        values.forEach(v -> addEntry(v, bundle));
+        prepared.clear();
+        values.clear();
+      }
+      addEntry(obj, bundle);
+    }
+  }
 }
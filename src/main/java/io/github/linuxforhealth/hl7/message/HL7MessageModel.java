@@ -6,9 +6,14 @@
 package io.github.linuxforhealth.hl7.message;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.Bundle;
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -17,11 +22,13 @@ import com.google.common.base.Preconditions;
 import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.model.Message;
 import io.github.linuxforhealth.api.FHIRResourceTemplate;
+import io.github.linuxforhealth.api.InputDataExtractor;
 import io.github.linuxforhealth.api.MessageEngine;
 import io.github.linuxforhealth.api.MessageTemplate;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+import io.github.linuxforhealth.fhir.NDJSONResourceWriter;
 import io.github.linuxforhealth.hl7.parsing.HL7DataExtractor;
 import io.github.linuxforhealth.hl7.parsing.HL7HapiParser;
-import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +36,7 @@ public class HL7MessageModel implements MessageTemplate<Message> {
 
   private List<FHIRResourceTemplate> resources;
   private String messageName;
+  private volatile Set<String> referencedSegments;
   private static final Logger LOGGER = LoggerFactory.getLogger(HL7MessageModel.class);
 
   @JsonCreator
@@ -50,7 +58,10 @@ public class HL7MessageModel implements MessageTemplate<Message> {
     HL7HapiParser hparser = null;
     try {
       hparser = new HL7HapiParser();
-
+      if (isER7DataExtraction(message)) {
+        // the message is only parsed if the templates need the HAPI model
+        return convert(new ER7MessageData(message, hparser), engine);
+      }
       Message hl7message = hparser.getParser().parse(message);
       return convert(hl7message, engine);
 
@@ -69,34 +80,215 @@ public class HL7MessageModel implements MessageTemplate<Message> {
   @Override
   public String convert(Message message, MessageEngine engine) {
     Preconditions.checkArgument(message != null, "Input Hl7 message cannot be null");
-    Preconditions.checkArgument(engine != null, "MessageEngine cannot be null");
+    return convert(toDataSource(message), engine);
+  }
 
-    HL7DataExtractor hl7DTE = new HL7DataExtractor(message);
-    HL7MessageData dataSource = new HL7MessageData(hl7DTE);
+  /**
+   * Converts the message read from the data source to the JSON of the FHIR bundle.
+   *
+   * @param dataSource - {@link HL7MessageData} or {@link ER7MessageData} of the message
+   * @param engine
+   * @return the JSON of the bundle, null if the message cannot be transformed.
+   */
+  public String convert(InputDataExtractor dataSource, MessageEngine engine) {
+    Preconditions.checkArgument(dataSource != null, "Input Hl7 message cannot be null");
+    Preconditions.checkArgument(engine != null, "MessageEngine cannot be null");
 
     String result = null;
 
     // Catch any exceptions and log them without the message.
     // NOTE: We have seen PHI in these exception messages.
     try {
-        Bundle bundle = engine.transform(dataSource, this.getResources(), new HashMap<>());
+      if (engine instanceof HL7MessageEngine) {
+        StringWriter writer = new StringWriter();
+        ((HL7MessageEngine) engine).transformToJson(dataSource, this.getResources(),
+            new HashMap<>(), writer);
+        result = writer.toString();
+      } else {
+        Bundle bundle = transform(dataSource, engine);
         result = engine.getFHIRContext().encodeResourceToString(bundle);
+      }
     }
     catch(Exception e) {
-        // Print stack class and trace without the error message.
-        StackTraceElement[] stackTrace = e.getStackTrace();
-        StringBuilder classAndStack = new StringBuilder();
-        classAndStack.append(e.getClass()+"\n");
-        for(int i=0; i < stackTrace.length; i++) {
-        	classAndStack.append(stackTrace[i] +"\n");
-        }
-        LOGGER.error("Error transforming HL7 message. {}",classAndStack);
+        logError(e);
     }
 
     return result;
 
   }
 
+  /**
+   * Converts the message to a FHIR bundle without encoding it, the bundle is validated if resource
+   * validation is enabled in the engine FHIR context.
+   *
+   * @param message
+   * @param engine
+   * @return {@link Bundle}, null if the message cannot be transformed.
+   */
+  public Bundle convertToBundle(Message message, MessageEngine engine) {
+    Preconditions.checkArgument(message != null, "Input Hl7 message cannot be null");
+    return convertToBundle(toDataSource(message), engine);
+  }
+
+  /**
+   * Converts the message read from the data source to a FHIR bundle, see
+   * {@link #convertToBundle(Message, MessageEngine)}.
+   *
+   * @param dataSource - {@link HL7MessageData} or {@link ER7MessageData} of the message
+   * @param engine
+   * @return {@link Bundle}, null if the message cannot be transformed.
+   */
+  public Bundle convertToBundle(InputDataExtractor dataSource, MessageEngine engine) {
+    Preconditions.checkArgument(dataSource != null, "Input Hl7 message cannot be null");
+    Preconditions.checkArgument(engine != null, "MessageEngine cannot be null");
+
+    try {
+      Bundle bundle = transform(dataSource, engine);
+      engine.getFHIRContext().validate(bundle);
+      return bundle;
+    } catch (Exception e) {
+      logError(e);
+      return null;
+    }
+  }
+
+  /**
+   * Converts the message and encodes the FHIR bundle directly onto the writer. The writer is
+   * neither flushed nor closed.
+   *
+   * @param message
+   * @param engine
+   * @param writer
+   * @return true if the bundle was written, false if the message cannot be transformed.
+   * @throws UncheckedIOException - if the writer fails
+   */
+  public boolean convert(Message message, MessageEngine engine, Writer writer) {
+    Preconditions.checkArgument(message != null, "Input Hl7 message cannot be null");
+    return convert(toDataSource(message), engine, writer);
+  }
+
+  /**
+   * Converts the message read from the data source and encodes the FHIR bundle onto the writer,
+   * see {@link #convert(Message, MessageEngine, Writer)}.
+   *
+   * @param dataSource - {@link HL7MessageData} or {@link ER7MessageData} of the message
+   * @param engine
+   * @param writer
+   * @return true if the bundle was written, false if the message cannot be transformed.
+   * @throws UncheckedIOException - if the writer fails
+   */
+  public boolean convert(InputDataExtractor dataSource, MessageEngine engine, Writer writer) {
+    Preconditions.checkArgument(dataSource != null, "Input Hl7 message cannot be null");
+    Preconditions.checkArgument(engine != null, "MessageEngine cannot be null");
+    Preconditions.checkArgument(writer != null, "writer cannot be null");
+
+    try {
+      if (engine instanceof HL7MessageEngine) {
+        ((HL7MessageEngine) engine).transformToJson(dataSource, this.getResources(),
+            new HashMap<>(), writer);
+      } else {
+        Bundle bundle = transform(dataSource, engine);
+        engine.getFHIRContext().encodeResourceToWriter(bundle, writer);
+      }
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failure writing the FHIR bundle.", e);
+    } catch (Exception e) {
+      logError(e);
+      return false;
+    }
+  }
+
+  /**
+   * Converts the message and appends the resources to the NDJSON files of their resource type. The
+   * resources are only written if the whole message is transformed.
+   *
+   * @param message
+   * @param engine
+   * @param ndjson
+   * @return true if the resources were written, false if the message cannot be transformed.
+   * @throws UncheckedIOException - if the NDJSON files cannot be written
+   */
+  public boolean convert(Message message, MessageEngine engine, NDJSONResourceWriter ndjson) {
+    Preconditions.checkArgument(message != null, "Input Hl7 message cannot be null");
+    return convert(toDataSource(message), engine, ndjson);
+  }
+
+  /**
+   * Converts the message read from the data source and appends the resources to the NDJSON files,
+   * see {@link #convert(Message, MessageEngine, NDJSONResourceWriter)}.
+   *
+   * @param dataSource - {@link HL7MessageData} or {@link ER7MessageData} of the message
+   * @param engine
+   * @param ndjson
+   * @return true if the resources were written, false if the message cannot be transformed.
+   * @throws UncheckedIOException - if the NDJSON files cannot be written
+   */
+  public boolean convert(InputDataExtractor dataSource, MessageEngine engine,
+      NDJSONResourceWriter ndjson) {
+    Preconditions.checkArgument(dataSource != null, "Input Hl7 message cannot be null");
+    Preconditions.checkArgument(engine != null, "MessageEngine cannot be null");
+    Preconditions.checkArgument(ndjson != null, "ndjson cannot be null");
+
+    Map<String, List<String>> resources;
+    try {
+      if (engine instanceof HL7MessageEngine) {
+        resources = ((HL7MessageEngine) engine).transformToNDJSON(dataSource,
+            this.getResources(), new HashMap<>());
+      } else {
+        resources = engine.getFHIRContext().encodeEntriesToNDJSON(transform(dataSource, engine));
+      }
+    } catch (Exception e) {
+      logError(e);
+      return false;
+    }
+    ndjson.write(resources);
+    return true;
+  }
+
+  /**
+   * Returns the data source the resource templates read the message from. When
+   * er7.data.extraction is enabled, the fields of the segments that are direct children of the
+   * message structure are read from the text with {@link ER7MessageData}, the parsed message is used
+   * for the others. Otherwise all the values are read from the parsed message.
+   *
+   * @param text - ER7 text of the message
+   * @param message - message parsed from the text
+   * @return {@link InputDataExtractor}
+   */
+  public static InputDataExtractor newDataSource(String text, Message message) {
+    Preconditions.checkArgument(message != null, "Input Hl7 message cannot be null");
+    if (isER7DataExtraction(text)) {
+      return new ER7MessageData(text, message);
+    }
+    return toDataSource(message);
+  }
+
+  // the text is only read if it starts with the message header
+  private static boolean isER7DataExtraction(String text) {
+    return ConverterConfiguration.getInstance().isER7DataExtraction()
+        && StringUtils.startsWith(text, "MSH");
+  }
+
+  private static HL7MessageData toDataSource(Message message) {
+    return new HL7MessageData(new HL7DataExtractor(message));
+  }
+
+  private Bundle transform(InputDataExtractor dataSource, MessageEngine engine) {
+    return engine.transform(dataSource, this.getResources(), new HashMap<>());
+  }
+
+  private static void logError(Exception e) {
+    // Print stack class and trace without the error message.
+    StackTraceElement[] stackTrace = e.getStackTrace();
+    StringBuilder classAndStack = new StringBuilder();
+    classAndStack.append(e.getClass()+"\n");
+    for(int i=0; i < stackTrace.length; i++) {
+    	classAndStack.append(stackTrace[i] +"\n");
+    }
+    LOGGER.error("Error transforming HL7 message. {}",classAndStack);
+  }
+
 
   @Override
   public String getMessageName() {
@@ -112,6 +304,22 @@ public class HL7MessageModel implements MessageTemplate<Message> {
     return new ArrayList<>(resources);
   }
 
+  /**
+   * Returns the segments the resource templates of the message can read, derived from the
+   * templates on first use. The other segments of a message of this type are not needed for the
+   * conversion.
+   * 
+   * @return names of the segments, MSH included, unmodifiable
+   */
+  public Set<String> getReferencedSegments() {
+    Set<String> segments = referencedSegments;
+    if (segments == null) {
+      segments = SegmentReferences.collect(resources);
+      referencedSegments = segments;
+    }
+    return segments;
+  }
+
 
 
 }
@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.message;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import io.github.linuxforhealth.api.Expression;
+import io.github.linuxforhealth.api.FHIRResourceTemplate;
+import io.github.linuxforhealth.api.ResourceModel;
+import io.github.linuxforhealth.api.Specification;
+import io.github.linuxforhealth.api.Variable;
+import io.github.linuxforhealth.core.expression.VariableUtils;
+import io.github.linuxforhealth.hl7.expression.Hl7Expression;
+import io.github.linuxforhealth.hl7.expression.NestedExpression;
+import io.github.linuxforhealth.hl7.expression.ReferenceExpression;
+import io.github.linuxforhealth.hl7.expression.ResourceExpression;
+import io.github.linuxforhealth.hl7.expression.specification.HL7Specification;
+import io.github.linuxforhealth.hl7.expression.specification.SpecificationParser;
+
+/**
+ * Collects the names of the segments the resource templates of a message template can read: the
+ * primary and additional segments of each resource template, and the segments of the
+ * specifications and variables of their expressions, following the resource templates the
+ * expressions generate or reference. The segments a message template never reads do not need to
+ * be parsed.
+ *
+ */
+final class SegmentReferences {
+
+  private static final String MESSAGE_HEADER = "MSH";
+
+  private final Set<String> segments = new HashSet<>();
+  private final Set<ResourceModel> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  private SegmentReferences() {}
+
+  /**
+   * @param resources - resource templates of a message template
+   * @return names of the segments the templates can read, MSH included
+   */
+  static Set<String> collect(List<FHIRResourceTemplate> resources) {
+    SegmentReferences references = new SegmentReferences();
+    references.segments.add(MESSAGE_HEADER);
+    for (FHIRResourceTemplate resource : resources) {
+      if (resource instanceof HL7FHIRResourceTemplate) {
+        HL7FHIRResourceTemplateAttributes attributes =
+            ((HL7FHIRResourceTemplate) resource).getAttributes();
+        references.segments.add(attributes.getSegment().getSegment());
+        for (HL7Segment additional : attributes.getAdditionalSegments()) {
+          references.segments.add(additional.getSegment());
+        }
+      }
+      references.addModel(resource.getResource());
+    }
+    return Collections.unmodifiableSet(references.segments);
+  }
+
+  private void addModel(ResourceModel model) {
+    // resource templates are shared and can reference themselves
+    if (model == null || !visited.add(model)) {
+      return;
+    }
+    for (Expression expression : model.getExpressions().values()) {
+      addExpression(expression);
+    }
+  }
+
+  private void addExpression(Expression expression) {
+    addSpecs(expression.getspecs());
+    for (Variable variable : expression.getVariables()) {
+      for (String spec : variable.getSpec()) {
+        if (!VariableUtils.isVar(spec)) {
+          addSpec(SpecificationParser.parse(spec, false, false));
+        }
+      }
+    }
+    if (expression instanceof Hl7Expression) {
+      addSpecs(((Hl7Expression) expression).getValueOfSpecs());
+    } else if (expression instanceof NestedExpression) {
+      for (Expression child : ((NestedExpression) expression).getChildExpressions()) {
+        addExpression(child);
+      }
+    } else if (expression instanceof ResourceExpression) {
+      addModel(((ResourceExpression) expression).getData());
+    } else if (expression instanceof ReferenceExpression) {
+      addModel(((ReferenceExpression) expression).getData());
+    }
+  }
+
+  private void addSpecs(List<Specification> specs) {
+    if (specs != null) {
+      specs.forEach(this::addSpec);
+    }
+  }
+
+  private void addSpec(Specification spec) {
+    // specifications without segment read a field of the base value or a context variable
+    if (spec instanceof HL7Specification && ((HL7Specification) spec).getSegment() != null) {
+      segments.add(((HL7Specification) spec).getSegment());
+    }
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import java.lang.reflect.Constructor;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.base.Preconditions;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.Version;
+import ca.uhn.hl7v2.model.Group;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.Segment;
+import ca.uhn.hl7v2.model.Type;
+import ca.uhn.hl7v2.parser.ModelClassFactory;
+
+/**
+ * Resolves the HAPI model classes of the messages, groups, segments and data types once per name
+ * and keeps them, in front of another {@link ModelClassFactory}. HAPI looks up the class of a
+ * message for each message it parses, the class of each custom segment (ZXX...) and the type of
+ * each variable value, such as OBX-5, by loading classes by name: the names that have no class,
+ * custom segments for example, fail with a {@link ClassNotFoundException} each time. Both the
+ * classes found and the names without class are kept, so that reflection and class loading only
+ * happen the first time a name is seen.
+ * <p>
+ * The constructors of the message classes are kept as well, messages are instantiated from them
+ * with {@link #newMessage(Class)}. The factory is thread-safe and meant to be shared by the
+ * parsers, the number of lookups answered from the cache and of lookups resolved by the underlying
+ * factory are counted.
+ *
+ */
+public final class CachingModelClassFactory implements ModelClassFactory {
+  private static final long serialVersionUID = 1L;
+  private static final Logger LOGGER = LoggerFactory.getLogger(CachingModelClassFactory.class);
+
+  private final ModelClassFactory delegate;
+  // classes by version and name, empty if the name has no class
+  private final transient Map<String, Optional<Class<? extends Message>>> messages =
+      new ConcurrentHashMap<>();
+  private final transient Map<String, Optional<Class<? extends Group>>> groups =
+      new ConcurrentHashMap<>();
+  private final transient Map<String, Optional<Class<? extends Segment>>> segments =
+      new ConcurrentHashMap<>();
+  private final transient Map<String, Optional<Class<? extends Type>>> types =
+      new ConcurrentHashMap<>();
+  private final transient Map<String, Optional<String>> structures = new ConcurrentHashMap<>();
+  private final transient Map<Class<? extends Message>,
+      Constructor<? extends Message>> constructors = new ConcurrentHashMap<>();
+  private final transient LongAdder hits = new LongAdder();
+  private final transient LongAdder misses = new LongAdder();
+
+  /**
+   * @param delegate - factory resolving the names not in the cache
+   */
+  public CachingModelClassFactory(ModelClassFactory delegate) {
+    Preconditions.checkArgument(delegate != null, "delegate cannot be null");
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Class<? extends Message> getMessageClass(String name, String version, boolean isExplicit)
+      throws HL7Exception {
+    return lookup(messages, key(version, name) + (isExplicit ? "" : "|event"),
+        () -> delegate.getMessageClass(name, version, isExplicit));
+  }
+
+  @Override
+  public Class<? extends Message> getMessageClassInASpecificPackage(String name, String version,
+      boolean isExplicit, String packageName) throws HL7Exception {
+    return delegate.getMessageClassInASpecificPackage(name, version, isExplicit, packageName);
+  }
+
+  @Override
+  public Class<? extends Group> getGroupClass(String name, String version) throws HL7Exception {
+    return lookup(groups, key(version, name), () -> delegate.getGroupClass(name, version));
+  }
+
+  @Override
+  public Class<? extends Segment> getSegmentClass(String name, String version)
+      throws HL7Exception {
+    return lookup(segments, key(version, name), () -> delegate.getSegmentClass(name, version));
+  }
+
+  @Override
+  public Class<? extends Type> getTypeClass(String name, String version) throws HL7Exception {
+    return lookup(types, key(version, name), () -> delegate.getTypeClass(name, version));
+  }
+
+  @Override
+  public String getMessageStructureForEvent(String name, Version version) throws HL7Exception {
+    return lookup(structures, key(version != null ? version.getVersion() : null, name),
+        () -> delegate.getMessageStructureForEvent(name, version));
+  }
+
+  /**
+   * Instantiates an empty message of the given class, with the constructor kept for the class.
+   *
+   * @param messageClass - HAPI message class
+   * @return the message, that creates its structures with this factory
+   * @throws HL7Exception - if the class cannot be instantiated
+   */
+  public Message newMessage(Class<? extends Message> messageClass) throws HL7Exception {
+    Preconditions.checkArgument(messageClass != null, "messageClass cannot be null");
+    Constructor<? extends Message> constructor = constructors.get(messageClass);
+    try {
+      if (constructor == null) {
+        constructor = messageClass.getConstructor(ModelClassFactory.class);
+        constructors.putIfAbsent(messageClass, constructor);
+      }
+      return constructor.newInstance(this);
+    } catch (ReflectiveOperationException e) {
+      throw new HL7Exception("Cannot instantiate message class " + messageClass.getName(), e);
+    }
+  }
+
+  /**
+   * Resolves the classes of the given message types and instantiates them once, so that their
+   * classes, and the classes of their groups and segments, are loaded before the first message of
+   * each type is parsed. The types without class, or that fail to load, are skipped.
+   *
+   * @param messageTypes - message types, for example ADT_A01
+   * @param version - HL7 version of the messages
+   */
+  public void preload(Collection<String> messageTypes, String version) {
+    Preconditions.checkArgument(messageTypes != null, "messageTypes cannot be null");
+    for (String messageType : messageTypes) {
+      try {
+        Class<? extends Message> messageClass = getMessageClass(messageType, version, false);
+        if (messageClass != null) {
+          newMessage(messageClass);
+        }
+      } catch (HL7Exception | RuntimeException e) {
+        LOGGER.debug("Cannot preload the model classes of message type {}", messageType, e);
+      }
+    }
+  }
+
+  /**
+   * @return number of lookups answered from the cache
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of lookups resolved by the underlying factory
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  private <T> T lookup(Map<String, Optional<T>> cache, String key, Loader<T> loader)
+      throws HL7Exception {
+    Optional<T> cached = cache.get(key);
+    if (cached != null) {
+      hits.increment();
+      return cached.orElse(null);
+    }
+    misses.increment();
+    // failures are not kept, the name is resolved again the next time
+    T value = loader.load();
+    cache.putIfAbsent(key, Optional.ofNullable(value));
+    return value;
+  }
+
+  private static String key(String version, String name) {
+    return version + "|" + name;
+  }
+
+  // the caches are not serialized, a deserialized factory starts with empty caches
+  private Object readResolve() {
+    return new CachingModelClassFactory(delegate);
+  }
+
+  @FunctionalInterface
+  private interface Loader<T> {
+    T load() throws HL7Exception;
+  }
+
+}
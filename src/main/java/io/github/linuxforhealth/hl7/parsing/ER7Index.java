@@ -0,0 +1,325 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import java.util.Arrays;
+import com.google.common.base.Preconditions;
+import ca.uhn.hl7v2.parser.DefaultEscaping;
+import ca.uhn.hl7v2.parser.EncodingCharacters;
+import ca.uhn.hl7v2.parser.Escaping;
+
+/**
+ * Index of the segments and fields of the ER7 (pipe and hat) text of one message, built with a
+ * single scan of the text. The start of each segment and of each of its fields is recorded in int
+ * arrays, the repetitions, components and sub-components are delimited within the bounds of the
+ * field when a value is looked up. Values are returned as {@link CharSequence} views of the text,
+ * nothing is copied until a value is converted to a string.
+ * <p>
+ * Unlike the HAPI parser, the index knows nothing of the message structure: segments are found by
+ * name in the order of the text, regardless of the group they belong to, and values are the raw
+ * text of the message, escape sequences included, see {@link #getString}.
+ * <p>
+ * Fields are numbered from 1, as in PID-3, MSH-1 being the field separator itself. Repetitions are
+ * numbered from 0, components and sub-components from 1.
+ *
+ */
+public final class ER7Index {
+
+  private static final String MESSAGE_HEADER = "MSH";
+  private static final String DEFAULT_ENCODING_CHARACTERS = "^~\\&";
+  private static final int INITIAL_SEGMENTS = 32;
+  private static final int INITIAL_FIELDS = 256;
+  // the escaping the HAPI parser uses by default
+  private static final Escaping ESCAPING = new DefaultEscaping();
+
+  private final CharSequence text;
+  private final char fieldSeparator;
+  private final char componentSeparator;
+  private final char repetitionSeparator;
+  private final char escapeCharacter;
+  private final char subComponentSeparator;
+  private final EncodingCharacters encodingCharacters;
+
+  private int segmentCount;
+  private int[] segmentEnd = new int[INITIAL_SEGMENTS];
+  // index in fieldStart of the name of each segment, followed by its fields
+  private int[] firstField = new int[INITIAL_SEGMENTS + 1];
+  private int fieldCount;
+  private int[] fieldStart = new int[INITIAL_FIELDS];
+
+  private ER7Index(CharSequence text) {
+    this.text = text;
+    this.fieldSeparator = text.charAt(3);
+    String encoding = DEFAULT_ENCODING_CHARACTERS;
+    int end = 4;
+    while (end < text.length() && end < 8 && text.charAt(end) != fieldSeparator
+        && !isSegmentSeparator(text.charAt(end))) {
+      end++;
+    }
+    if (end > 4) {
+      encoding = text.subSequence(4, end) + DEFAULT_ENCODING_CHARACTERS.substring(end - 4);
+    }
+    this.componentSeparator = encoding.charAt(0);
+    this.repetitionSeparator = encoding.charAt(1);
+    this.escapeCharacter = encoding.charAt(2);
+    this.subComponentSeparator = encoding.charAt(3);
+    this.encodingCharacters = new EncodingCharacters(fieldSeparator, encoding);
+    scan();
+  }
+
+  /**
+   * Indexes the text of a message.
+   *
+   * @param message - ER7 text of one message, starting with the MSH segment
+   * @return {@link ER7Index}
+   * @throws IllegalArgumentException - if the message does not start with a MSH segment
+   */
+  public static ER7Index of(CharSequence message) {
+    Preconditions.checkArgument(message != null, "message cannot be null");
+    Preconditions.checkArgument(
+        message.length() > 3 && MESSAGE_HEADER.contentEquals(message.subSequence(0, 3)),
+        "The message does not start with a MSH segment");
+    return new ER7Index(message);
+  }
+
+  private void scan() {
+    int length = text.length();
+    int position = 0;
+    while (position < length) {
+      while (position < length && isSegmentSeparator(text.charAt(position))) {
+        position++;
+      }
+      if (position == length) {
+        break;
+      }
+      firstField = grow(firstField, segmentCount + 2);
+      firstField[segmentCount] = fieldCount;
+      addField(position);
+      while (position < length && !isSegmentSeparator(text.charAt(position))) {
+        if (text.charAt(position) == fieldSeparator) {
+          addField(position + 1);
+        }
+        position++;
+      }
+      segmentEnd = grow(segmentEnd, segmentCount + 1);
+      segmentEnd[segmentCount] = position;
+      segmentCount++;
+    }
+    firstField[segmentCount] = fieldCount;
+  }
+
+  private void addField(int start) {
+    fieldStart = grow(fieldStart, fieldCount + 1);
+    fieldStart[fieldCount++] = start;
+  }
+
+  private static int[] grow(int[] array, int size) {
+    return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+  }
+
+  /**
+   * @return number of segments of the message
+   */
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /**
+   * @param segment - index of the segment in the message, from 0
+   * @return name of the segment
+   */
+  public CharSequence getSegmentName(int segment) {
+    checkSegment(segment);
+    int start = fieldStart[firstField[segment]];
+    return new View(start, fieldEnd(segment, firstField[segment]));
+  }
+
+  /**
+   * Finds the next segment with the given name.
+   *
+   * @param name - segment name, for example PID
+   * @param from - index of the first segment to look at
+   * @return index of the segment, -1 if there is no segment with this name from this index
+   */
+  public int indexOf(String name, int from) {
+    Preconditions.checkArgument(name != null, "name cannot be null");
+    for (int segment = Math.max(from, 0); segment < segmentCount; segment++) {
+      int start = fieldStart[firstField[segment]];
+      int end = fieldEnd(segment, firstField[segment]);
+      if (end - start == name.length() && regionMatches(start, name)) {
+        return segment;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a value of a field, as it is in the text of the message.
+   *
+   * @param segment - index of the segment in the message, from 0
+   * @param field - field number, from 1
+   * @param repetition - repetition of the field, from 0
+   * @param component - component of the repetition, from 1
+   * @param subComponent - sub-component of the component, from 1
+   * @return view of the value, null if the value is not in the message or is empty
+   */
+  public CharSequence get(int segment, int field, int repetition, int component,
+      int subComponent) {
+    checkSegment(segment);
+    Preconditions.checkArgument(field > 0, "field should be greater than 0");
+    Preconditions.checkArgument(repetition >= 0, "repetition cannot be negative");
+    Preconditions.checkArgument(component > 0, "component should be greater than 0");
+    Preconditions.checkArgument(subComponent > 0, "subComponent should be greater than 0");
+    boolean header = isHeader(segment);
+    if (header && field == 1) {
+      // MSH-1 is the field separator
+      return repetition == 0 && component == 1 && subComponent == 1 ? new View(3, 4) : null;
+    }
+    // the name of the segment is at index 0, MSH-1 has no separator before it
+    int element = firstField[segment] + (header ? field - 1 : field);
+    if (element >= firstField[segment + 1]) {
+      return null;
+    }
+    int start = fieldStart[element];
+    int end = fieldEnd(segment, element);
+    if (header && field == 2) {
+      // MSH-2 holds the encoding characters, it is not split
+      return repetition == 0 && component == 1 && subComponent == 1 && end > start
+          ? new View(start, end)
+          : null;
+    }
+    start = pieceStart(start, end, repetition, repetitionSeparator);
+    if (start < 0) {
+      return null;
+    }
+    end = pieceEnd(start, end, repetitionSeparator);
+    start = pieceStart(start, end, component - 1, componentSeparator);
+    if (start < 0) {
+      return null;
+    }
+    end = pieceEnd(start, end, componentSeparator);
+    start = pieceStart(start, end, subComponent - 1, subComponentSeparator);
+    if (start < 0) {
+      return null;
+    }
+    end = pieceEnd(start, end, subComponentSeparator);
+    return end > start ? new View(start, end) : null;
+  }
+
+  /**
+   * Returns a value of a field with its escape sequences resolved, as the HAPI parser does.
+   *
+   * @param segment - index of the segment in the message, from 0
+   * @param field - field number, from 1
+   * @param repetition - repetition of the field, from 0
+   * @param component - component of the repetition, from 1
+   * @param subComponent - sub-component of the component, from 1
+   * @return the value, null if the value is not in the message or is empty
+   */
+  public String getString(int segment, int field, int repetition, int component,
+      int subComponent) {
+    CharSequence value = get(segment, field, repetition, component, subComponent);
+    if (value == null) {
+      return null;
+    }
+    String string = value.toString();
+    if (string.indexOf(escapeCharacter) >= 0 && !(isHeader(segment) && field <= 2)) {
+      return ESCAPING.unescape(string, encodingCharacters);
+    }
+    return string;
+  }
+
+  // the message starts with its only MSH segment
+  private static boolean isHeader(int segment) {
+    return segment == 0;
+  }
+
+  // end of a field, the separator of the next field or the end of the segment
+  private int fieldEnd(int segment, int element) {
+    return element + 1 < firstField[segment + 1] ? fieldStart[element + 1] - 1
+        : segmentEnd[segment];
+  }
+
+  // start of the nth piece between start and end, -1 if there are not as many pieces
+  private int pieceStart(int start, int end, int piece, char separator) {
+    int position = start;
+    for (int skipped = 0; skipped < piece; skipped++) {
+      while (position < end && text.charAt(position) != separator) {
+        position++;
+      }
+      if (position == end) {
+        return -1;
+      }
+      position++;
+    }
+    return position;
+  }
+
+  private int pieceEnd(int start, int end, char separator) {
+    int position = start;
+    while (position < end && text.charAt(position) != separator) {
+      position++;
+    }
+    return position;
+  }
+
+  private boolean regionMatches(int start, String value) {
+    if (start + value.length() > text.length()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (text.charAt(start + i) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void checkSegment(int segment) {
+    Preconditions.checkArgument(segment >= 0 && segment < segmentCount,
+        "segment should be between 0 and %s", segmentCount - 1);
+  }
+
+  private static boolean isSegmentSeparator(char c) {
+    return c == '\r' || c == '\n';
+  }
+
+  /**
+   * Characters of the message text between two offsets.
+   */
+  private final class View implements CharSequence {
+    private final int start;
+    private final int end;
+
+    private View(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+      Preconditions.checkElementIndex(index, length());
+      return text.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      Preconditions.checkPositionIndexes(from, to, length());
+      return new View(start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+      return text.subSequence(start, end).toString();
+    }
+  }
+
+}
@@ -7,7 +7,6 @@ package io.github.linuxforhealth.hl7.parsing;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Predicate;
 import ca.uhn.hl7v2.model.v26.segment.MSH;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -25,11 +24,17 @@ import ca.uhn.hl7v2.model.Type;
 import ca.uhn.hl7v2.model.Unmodifiable;
 import ca.uhn.hl7v2.model.Variable;
 import ca.uhn.hl7v2.util.Terser;
+import io.github.linuxforhealth.hl7.parsing.StructureIndex.Children;
 import io.github.linuxforhealth.hl7.parsing.result.Hl7ParsingStringResult;
 import io.github.linuxforhealth.hl7.parsing.result.Hl7ParsingStructureResult;
 import io.github.linuxforhealth.hl7.parsing.result.Hl7ParsingTypeResult;
 import io.github.linuxforhealth.hl7.parsing.result.ParsingResult;
 
+/**
+ * Extracts the structures and values of one message. The child structures of the groups are
+ * looked up through a {@link StructureIndex} of the message, an extractor is used by one message
+ * conversion at a time.
+ */
 public class HL7DataExtractor {
   private static final String CANNOT_EXTRACT_VALUE_FOR_REP_REASON = "Cannot extract value for {} rep {}";
 
@@ -43,24 +48,14 @@ public class HL7DataExtractor {
 
 
   private final Message message;
+  private final StructureIndex index = new StructureIndex();
+  private Terser terser;
 
   public HL7DataExtractor(Message message) {
     this.message = message;
   }
 
 
-  private static Predicate<Structure> isEmpty() {
-    return (Structure p) -> {
-      try {
-        return p == null || p.isEmpty();
-      } catch (HL7Exception e) {
-        LOGGER.debug("Error", e);
-        return true;
-      }
-    };
-  }
-
-
 
   public ParsingResult<Structure> getStructure(String group, int groupRep, String segment,
       int rep) {
@@ -75,16 +70,10 @@ public class HL7DataExtractor {
       Preconditions.checkArgument(rep >= 0, "Segment rep cannot be less than 0");
 
 
-      Structure groupStr = message.get(group, groupRep);
-      if (groupStr instanceof Group) {
-        Group gp = (Group) groupStr;
-        Structure s = gp.get(segment, rep);
-        if (s != null && !s.isEmpty()) {
-          parsingResult = new Hl7ParsingStructureResult(s);
-        } else {
-          parsingResult = new Hl7ParsingStructureResult(new ArrayList<>());
-        }
-
+      Structure groupStr = getChild(message, group, groupRep);
+      Structure s = groupStr != null ? getChild(groupStr, segment, rep) : null;
+      if (s != null && !s.isEmpty()) {
+        parsingResult = new Hl7ParsingStructureResult(s);
       } else {
         parsingResult = new Hl7ParsingStructureResult(new ArrayList<>());
       }
@@ -112,13 +101,9 @@ public class HL7DataExtractor {
       Preconditions.checkArgument(StringUtils.isNotBlank(segment), SEGMENT_CANNOT_BE_NULL_OR_EMPTY);
       Preconditions.checkArgument(groupRep >= 0, "groupRep should be greater than or equal to 0");
 
-      Structure groupStr = message.get(group, groupRep);
-      if (groupStr instanceof Group) {
-        Group gp = (Group) groupStr;
-        Structure[] s = gp.getAll(segment);
-        List<Structure> list = Lists.newArrayList(s);
-        list.removeIf(isEmpty());
-        parsingResult = new Hl7ParsingStructureResult(Lists.newArrayList(list));
+      Structure groupStr = getChild(message, group, groupRep);
+      if (groupStr != null) {
+        parsingResult = new Hl7ParsingStructureResult(getNonEmptyChildren(groupStr, segment));
       } else {
         parsingResult = new Hl7ParsingStructureResult(new ArrayList<>());
       }
@@ -141,9 +126,7 @@ public class HL7DataExtractor {
     try {
       Preconditions.checkArgument(StringUtils.isNotBlank(spec),
           "Not a valid string to extract from Message");
-      Message unmodifiableMessage = Unmodifiable.unmodifiableMessage(message);
-      Structure s = unmodifiableMessage.get(spec);
-      return s != null;
+      return getChild(message, spec, 0) != null;
 
 
     } catch (IllegalArgumentException | HL7Exception | ArrayIndexOutOfBoundsException e) {
@@ -160,9 +143,7 @@ public class HL7DataExtractor {
       Preconditions.checkArgument(StringUtils.isNotBlank(spec),
           "Not a valid string to extract from Terser");
       Preconditions.checkArgument(rep >= 0, "Segment rep cannot be less than 0");
-      Message unmodifiableMessage = Unmodifiable.unmodifiableMessage(message);
-      Structure s = unmodifiableMessage.get(spec, rep);
-      return s != null;
+      return getChild(message, spec, rep) != null;
 
 
     } catch (IllegalArgumentException | HL7Exception | ArrayIndexOutOfBoundsException e) {
@@ -184,7 +165,7 @@ public class HL7DataExtractor {
         Preconditions.checkArgument(rep >= 0, REP_CANNOT_BE_NEGATIVE);
         LOGGER.debug("fetching values for spec {} rep {}", structure, rep);
 
-        parsingResult = new Hl7ParsingStructureResult(message.get(structure, rep));
+        parsingResult = new Hl7ParsingStructureResult(getChild(message, structure, rep));
       } else {
         parsingResult = new Hl7ParsingStructureResult(new ArrayList<>());
       }
@@ -206,7 +187,7 @@ public class HL7DataExtractor {
         Preconditions.checkArgument(StringUtils.isNotBlank(structure),
             "Not a valid string to extract from Hl7");
         LOGGER.debug("fetching values for spec {}, ", structure);
-        Structure[] strs = message.getAll(structure);
+        Structure[] strs = getChildren(message, structure).getAll();
 
         parsingResult = new Hl7ParsingStructureResult(Lists.newArrayList(strs));
       } else {
@@ -319,8 +300,37 @@ public class HL7DataExtractor {
   }
 
   private Terser getTerser() {
-    Message unmodifiableMessage = Unmodifiable.unmodifiableMessage(message);
-    return new Terser(unmodifiableMessage);
+    if (terser == null) {
+      terser = new Terser(Unmodifiable.unmodifiableMessage(message));
+    }
+    return terser;
+  }
+
+  /**
+   * Returns a repetition of a child structure of a group, from the structure index.
+   *
+   * @param parent - group, the message for its top level structures
+   * @param name - name of the child structure
+   * @param rep - repetition of the child structure
+   * @return the repetition, null if the group has no such repetition
+   * @throws HL7Exception - if the parent is not a group or has no child with this name
+   */
+  private Structure getChild(Structure parent, String name, int rep) throws HL7Exception {
+    Structure[] all = getChildren(parent, name).getAll();
+    return rep < all.length ? all[rep] : null;
+  }
+
+  private List<Structure> getNonEmptyChildren(Structure parent, String name)
+      throws HL7Exception {
+    return Lists.newArrayList(getChildren(parent, name).getNonEmpty());
+  }
+
+  private Children getChildren(Structure parent, String name) throws HL7Exception {
+    Children children = parent instanceof Group ? index.get((Group) parent, name) : null;
+    if (children == null) {
+      throw new HL7Exception("Can't find " + name + " as a direct child");
+    }
+    return children;
   }
 
   public static String getMessageType(Message message) {
@@ -381,13 +391,7 @@ public class HL7DataExtractor {
       Preconditions.checkArgument(StringUtils.isNotBlank(segment), SEGMENT_CANNOT_BE_NULL_OR_EMPTY);
 
       if (struct instanceof Group) {
-        Group gp = (Group) struct;
-
-        Structure[] s = gp.getAll(segment);
-        List<Structure> list = Lists.newArrayList(s);
-        list.removeIf(isEmpty());
-
-        parsingResult = new Hl7ParsingStructureResult(list);
+        parsingResult = new Hl7ParsingStructureResult(getNonEmptyChildren(struct, segment));
       } else {
         parsingResult = new Hl7ParsingStructureResult(new ArrayList<>());
       }
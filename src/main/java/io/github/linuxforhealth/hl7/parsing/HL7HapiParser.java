@@ -5,13 +5,20 @@
  */
 package io.github.linuxforhealth.hl7.parsing;
 
+import java.util.Collection;
 import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.Version;
+import ca.uhn.hl7v2.model.Message;
 import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
 import ca.uhn.hl7v2.parser.GenericParser;
 
 public class HL7HapiParser {
 
   private static final String SUPPORTED_HL7_VERSION = "2.6";
+  // the model classes are resolved once and shared by all the parsers
+  private static final CachingModelClassFactory MODEL_CLASSES =
+      new CachingModelClassFactory(new CanonicalModelClassFactory(SUPPORTED_HL7_VERSION));
   private DefaultHapiContext context;
   private GenericParser parser;
 
@@ -20,10 +27,9 @@ public class HL7HapiParser {
 
     context = new DefaultHapiContext();
 
-    // Create the MCF. We want all parsed messages to be for HL7 version 2.6, despite what MSH-12
-    // says.
-    CanonicalModelClassFactory mcf = new CanonicalModelClassFactory(SUPPORTED_HL7_VERSION);
-    context.setModelClassFactory(mcf);
+    // Use the shared MCF. We want all parsed messages to be for HL7 version 2.6, despite what
+    // MSH-12 says.
+    context.setModelClassFactory(MODEL_CLASSES);
 
     /*
      * The ValidationContext is used during parsing and well as during validation using {@link
@@ -49,6 +55,59 @@ public class HL7HapiParser {
     return parser;
   }
 
+  /**
+   * Parses an ER7 message into the HAPI message class of the type read from its header, without
+   * letting the generic parser detect the encoding and look up the message class. Messages whose
+   * class cannot be resolved from the header are parsed by the generic parser.
+   *
+   * @param message - ER7 text of one message
+   * @param header - header of the message, see {@link HL7MessageHeader#scan(CharSequence)}
+   * @return the parsed message
+   * @throws HL7Exception - if the message cannot be parsed
+   */
+  public Message parse(String message, HL7MessageHeader header) throws HL7Exception {
+    Class<? extends Message> messageClass = header != null ? getMessageClass(header) : null;
+    if (messageClass == null) {
+      return parser.parse(message);
+    }
+    Message parsed = MODEL_CLASSES.newMessage(messageClass);
+    // the values are validated with the configuration of the parser of the message
+    parsed.setParser(parser);
+    context.getPipeParser().parse(parsed, message);
+    return parsed;
+  }
+
+  // the class of the structure in MSH-9.3 if specified, otherwise of the message type, the
+  // generic parser reports the messages of unknown versions
+  private Class<? extends Message> getMessageClass(HL7MessageHeader header) throws HL7Exception {
+    if (header.getVersion() == null || Version.versionOf(header.getVersion()) == null) {
+      return null;
+    }
+    if (header.getMessageStructure() != null) {
+      return MODEL_CLASSES.getMessageClass(header.getMessageStructure(), SUPPORTED_HL7_VERSION,
+          true);
+    }
+    String messageType = header.getMessageType();
+    return messageType != null
+        ? MODEL_CLASSES.getMessageClass(messageType, SUPPORTED_HL7_VERSION, false)
+        : null;
+  }
 
+  /**
+   * Loads the model classes of the given message types, before the first message of each type is
+   * parsed.
+   *
+   * @param messageTypes - message types, for example ADT_A01
+   */
+  public static void preload(Collection<String> messageTypes) {
+    MODEL_CLASSES.preload(messageTypes, SUPPORTED_HL7_VERSION);
+  }
+
+  /**
+   * @return the model class factory shared by the parsers, with its cache hit and miss counters
+   */
+  public static CachingModelClassFactory getModelClassFactory() {
+    return MODEL_CLASSES;
+  }
 
 }
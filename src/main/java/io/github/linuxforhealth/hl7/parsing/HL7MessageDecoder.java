@@ -0,0 +1,256 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Decodes raw ER7 encoded HL7 messages into characters with the character set declared in MSH-18,
+ * so that byte buffers read from sockets or memory mapped files are decoded once, without
+ * intermediate String and stream copies.
+ * <p>
+ * MSH-18 is read from the bytes before decoding. This relies on the MSH segment being ASCII
+ * compatible, which is the case for all the character sets of HL7 table 0211 except UTF-16 and
+ * UTF-32, those are recognized by their byte order mark. Messages without MSH-18, or with a
+ * character set not supported by the JVM, are decoded as UTF-8. Malformed input is replaced, like
+ * {@link String#String(byte[], Charset)} does.
+ * <p>
+ * The decoders are reused for all the messages, so an instance should only be used by one thread
+ * at a time.
+ *
+ */
+public class HL7MessageDecoder {
+  private static final Logger LOGGER = LoggerFactory.getLogger(HL7MessageDecoder.class);
+
+  public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+  // number of bytes searched for the MSH segment
+  static final int SCAN_LIMIT = 4096;
+  private static final int MSH_18 = 18;
+  private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+  // HL7 table 0211, restricted to the character sets supported by the JVM
+  private static final Map<String, Charset> HL7_CHARSETS = buildCharsets();
+
+  private final Map<Charset, CharsetDecoder> decoders = new HashMap<>();
+
+  /**
+   * Decodes the bytes between the position and the limit of the buffer, the position of the buffer
+   * is not changed.
+   *
+   * @param bytes - single ER7 encoded HL7 message
+   * @return the decoded characters
+   */
+  public CharBuffer decode(ByteBuffer bytes) {
+    Preconditions.checkArgument(bytes != null, "bytes cannot be null");
+    ByteBuffer input = bytes.duplicate();
+    Charset charset = detectCharset(input);
+    if (DEFAULT_CHARSET.equals(charset) && startsWith(input, UTF_8_BOM)) {
+      input.position(input.position() + UTF_8_BOM.length);
+    }
+    try {
+      return getDecoder(charset).decode(input);
+    } catch (CharacterCodingException e) {
+      // not reachable, malformed and unmappable input is replaced
+      throw new IllegalArgumentException("Cannot decode the message.", e);
+    }
+  }
+
+  /**
+   * Returns a reader decoding the stream with the character set of the message. The beginning of
+   * the stream is read for finding MSH-18, the stream is not closed.
+   *
+   * @param in - stream holding a single ER7 encoded HL7 message
+   * @return reader of the message characters
+   * @throws IOException - if the stream cannot be read
+   */
+  public Reader newReader(InputStream in) throws IOException {
+    Preconditions.checkArgument(in != null, "input stream cannot be null");
+    InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, SCAN_LIMIT);
+    buffered.mark(SCAN_LIMIT);
+    byte[] head = new byte[SCAN_LIMIT];
+    int length = buffered.readNBytes(head, 0, SCAN_LIMIT);
+    buffered.reset();
+    ByteBuffer headBuffer = ByteBuffer.wrap(head, 0, length);
+    Charset charset = detectCharset(headBuffer);
+    if (DEFAULT_CHARSET.equals(charset) && startsWith(headBuffer, UTF_8_BOM)) {
+      buffered.skip(UTF_8_BOM.length);
+    }
+    return new InputStreamReader(buffered, getDecoder(charset));
+  }
+
+  /**
+   * Finds the character set of the message from its byte order mark or from MSH-18. The position
+   * of the buffer is not changed.
+   *
+   * @param bytes - beginning of an ER7 encoded HL7 message
+   * @return the character set, {@link #DEFAULT_CHARSET} if the message does not declare a
+   *         supported character set
+   */
+  public static Charset detectCharset(ByteBuffer bytes) {
+    Preconditions.checkArgument(bytes != null, "bytes cannot be null");
+    if (startsWith(bytes, new byte[] {(byte) 0xFE, (byte) 0xFF})
+        || startsWith(bytes, new byte[] {(byte) 0xFF, (byte) 0xFE})) {
+      return StandardCharsets.UTF_16;
+    }
+    String hl7Encoding = readCharacterSetField(bytes);
+    if (StringUtils.isBlank(hl7Encoding)) {
+      return DEFAULT_CHARSET;
+    }
+    Charset charset = getCharset(hl7Encoding);
+    if (charset == null) {
+      LOGGER.warn("Unsupported character set in MSH-18, the message is decoded as {}.",
+          DEFAULT_CHARSET);
+      LOGGER.debug("Unsupported character set in MSH-18: {}", hl7Encoding);
+      return DEFAULT_CHARSET;
+    }
+    return charset;
+  }
+
+  /**
+   * Maps a character set code of HL7 table 0211, for example 8859/1 or UNICODE UTF-8, to the Java
+   * character set.
+   *
+   * @param hl7Encoding - value of MSH-18
+   * @return the character set, null if the code is unknown or not supported by the JVM
+   */
+  public static Charset getCharset(String hl7Encoding) {
+    if (hl7Encoding == null) {
+      return null;
+    }
+    return HL7_CHARSETS.get(StringUtils.upperCase(hl7Encoding.trim()));
+  }
+
+  private CharsetDecoder getDecoder(Charset charset) {
+    CharsetDecoder decoder = decoders.computeIfAbsent(charset,
+        c -> c.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    return decoder.reset();
+  }
+
+  /**
+   * Returns the first repetition of MSH-18, null if the MSH segment is not found in the first
+   * {@link #SCAN_LIMIT} bytes or if the field is not present.
+   */
+  private static String readCharacterSetField(ByteBuffer bytes) {
+    int limit = Math.min(bytes.limit(), bytes.position() + SCAN_LIMIT);
+    int start = findHeader(bytes, limit);
+    // MSH, field separator and the encoding characters
+    if (start < 0 || start + 5 >= limit) {
+      return null;
+    }
+    byte fieldSeparator = bytes.get(start + 3);
+    byte componentSeparator = bytes.get(start + 4);
+    byte repetitionSeparator = bytes.get(start + 5);
+
+    StringBuilder value = new StringBuilder();
+    // the field separator is MSH-1, so the encoding characters that follow are MSH-2
+    int field = 2;
+    boolean endOfValue = false;
+    for (int i = start + 4; i < limit; i++) {
+      byte b = bytes.get(i);
+      if (b == '\r' || b == '\n') {
+        break;
+      } else if (b == fieldSeparator) {
+        if (++field > MSH_18) {
+          break;
+        }
+      } else if (field == MSH_18 && !endOfValue) {
+        if (b == componentSeparator || b == repetitionSeparator) {
+          endOfValue = true;
+        } else {
+          value.append((char) (b & 0xFF));
+        }
+      }
+    }
+    return field >= MSH_18 ? value.toString() : null;
+  }
+
+  private static int findHeader(ByteBuffer bytes, int limit) {
+    for (int i = bytes.position(); i + 3 < limit; i++) {
+      if (bytes.get(i) == 'M' && bytes.get(i + 1) == 'S' && bytes.get(i + 2) == 'H'
+          && isSegmentStart(bytes, i)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isSegmentStart(ByteBuffer bytes, int index) {
+    if (index == bytes.position()) {
+      return true;
+    }
+    byte previous = bytes.get(index - 1);
+    // segment terminators, MLLP start block or the last byte of the UTF-8 byte order mark
+    return previous == '\r' || previous == '\n' || previous == 0x0B
+        || (index == bytes.position() + UTF_8_BOM.length && startsWith(bytes, UTF_8_BOM));
+  }
+
+  private static boolean startsWith(ByteBuffer bytes, byte[] prefix) {
+    if (bytes.remaining() < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes.get(bytes.position() + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Map<String, Charset> buildCharsets() {
+    Map<String, String> names = new HashMap<>();
+    names.put("ASCII", "US-ASCII");
+    names.put("8859/1", "ISO-8859-1");
+    names.put("8859/2", "ISO-8859-2");
+    names.put("8859/3", "ISO-8859-3");
+    names.put("8859/4", "ISO-8859-4");
+    names.put("8859/5", "ISO-8859-5");
+    names.put("8859/6", "ISO-8859-6");
+    names.put("8859/7", "ISO-8859-7");
+    names.put("8859/8", "ISO-8859-8");
+    names.put("8859/9", "ISO-8859-9");
+    names.put("8859/15", "ISO-8859-15");
+    names.put("ISO IR6", "US-ASCII");
+    names.put("ISO IR14", "JIS_X0201");
+    names.put("ISO IR87", "x-JIS0208");
+    names.put("ISO IR159", "JIS_X0212-1990");
+    names.put("GB 18030-2000", "GB18030");
+    names.put("KS X 1001", "EUC-KR");
+    names.put("CNS 11643-1992", "x-EUC-TW");
+    names.put("BIG-5", "Big5");
+    names.put("UNICODE", "UTF-16");
+    names.put("UNICODE UTF-8", "UTF-8");
+    names.put("UNICODE UTF-16", "UTF-16");
+    names.put("UNICODE UTF-32", "UTF-32");
+
+    ImmutableMap.Builder<String, Charset> charsets = ImmutableMap.builder();
+    names.forEach((hl7Encoding, javaName) -> {
+      if (Charset.isSupported(javaName)) {
+        charsets.put(hl7Encoding, Charset.forName(javaName));
+      }
+    });
+    return charsets.build();
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Values of the MSH segment of a message read straight from its ER7 text, before the message is
+ * parsed: the message type (MSH-9), the message control id (MSH-10), the version (MSH-12) and the
+ * character set (MSH-18). Only the MSH segment is scanned, so the message can be routed to its
+ * template, or rejected when its type is not supported, for a fraction of the cost of a parse.
+ *
+ */
+public final class HL7MessageHeader {
+
+  private static final String MESSAGE_HEADER = "MSH";
+  private static final int MESSAGE_TYPE = 9;
+  private static final int MESSAGE_CONTROL_ID = 10;
+  private static final int VERSION_ID = 12;
+  private static final int CHARACTER_SET = 18;
+
+  private final String messageCode;
+  private final String triggerEvent;
+  private final String messageStructure;
+  private final String controlId;
+  private final String version;
+  private final String characterSet;
+
+  private HL7MessageHeader(ER7Index msh) {
+    this.messageCode = msh.getString(0, MESSAGE_TYPE, 0, 1, 1);
+    this.triggerEvent = msh.getString(0, MESSAGE_TYPE, 0, 2, 1);
+    this.messageStructure = msh.getString(0, MESSAGE_TYPE, 0, 3, 1);
+    this.controlId = msh.getString(0, MESSAGE_CONTROL_ID, 0, 1, 1);
+    this.version = msh.getString(0, VERSION_ID, 0, 1, 1);
+    this.characterSet = msh.getString(0, CHARACTER_SET, 0, 1, 1);
+  }
+
+  /**
+   * Reads the header of a message from its text.
+   *
+   * @param message - ER7 text of one message
+   * @return {@link HL7MessageHeader}, null if the text does not start with a MSH segment
+   */
+  public static HL7MessageHeader scan(CharSequence message) {
+    Preconditions.checkArgument(message != null, "message cannot be null");
+    if (message.length() < 4 || !MESSAGE_HEADER.contentEquals(message.subSequence(0, 3))) {
+      return null;
+    }
+    int end = 3;
+    while (end < message.length() && message.charAt(end) != '\r' && message.charAt(end) != '\n') {
+      end++;
+    }
+    return new HL7MessageHeader(ER7Index.of(message.subSequence(0, end)));
+  }
+
+  /**
+   * @return the message type, for example ADT_A01, null if the message code or the trigger event
+   *         is missing
+   */
+  public String getMessageType() {
+    if (messageCode == null || triggerEvent == null) {
+      return null;
+    }
+    return messageCode + "_" + triggerEvent;
+  }
+
+  /**
+   * @return the message code, MSH-9.1
+   */
+  public String getMessageCode() {
+    return messageCode;
+  }
+
+  /**
+   * @return the trigger event, MSH-9.2
+   */
+  public String getTriggerEvent() {
+    return triggerEvent;
+  }
+
+  /**
+   * @return the message structure, MSH-9.3, null if the message does not specify it
+   */
+  public String getMessageStructure() {
+    return messageStructure;
+  }
+
+  /**
+   * @return the message control id, MSH-10
+   */
+  public String getControlId() {
+    return controlId;
+  }
+
+  /**
+   * @return the version id, MSH-12
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * @return the first character set of the message, MSH-18, null if it is not specified
+   */
+  public String getCharacterSet() {
+    return characterSet;
+  }
+
+}
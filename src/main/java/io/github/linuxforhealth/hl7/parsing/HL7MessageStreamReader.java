@@ -0,0 +1,139 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Splits a stream of ER7 encoded HL7 messages into single messages. The stream is read lazily, only
+ * the message being assembled is kept in memory, so files of any size can be processed with a
+ * constant heap footprint.
+ * <p>
+ * Supported input:
+ * <ul>
+ * <li>Any number of messages, each starting with a MSH segment</li>
+ * <li>Batch files, the FHS, BHS, BTS and FTS envelope segments are skipped</li>
+ * <li>Segments terminated by CR, LF or CRLF</li>
+ * <li>MLLP framing characters (start block and end block) around the messages</li>
+ * </ul>
+ * Lines before the first MSH segment that are not envelope segments are ignored.
+ *
+ */
+public class HL7MessageStreamReader implements Iterator<String>, Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(HL7MessageStreamReader.class);
+
+  private static final String MESSAGE_HEADER = "MSH";
+  private static final ImmutableSet<String> ENVELOPE_SEGMENTS =
+      ImmutableSet.of("FHS", "BHS", "BTS", "FTS");
+  private static final char SEGMENT_SEPARATOR = '\r';
+  private static final char MLLP_START_BLOCK = '\u000b';
+  private static final char MLLP_END_BLOCK = '\u001c';
+
+  private final BufferedReader reader;
+  // first segment of the next message, read while looking for the end of the current message
+  private String pendingHeader;
+  private String next;
+  private boolean endOfStream;
+
+  public HL7MessageStreamReader(Reader reader) {
+    Preconditions.checkArgument(reader != null, "reader cannot be null");
+    this.reader =
+        reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      next = readMessage();
+    }
+    return next != null;
+  }
+
+  @Override
+  public String next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException("No more HL7 messages in the stream.");
+    }
+    String message = next;
+    next = null;
+    return message;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private String readMessage() {
+    String header = pendingHeader;
+    pendingHeader = null;
+    while (header == null) {
+      String segment = readSegment();
+      if (segment == null) {
+        return null;
+      }
+      if (segment.startsWith(MESSAGE_HEADER)) {
+        header = segment;
+      } else if (!isEnvelope(segment)) {
+        LOGGER.warn("Skipping content found outside of a HL7 message.");
+      }
+    }
+
+    StringBuilder message = new StringBuilder(header);
+    String segment;
+    while ((segment = readSegment()) != null) {
+      if (segment.startsWith(MESSAGE_HEADER)) {
+        pendingHeader = segment;
+        break;
+      } else if (!isEnvelope(segment)) {
+        message.append(SEGMENT_SEPARATOR).append(segment);
+      }
+    }
+    return message.toString();
+  }
+
+  private static boolean isEnvelope(String segment) {
+    return segment.length() >= 3 && ENVELOPE_SEGMENTS.contains(segment.substring(0, 3));
+  }
+
+  /**
+   * Returns the next non empty segment, without the segment terminator and MLLP framing
+   * characters, or null at the end of the stream.
+   */
+  private String readSegment() {
+    if (endOfStream) {
+      return null;
+    }
+    try {
+      StringBuilder segment = new StringBuilder();
+      int c;
+      while ((c = reader.read()) != -1) {
+        if (c == '\r' || c == '\n') {
+          if (segment.length() > 0) {
+            return segment.toString();
+          }
+        } else if (c != MLLP_START_BLOCK && c != MLLP_END_BLOCK) {
+          segment.append((char) c);
+        }
+      }
+      endOfStream = true;
+      return segment.length() > 0 ? segment.toString() : null;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failure reading HL7 messages from the stream.", e);
+    }
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import java.util.Set;
+import com.google.common.base.Preconditions;
+
+/**
+ * Removes, from the ER7 text of a message, the fields of the segments a conversion does not read,
+ * before the message is parsed. HAPI parses every field of every segment, down to the components,
+ * a pruned segment is reduced to its name: it is still placed in its group, so the structure of the
+ * parsed message is unchanged, but none of its fields are parsed. Custom segments (ZXX...) and
+ * segments such as IN1, IN2 or GT1 are usually large and never read by the templates.
+ * <p>
+ * The text of the pruned segments is not lost, it stays in the original message held by the
+ * caller.
+ *
+ */
+public final class SegmentPruner {
+
+  private static final String MESSAGE_HEADER = "MSH";
+
+  private SegmentPruner() {}
+
+  /**
+   * Removes the fields of the segments that are not in the given set. The MSH segment is always
+   * kept.
+   *
+   * @param message - ER7 text of one message
+   * @param segments - names of the segments to keep
+   * @return the text of the message with the other segments reduced to their name, the message
+   *         itself if no segment is pruned
+   */
+  public static String prune(String message, Set<String> segments) {
+    Preconditions.checkArgument(message != null, "message cannot be null");
+    Preconditions.checkArgument(segments != null, "segments cannot be null");
+    if (!message.startsWith(MESSAGE_HEADER) || message.length() < 4) {
+      return message;
+    }
+    char fieldSeparator = message.charAt(3);
+    StringBuilder pruned = null;
+    // end of the text copied to the pruned message
+    int copied = 0;
+    int start = 0;
+    int length = message.length();
+    while (start < length) {
+      int end = start;
+      while (end < length && !isSegmentSeparator(message.charAt(end))) {
+        end++;
+      }
+      int nameEnd = message.indexOf(fieldSeparator, start);
+      if (nameEnd > start && nameEnd < end
+          && !segments.contains(message.substring(start, nameEnd))
+          && !message.startsWith(MESSAGE_HEADER, start)) {
+        if (pruned == null) {
+          pruned = new StringBuilder(length);
+        }
+        pruned.append(message, copied, nameEnd);
+        copied = end;
+      }
+      start = end;
+      while (start < length && isSegmentSeparator(message.charAt(start))) {
+        start++;
+      }
+    }
+    if (pruned == null) {
+      return message;
+    }
+    return pruned.append(message, copied, length).toString();
+  }
+
+  private static boolean isSegmentSeparator(char c) {
+    return c == '\r' || c == '\n';
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Group;
+import ca.uhn.hl7v2.model.Structure;
+
+/**
+ * Index of the child structures of the groups of one message, by group and child name. The
+ * repetitions of a child are read from the HAPI group, and filtered of the empty ones, once per
+ * message instead of on every lookup, so that walking the groups of a message with many segments
+ * costs a map lookup per step.
+ * <p>
+ * The groups are indexed when they are first looked up, the message must not be modified after.
+ * The index is not thread safe, it is used by the {@link HL7DataExtractor} of one message
+ * conversion.
+ *
+ */
+class StructureIndex {
+
+  private static final Children UNKNOWN = new Children(null);
+
+  private final Map<Group, Map<String, Children>> groups = new IdentityHashMap<>();
+
+  /**
+   * @param group - group of the message, the message itself for its top level structures
+   * @param name - name of the child structure, for example PID or PATIENT_RESULT
+   * @return the repetitions of the child, null if the group has no child with this name
+   */
+  Children get(Group group, String name) {
+    Map<String, Children> children = groups.computeIfAbsent(group, g -> new HashMap<>());
+    Children child = children.get(name);
+    if (child == null) {
+      child = load(group, name);
+      children.put(name, child);
+    }
+    return child == UNKNOWN ? null : child;
+  }
+
+  private static Children load(Group group, String name) {
+    try {
+      return new Children(group.getAll(name));
+    } catch (HL7Exception e) {
+      // not a child of this group
+      return UNKNOWN;
+    }
+  }
+
+  /**
+   * Repetitions of a child structure of a group.
+   */
+  static final class Children {
+    private final Structure[] all;
+    private List<Structure> nonEmpty;
+
+    private Children(Structure[] all) {
+      this.all = all;
+    }
+
+    /**
+     * @return all the repetitions, empty ones included
+     */
+    Structure[] getAll() {
+      return all;
+    }
+
+    /**
+     * @return the repetitions that are not empty, unmodifiable
+     */
+    List<Structure> getNonEmpty() {
+      if (nonEmpty == null) {
+        List<Structure> list = new ArrayList<>(all.length);
+        for (Structure s : all) {
+          if (!isEmpty(s)) {
+            list.add(s);
+          }
+        }
+        nonEmpty = Collections.unmodifiableList(list);
+      }
+      return nonEmpty;
+    }
+
+    private static boolean isEmpty(Structure s) {
+      try {
+        return s == null || s.isEmpty();
+      } catch (HL7Exception e) {
+        return true;
+      }
+    }
+  }
+
+}
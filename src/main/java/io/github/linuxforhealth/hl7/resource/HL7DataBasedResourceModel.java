@@ -17,6 +17,7 @@ import io.github.linuxforhealth.api.ResourceModel;
 import io.github.linuxforhealth.core.Constants;
 import io.github.linuxforhealth.core.exception.DataExtractionException;
 import io.github.linuxforhealth.core.exception.RequiredConstraintFailureException;
+import io.github.linuxforhealth.core.metrics.MetricsScope;
 import io.github.linuxforhealth.core.resource.ResourceResult;
 import io.github.linuxforhealth.core.resource.SimpleResourceValue;
 import io.github.linuxforhealth.hl7.resource.deserializer.HL7DataBasedResourceDeserializer;
@@ -87,6 +88,7 @@ public class HL7DataBasedResourceModel implements ResourceModel {
 
 
     } catch (RequiredConstraintFailureException e) {
+      MetricsScope.recordConstraintFailure();
       LOGGER.warn("Resource Constraint condition not satisfied for {}.", this.name);
       LOGGER.debug("Resource Constraint condition not satisfied for {}, exception {}", this.name, e.toString());
       return null;
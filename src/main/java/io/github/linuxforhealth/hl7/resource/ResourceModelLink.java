@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.resource;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reference from an expression to the shared resource model of a template. The model is resolved
+ * when the link is created, so that missing templates are reported when the templates are loaded.
+ * When the template is being built, because it is referenced from its own expressions directly or
+ * through other templates, the model is resolved on first use instead, from the reader that created
+ * the link.
+ *
+ */
+public class ResourceModelLink {
+
+  private final String path;
+  private final ResourceReader reader;
+  private volatile HL7DataBasedResourceModel model;
+
+  public ResourceModelLink(String path) {
+    Preconditions.checkArgument(StringUtils.isNotBlank(path), "Path for resource cannot be blank");
+    this.path = path;
+    this.reader = ResourceReader.getInstance();
+    this.model = (HL7DataBasedResourceModel) reader.linkResourceModel(path);
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return the resource model of the template
+   */
+  public HL7DataBasedResourceModel get() {
+    HL7DataBasedResourceModel resolved = model;
+    if (resolved == null) {
+      resolved = (HL7DataBasedResourceModel) reader.generateResourceModel(path);
+      model = resolved;
+    }
+    return resolved;
+  }
+
+}
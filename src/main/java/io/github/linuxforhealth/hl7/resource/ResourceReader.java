@@ -7,13 +7,20 @@ package io.github.linuxforhealth.hl7.resource;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -35,7 +42,10 @@ import io.github.linuxforhealth.hl7.message.HL7MessageModel;
  * Reads resources. If the configuration file has base path defined (base.path.resource) then the
  * resources are loaded from that path. If the configuration is not defined then default path would
  * be used.
- * 
+ * <p>
+ * A reader caches the templates, resource models and mappings it loads. Templates are reloaded by
+ * creating a new reader and installing it, conversions bind the reader they started with to their
+ * thread with {@link #callWith(Supplier)}.
  *
  * @author pbhallam
  */
@@ -43,10 +53,21 @@ public class ResourceReader {
 
   private final Logger LOGGER = LoggerFactory.getLogger(ResourceReader.class);
 
-  private static ResourceReader reader;
+  private static volatile ResourceReader reader;
+  // reader used by the current thread instead of the installed one, see callWith
+  private static final ThreadLocal<ResourceReader> boundReader = new ThreadLocal<>();
 
   private final ConverterConfiguration converterConfig = ConverterConfiguration.getInstance();
 
+  private final TemplateSnapshot templateSnapshot = loadTemplateSnapshot();
+  // canonical resource models by template path, shared by all the expressions using the template
+  private final Map<String, ResourceModel> resourceModels = new ConcurrentHashMap<>();
+  // template paths whose resource model is being built by the current thread
+  private final ThreadLocal<Set<String>> resourceModelsInProgress =
+      ThreadLocal.withInitial(HashSet::new);
+  // lookups and mappings loaded from the resources of this reader, by type
+  private final Map<Class<?>, Object> components = new ConcurrentHashMap<>();
+
   /**
    * Loads a file resource configuration, returning a String
    * 
@@ -95,62 +116,191 @@ public class ResourceReader {
     return resource;
   }
 
-  public Map<String, HL7MessageModel> getMessageTemplates() {
-    Map<String, HL7MessageModel> messagetemplates = new HashMap<>();
-    List<String> supportedMessageTemplates =
-        ConverterConfiguration.getInstance().getSupportedMessageTemplates();
-    for (String template : supportedMessageTemplates) {
-      HL7MessageModel rm = getMessageModel(template);
-      messagetemplates.put(com.google.common.io.Files.getNameWithoutExtension(template),
-          rm);
+  /**
+   * Loads and parses a YAML resource. The parsed resource is taken from the template snapshot when
+   * the snapshot holds it for the same content, otherwise the YAML is parsed and added to the
+   * snapshot. The parsed resources are not kept, the callers keep the models built from them.
+   * 
+   * @param resourcePath The relative path to the resource (hl7/, fhir/, etc)
+   * @return The parsed resource, null if the resource is blank
+   */
+  public JsonNode getTemplateTree(String resourcePath) {
+    String content = getResource(resourcePath);
+    if (StringUtils.isBlank(content)) {
+      return null;
     }
-    return messagetemplates;
+    JsonNode tree = templateSnapshot.getTree(resourcePath, content);
+    if (tree == null) {
+      try {
+        tree = ObjectMapperUtil.getYAMLInstance().readTree(content);
+      } catch (IOException e) {
+        throw new IllegalArgumentException(
+            "Error encountered in processing the template" + resourcePath, e);
+      }
+      templateSnapshot.put(resourcePath, content, tree);
+    }
+    return tree;
   }
 
+  /**
+   * Writes the template snapshot to the file configured with template.snapshot.file, if templates
+   * were parsed from YAML since the snapshot was read. A snapshot that cannot be written is
+   * logged, the converter works without it.
+   */
+  public void saveTemplateSnapshot() {
+    String file = converterConfig.getTemplateSnapshotFile();
+    if (StringUtils.isBlank(file) || !templateSnapshot.isModified()) {
+      return;
+    }
+    try {
+      templateSnapshot.write(Paths.get(file));
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Cannot write the template snapshot.");
+      LOGGER.debug("Cannot write the template snapshot {}", file, e);
+    }
+  }
 
+  /**
+   * Writes the template snapshot like {@link #saveTemplateSnapshot()}, then drops its templates.
+   * Called once all the message templates are loaded, the templates loaded afterwards are parsed
+   * from their YAML.
+   */
+  public void releaseTemplateSnapshot() {
+    saveTemplateSnapshot();
+    templateSnapshot.release();
+  }
 
-  private HL7MessageModel getMessageModel(String templateName) {
+  TemplateSnapshot getTemplateSnapshot() {
+    return templateSnapshot;
+  }
 
-    String templateFileContent =
-        getResourceInHl7Folder(Constants.MESSAGE_BASE_PATH + templateName + ".yml");
-    if (StringUtils.isNotBlank(templateFileContent)) {
-      try {
+  // The configured snapshot file if it exists, else the snapshot bundled with the library.
+  private TemplateSnapshot loadTemplateSnapshot() {
+    String file = converterConfig.getTemplateSnapshotFile();
+    try {
+      if (StringUtils.isNotBlank(file)) {
+        Path path = Paths.get(file);
+        if (Files.isRegularFile(path)) {
+          try (InputStream in = Files.newInputStream(path)) {
+            return TemplateSnapshot.read(in);
+          }
+        }
+      } else {
+        InputStream in = ResourceReader.class.getClassLoader()
+            .getResourceAsStream(TemplateSnapshot.CLASSPATH_RESOURCE);
+        if (in != null) {
+          try (InputStream snapshot = in) {
+            return TemplateSnapshot.read(snapshot);
+          }
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Cannot read the template snapshot, the templates are parsed from YAML.");
+      LOGGER.debug("Cannot read the template snapshot.", e);
+    }
+    return new TemplateSnapshot();
+  }
 
-        JsonNode parent = ObjectMapperUtil.getYAMLInstance().readTree(templateFileContent);
-        Preconditions.checkState(parent != null, "Parent node from template file cannot be null");
+  /**
+   * Loads the message templates of the supported messages. The templates are loaded in parallel
+   * and share the resource models of the templates they have in common.
+   * 
+   * @return message templates by message type
+   */
+  public Map<String, HL7MessageModel> getMessageTemplates() {
+    List<String> supportedMessageTemplates =
+        ConverterConfiguration.getInstance().getSupportedMessageTemplates();
+    Map<String, HL7MessageModel> messagetemplates = new ConcurrentHashMap<>();
+    supportedMessageTemplates.parallelStream().forEach(template -> messagetemplates.put(
+        com.google.common.io.Files.getNameWithoutExtension(template), getMessageModel(template)));
+    return new HashMap<>(messagetemplates);
+  }
 
-        JsonNode resourceNodes = parent.get("resources");
-        Preconditions.checkState(resourceNodes != null && !resourceNodes.isEmpty(),
-            "List of resources from Parent node from template file cannot be null or empty");
-        List<HL7FHIRResourceTemplateAttributes> templateAttributes =
-            ObjectMapperUtil.getYAMLInstance().convertValue(resourceNodes,
-                new TypeReference<List<HL7FHIRResourceTemplateAttributes>>() {});
 
-        List<HL7FHIRResourceTemplate> templates = new ArrayList<>();
 
-        templateAttributes.forEach(t -> templates.add(new HL7FHIRResourceTemplate(t)));
-        Preconditions.checkState(templateAttributes != null && !templateAttributes.isEmpty(),
-            "TemplateAttributes generated from template file cannot be null or empty");
-        return new HL7MessageModel(templateName, templates);
+  /**
+   * Loads the message template.
+   * 
+   * @param templateName - name of the message template, as listed in supported.hl7.messages
+   * @return {@link HL7MessageModel}
+   * @throws IllegalArgumentException - if the template is not present
+   */
+  public HL7MessageModel getMessageModel(String templateName) {
+    return callWith(() -> buildMessageModel(templateName));
+  }
 
-      } catch (IOException e) {
-        throw new IllegalArgumentException(
-            "Error encountered in processing the template" + templateName, e);
-      }
+  private HL7MessageModel buildMessageModel(String templateName) {
+    JsonNode parent = getTemplateTree(
+        Constants.HL7_BASE_PATH + Constants.MESSAGE_BASE_PATH + templateName + ".yml");
+    if (parent != null) {
+      JsonNode resourceNodes = parent.get("resources");
+      Preconditions.checkState(resourceNodes != null && !resourceNodes.isEmpty(),
+          "List of resources from Parent node from template file cannot be null or empty");
+      List<HL7FHIRResourceTemplateAttributes> templateAttributes =
+          ObjectMapperUtil.getYAMLInstance().convertValue(resourceNodes,
+              new TypeReference<List<HL7FHIRResourceTemplateAttributes>>() {});
+
+      List<HL7FHIRResourceTemplate> templates = new ArrayList<>();
+
+      templateAttributes.forEach(t -> templates.add(new HL7FHIRResourceTemplate(t)));
+      Preconditions.checkState(templateAttributes != null && !templateAttributes.isEmpty(),
+          "TemplateAttributes generated from template file cannot be null or empty");
+      return new HL7MessageModel(templateName, templates);
     } else {
       throw new IllegalArgumentException("File not present:" + templateName);
     }
 
   }
 
+  /**
+   * Returns the resource model of the template. The model is built on first use and the same
+   * instance is returned for all the following calls, so common templates like
+   * datatype/CodeableConcept are only built once.
+   * 
+   * @param path - template path relative to the hl7 folder, without extension
+   * @return {@link ResourceModel}
+   * @throws IllegalStateException - if the template references itself while being built, such
+   *         references should be made with a {@link ResourceModelLink}
+   */
   public ResourceModel generateResourceModel(String path) {
     Preconditions.checkArgument(StringUtils.isNotBlank(path), "Path for resource cannot be blank");
-    String templateFileContent = getResourceInHl7Folder(path + ".yml");
+    ResourceModel model = resourceModels.get(path);
+    if (model != null) {
+      return model;
+    }
+    Set<String> inProgress = resourceModelsInProgress.get();
+    Preconditions.checkState(inProgress.add(path), "Template %s references itself", path);
+    try {
+      model = callWith(() -> buildResourceModel(path));
+    } finally {
+      inProgress.remove(path);
+    }
+    // a model built concurrently by another thread is kept, so that a single instance is shared
+    ResourceModel previous = resourceModels.putIfAbsent(path, model);
+    return previous != null ? previous : model;
+  }
+
+  /**
+   * Returns the resource model of the template, or null if the model is being built by the current
+   * thread because the template is referenced from one of its own expressions.
+   */
+  ResourceModel linkResourceModel(String path) {
+    if (resourceModelsInProgress.get().contains(path)) {
+      return null;
+    }
+    return generateResourceModel(path);
+  }
+
+  private ResourceModel buildResourceModel(String path) {
+    JsonNode template = getTemplateTree(Constants.HL7_BASE_PATH + path + ".yml");
+    if (template == null) {
+      throw new IllegalArgumentException("File not present:" + path);
+    }
 
     try {
       InjectableValues injValues = new InjectableValues.Std().addValue("resourceName", path);
-      return ObjectMapperUtil.getYAMLInstance().setInjectableValues(injValues)
-          .readValue(templateFileContent, HL7DataBasedResourceModel.class);
+      return ObjectMapperUtil.getYAMLInstance().readerFor(HL7DataBasedResourceModel.class)
+          .with(injValues).readValue(template);
 
     } catch (IOException e) {
       throw new IllegalArgumentException("Error encountered in processing the template" + path, e);
@@ -159,11 +309,94 @@ public class ResourceReader {
 
   }
 
+  /**
+   * Returns the reader bound to the current thread by {@link #callWith(Supplier)}, else the
+   * installed reader.
+   * 
+   * @return {@link ResourceReader}
+   */
   public static ResourceReader getInstance() {
-    if (reader == null) {
-      reader = new ResourceReader();
+    ResourceReader bound = boundReader.get();
+    if (bound != null) {
+      return bound;
+    }
+    ResourceReader installed = reader;
+    if (installed == null) {
+      synchronized (ResourceReader.class) {
+        if (reader == null) {
+          reader = new ResourceReader();
+        }
+        installed = reader;
+      }
+    }
+    return installed;
+  }
+
+  /**
+   * Creates a reader with empty caches, the templates and mappings are read again from the
+   * resources when first requested. The reader is not installed.
+   * 
+   * @return {@link ResourceReader}
+   */
+  public static ResourceReader newInstance() {
+    return new ResourceReader();
+  }
+
+  /**
+   * Installs the reader returned by {@link #getInstance()} to threads without a bound reader.
+   * Conversions in progress keep the reader bound to their thread.
+   * 
+   * @param resourceReader - reader to install
+   */
+  public static void install(ResourceReader resourceReader) {
+    Preconditions.checkArgument(resourceReader != null, "resourceReader cannot be null");
+    reader = resourceReader;
+  }
+
+  /**
+   * Runs the action with this reader bound to the current thread, so that the templates, lookups
+   * and mappings used by the action all come from this reader even if another reader is installed
+   * meanwhile.
+   * 
+   * @param action - action to run
+   * @return the result of the action
+   */
+  public <T> T callWith(Supplier<T> action) {
+    ResourceReader previous = boundReader.get();
+    if (previous == this) {
+      return action.get();
+    }
+    boundReader.set(this);
+    try {
+      return action.get();
+    } finally {
+      if (previous != null) {
+        boundReader.set(previous);
+      } else {
+        boundReader.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the component of the type loaded from the resources of this reader, creating it on
+   * first use. A component created concurrently by another thread may be discarded.
+   * 
+   * @param type - type of the component
+   * @param factory - creates the component from this reader
+   * @return the component
+   */
+  public <T> T getComponent(Class<T> type, Function<ResourceReader, T> factory) {
+    Object component = components.get(type);
+    if (component == null) {
+      T created = callWith(() -> factory.apply(this));
+      Preconditions.checkState(created != null, "Component %s cannot be null", type.getName());
+      component = components.putIfAbsent(type, created);
+      if (component == null) {
+        component = created;
+      }
     }
-    return reader;
+    return type.cast(component);
   }
 
 
@@ -0,0 +1,248 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
+import io.github.linuxforhealth.core.ObjectMapperUtil;
+import io.github.linuxforhealth.core.terminology.TerminologyLookup;
+import io.github.linuxforhealth.core.terminology.UrlLookup;
+
+/**
+ * Parsed templates, so that the converter does not parse the YAML of the templates again on every
+ * start. Each template is stored with the SHA-256 hash of its YAML content and is only used while
+ * the content is unchanged, a template that was edited or overridden in base.path.resource is
+ * parsed from its YAML again.
+ * <p>
+ * The snapshot is a gzip compressed binary file holding, for each template, its resource path, its
+ * content hash and its parsed tree encoded as compact JSON. The trees are decoded when the template
+ * is requested, and the snapshot is released once all the message templates are loaded.
+ * <p>
+ * The snapshot bundled with the library ({@link #CLASSPATH_RESOURCE}) is written at build time by
+ * running this class, see the templateSnapshot Gradle task.
+ *
+ */
+public class TemplateSnapshot {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TemplateSnapshot.class);
+
+  public static final String CLASSPATH_RESOURCE = "hl7/templates.snapshot";
+  private static final int MAGIC = 0x484C3754; // HL7T
+  private static final int VERSION = 1;
+  private static final String HASH_ALGORITHM = "SHA-256";
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean modified;
+  private volatile boolean released;
+
+  /**
+   * Reads a snapshot written by {@link #write(OutputStream)}. The stream is not closed.
+   *
+   * @param in - snapshot content
+   * @return {@link TemplateSnapshot}
+   * @throws IOException - if the stream cannot be read or is not a snapshot of this version
+   */
+  public static TemplateSnapshot read(InputStream in) throws IOException {
+    Preconditions.checkArgument(in != null, "input stream cannot be null");
+    DataInputStream data =
+        new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a template snapshot.");
+    }
+    int version = data.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported template snapshot version " + version);
+    }
+    TemplateSnapshot snapshot = new TemplateSnapshot();
+    int count = data.readInt();
+    for (int i = 0; i < count; i++) {
+      String path = data.readUTF();
+      byte[] hash = new byte[data.readUnsignedByte()];
+      data.readFully(hash);
+      byte[] tree = new byte[data.readInt()];
+      data.readFully(tree);
+      snapshot.entries.put(path, new Entry(hash, tree));
+    }
+    return snapshot;
+  }
+
+  /**
+   * Writes the snapshot, the templates are ordered by path so that the same templates always
+   * produce the same file. The stream is not closed.
+   *
+   * @param out - destination of the snapshot
+   * @throws IOException - if the stream cannot be written
+   */
+  public void write(OutputStream out) throws IOException {
+    Preconditions.checkArgument(out != null, "output stream cannot be null");
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip));
+    Map<String, Entry> sorted = new TreeMap<>(entries);
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(sorted.size());
+    for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+      data.writeUTF(e.getKey());
+      data.writeByte(e.getValue().hash.length);
+      data.write(e.getValue().hash);
+      data.writeInt(e.getValue().tree.length);
+      data.write(e.getValue().tree);
+    }
+    data.flush();
+    gzip.finish();
+    modified = false;
+  }
+
+  /**
+   * Writes the snapshot to a temporary file moved to the destination, so that a converter starting
+   * concurrently never reads a partial snapshot.
+   *
+   * @param file - destination of the snapshot
+   * @throws IOException - if the file cannot be written
+   */
+  public void write(Path file) throws IOException {
+    Preconditions.checkArgument(file != null, "file cannot be null");
+    Path folder = file.toAbsolutePath().getParent();
+    Files.createDirectories(folder);
+    Path temp =
+        folder.resolve(file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        write(out);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Returns the parsed template if the snapshot holds it for the same content.
+   *
+   * @param path - resource path of the template
+   * @param content - current YAML content of the template
+   * @return the parsed template, null if the template is not in the snapshot or was changed
+   */
+  public JsonNode getTree(String path, String content) {
+    Entry entry = entries.get(path);
+    if (entry == null || !Arrays.equals(entry.hash, hash(content))) {
+      return null;
+    }
+    try {
+      return ObjectMapperUtil.getJSONInstance().readTree(entry.tree);
+    } catch (IOException e) {
+      LOGGER.warn("Cannot read template from the snapshot, the YAML is parsed instead.");
+      LOGGER.debug("Cannot read template {} from the snapshot.", path, e);
+      return null;
+    }
+  }
+
+  /**
+   * Adds or replaces the parsed template.
+   *
+   * @param path - resource path of the template
+   * @param content - YAML content the tree was parsed from
+   * @param tree - parsed template
+   */
+  public void put(String path, String content, JsonNode tree) {
+    if (released) {
+      return;
+    }
+    try {
+      entries.put(path,
+          new Entry(hash(content), ObjectMapperUtil.getJSONInstance().writeValueAsBytes(tree)));
+      modified = true;
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Cannot encode template " + path, e);
+    }
+  }
+
+  /**
+   * Drops the templates of the snapshot, once they are loaded and the snapshot is written. The
+   * snapshot is empty afterwards and templates put into it are ignored.
+   */
+  public void release() {
+    released = true;
+    entries.clear();
+    modified = false;
+  }
+
+  /**
+   * @return true if templates were added or replaced since the snapshot was read or written
+   */
+  public boolean isModified() {
+    return modified;
+  }
+
+  Set<String> getPaths() {
+    return entries.keySet();
+  }
+
+  private static byte[] hash(String content) {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM)
+          .digest(content.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+    }
+  }
+
+  private static class Entry {
+    private final byte[] hash;
+    private final byte[] tree;
+
+    private Entry(byte[] hash, byte[] tree) {
+      this.hash = hash;
+      this.tree = tree;
+    }
+  }
+
+  /**
+   * Loads all the templates of the converter configuration from their YAML and writes the snapshot
+   * to the file given as argument. Run at build time for the snapshot bundled with the library.
+   *
+   * @param args - path of the snapshot file
+   * @throws IOException - if the snapshot cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    Preconditions.checkArgument(args.length == 1, "Expected the snapshot file as argument");
+    Path file = Paths.get(args[0]);
+    // the templates are parsed again, not read from a previous snapshot
+    Files.deleteIfExists(file);
+    ResourceReader reader = ResourceReader.getInstance();
+    reader.getMessageTemplates();
+    TerminologyLookup.init();
+    UrlLookup.init();
+    reader.getTemplateSnapshot().write(file);
+    LOGGER.info("Template snapshot written with {} templates.",
+        reader.getTemplateSnapshot().getPaths().size());
+  }
+
+}
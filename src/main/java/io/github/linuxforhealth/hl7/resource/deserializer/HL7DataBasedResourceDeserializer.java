@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.core.JsonParser;
@@ -32,7 +33,6 @@ public class HL7DataBasedResourceDeserializer extends JsonDeserializer<HL7DataBa
 
   private static final String RESOURCE_TYPE_FIELD_NAME = "resourceType";
   private static final String SPEC = "specs";
-  private static Map<String, Expression> commonExpressions;
 
   private static final ObjectMapper MAPPER = ObjectMapperUtil.getYAMLInstance();
   private static final Logger LOGGER = LoggerFactory.getLogger(HL7DataBasedResourceDeserializer.class);
@@ -40,18 +40,26 @@ public class HL7DataBasedResourceDeserializer extends JsonDeserializer<HL7DataBa
   // Reads the resource/Common.yml and generates expressions from it.
   private static synchronized Map<String, Expression> getCommonExpressions() throws JsonProcessingException {
 
-      if (commonExpressions == null) {
+      // the common expressions are generated once per resource reader, with its templates
+      CommonExpressions common = ResourceReader.getInstance()
+          .getComponent(CommonExpressions.class, reader -> new CommonExpressions());
+      if (common.expressions == null) {
 
         // generate the common expressions from the Common YAML file.
-        commonExpressions = new HashMap<>();
-        String path = ResourceReader.getInstance().getResource(Constants.HL7_BASE_PATH + Constants.COMMON_RESOURCE_PATH);
-        JsonNode node = ObjectMapperUtil.getYAMLInstance().readTree(path);
-        Map<String, Expression> expressions = generateExpressions(node);
+        common.expressions = new HashMap<>();
+        JsonNode node = ResourceReader.getInstance()
+            .getTemplateTree(Constants.HL7_BASE_PATH + Constants.COMMON_RESOURCE_PATH);
+        String commonPath = StringUtils.removeEnd(Constants.COMMON_RESOURCE_PATH, ".yml");
+        Map<String, Expression> expressions = generateExpressions(node, commonPath);
 
-        commonExpressions.putAll(expressions);
+        common.expressions.putAll(expressions);
       }
 
-    return commonExpressions;
+    return common.expressions;
+  }
+
+  private static class CommonExpressions {
+    private Map<String, Expression> expressions;
   }
 
   @Override
@@ -66,10 +74,11 @@ public class HL7DataBasedResourceDeserializer extends JsonDeserializer<HL7DataBa
     }
 
     // generate expressions from the resource YAML
-    Map<String, Expression> expressions = generateExpressions(node);
+    String path = String.valueOf(ctxt.findInjectableValue("resourceName", null, null));
+    Map<String, Expression> expressions = generateExpressions(node, path);
 
     JsonNode namenode = node.get(RESOURCE_TYPE_FIELD_NAME);
-    String name = String.valueOf(ctxt.findInjectableValue("resourceName", null, null));
+    String name = path;
 
     if (namenode != null) {
       name = namenode.textValue();
@@ -86,7 +95,7 @@ public class HL7DataBasedResourceDeserializer extends JsonDeserializer<HL7DataBa
     return new HL7DataBasedResourceModel(name, expressions, hl7Prefix);
   }
 
-  private static Map<String, Expression> generateExpressions(JsonNode node) {
+  private static Map<String, Expression> generateExpressions(JsonNode node, String templatePath) {
 
     Map<String, Expression> expressions = new HashMap<>();
     Iterator<Entry<String, JsonNode>> iter = node.fields();
@@ -101,6 +110,7 @@ public class HL7DataBasedResourceDeserializer extends JsonDeserializer<HL7DataBa
 
       if (expAttr != null && expAttr.getExpressionType() != null) {
         expAttr.setName(entry.getKey());
+        expAttr.setTemplatePath(templatePath);
 
         try {
           e = generateExpression(expAttr);
@@ -23,9 +23,9 @@ import io.github.linuxforhealth.core.Constants;
 import io.github.linuxforhealth.core.ObjectMapperUtil;
 import io.github.linuxforhealth.core.exception.DataExtractionException;
 import io.github.linuxforhealth.core.exception.RequiredConstraintFailureException;
+import io.github.linuxforhealth.core.metrics.MetricsScope;
 import io.github.linuxforhealth.core.expression.EmptyEvaluationResult;
 import io.github.linuxforhealth.core.expression.EvaluationResultFactory;
-import io.github.linuxforhealth.hl7.message.HL7MessageData;
 import io.github.linuxforhealth.hl7.resource.PendingExpressionState;
 import io.github.linuxforhealth.hl7.resource.ResourceEvaluationResult;
 
@@ -77,6 +77,7 @@ public class ExpressionUtility {
                     new PendingExpressionState(expressionsToEvaluateLater, context));
 
         } catch (RequiredConstraintFailureException e) {
+            MetricsScope.recordConstraintFailure();
             LOGGER.warn("Resource Constraint condition not satisfied.");
             LOGGER.debug("Resource Constraint condition not satisfied, exception", e);
             return null;
@@ -155,7 +156,7 @@ public class ExpressionUtility {
         }
     }
 
-    public static ResourceEvaluationResult evaluate(HL7MessageData dataSource,
+    public static ResourceEvaluationResult evaluate(InputDataExtractor dataSource,
             Map<String, EvaluationResult> context, Map<String, Expression> expressionMap) {
         try {
 
@@ -176,6 +177,7 @@ public class ExpressionUtility {
             return new ResourceEvaluationResult(resolveValues, additionalResolveValues);
 
         } catch (RequiredConstraintFailureException e) {
+            MetricsScope.recordConstraintFailure();
             LOGGER.warn("Resource Constraint condition not satisfied.");
             LOGGER.debug("Resource Constraint condition not satisfied, exception", e);
             return null;
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.jupiter.api.Test;
+import io.github.linuxforhealth.fhir.FHIRContext;
+import io.github.linuxforhealth.hl7.ConversionResult;
+import io.github.linuxforhealth.hl7.ConversionSession;
+import io.github.linuxforhealth.hl7.ConversionSessionPool;
+import io.github.linuxforhealth.hl7.ConverterOptions;
+import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
+
+public class ConcurrentConversionTest {
+
+  private static final String ADT_MESSAGE =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+          + "EVN||201209122222\r"
+          + "PID|0010||PID1234^5^M11^A^MR^HOSP~1234568965^^^USA^SS||DOE^JOHN^A^||19800202|F||W|111 TEST_STREET_NAME^^TEST_CITY^NY^111-1111^USA||(905)111-1111|||S|ZZ|12^^^124|34-13-312||||TEST_BIRTH_PLACE\r"
+          + "PV1|1|ff|yyy|EL|ABC||200^ATTEND_DOC_FAMILY_TEST^ATTEND_DOC_GIVEN_TEST|201^REFER_DOC_FAMILY_TEST^REFER_DOC_GIVEN_TEST|202^CONSULTING_DOC_FAMILY_TEST^CONSULTING_DOC_GIVEN_TEST|MED|||||B6|E|272^ADMITTING_DOC_FAMILY_TEST^ADMITTING_DOC_GIVEN_TEST||48390|||||||||||||||||||||||||201409122200|20150206031726\r"
+          + "AL1|1|DRUG|00000741^OXYCODONE||HYPOTENSION\r"
+          + "AL1|2|DRUG|00001433^TRAMADOL||SEIZURES~VOMITING\r";
+
+  @Test
+  public void test_concurrent_conversion_with_shared_converter() throws Exception {
+    ConverterOptions options = new ConverterOptions.Builder().withPrettyPrint().build();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try (HL7ToFHIRConverter ftv = new HL7ToFHIRConverter(4)) {
+      List<Future<String>> futures = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        futures.add(executor.submit(() -> ftv.convert(ADT_MESSAGE, options)));
+      }
+      FHIRContext context = new FHIRContext();
+      for (Future<String> f : futures) {
+        String json = f.get();
+        assertThat(json).isNotBlank();
+        Bundle b = (Bundle) context.getParser().parseResource(json);
+        assertThat(b.getEntry().stream()
+            .filter(e -> e.getResource().getResourceType() == ResourceType.AllergyIntolerance))
+                .hasSize(2);
+        assertThat(b.getEntry().stream()
+            .filter(e -> e.getResource().getResourceType() == ResourceType.Patient)).hasSize(1);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void test_convert_all_keeps_input_order_and_reports_failures() {
+    List<String> messages = IntStream.range(0, 12)
+        .mapToObj(i -> i == 5 ? "not a hl7 message" : ADT_MESSAGE.replace("|102|", "|" + i + "|"))
+        .collect(Collectors.toList());
+    try (HL7ToFHIRConverter ftv = new HL7ToFHIRConverter(4)) {
+      List<ConversionResult> results = ftv.convertAll(messages.stream(),
+          ConverterOptions.SIMPLE_OPTIONS, 3);
+      assertThat(results).hasSize(12);
+      FHIRContext context = new FHIRContext();
+      for (int i = 0; i < results.size(); i++) {
+        ConversionResult result = results.get(i);
+        assertThat(result.getIndex()).isEqualTo(i);
+        if (i == 5) {
+          assertThat(result.isSuccess()).isFalse();
+          assertThat(result.getError()).isInstanceOf(IllegalArgumentException.class);
+        } else {
+          assertThat(result.isSuccess()).isTrue();
+          Bundle b = (Bundle) context.getParser().parseResource(result.getOutput());
+          assertThat(b.getEntry()).isNotEmpty();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void test_convert_stream_of_batch_file() {
+    String batch = "FHS|^~\\&|SE050|050|PACS|050|20120912011230\n"
+        + "BHS|^~\\&|SE050|050|PACS|050|20120912011230\n"
+        + ADT_MESSAGE.replace('\r', '\n')
+        + ADT_MESSAGE.replace("|102|", "|103|").replace('\r', '\n')
+        + "BTS|2\n"
+        + "FTS|1\n";
+    InputStream input = new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8));
+    try (HL7ToFHIRConverter ftv = new HL7ToFHIRConverter(1);
+        Stream<ConversionResult> results =
+            ftv.convertStream(input, ConverterOptions.SIMPLE_OPTIONS)) {
+      List<ConversionResult> list = results.collect(Collectors.toList());
+      assertThat(list).hasSize(2);
+      FHIRContext context = new FHIRContext();
+      for (int i = 0; i < list.size(); i++) {
+        assertThat(list.get(i).getIndex()).isEqualTo(i);
+        assertThat(list.get(i).isSuccess()).isTrue();
+        Bundle b = (Bundle) context.getParser().parseResource(list.get(i).getOutput());
+        assertThat(b.getEntry().stream()
+            .filter(e -> e.getResource().getResourceType() == ResourceType.AllergyIntolerance))
+                .hasSize(2);
+      }
+    }
+  }
+
+  @Test
+  public void test_convert_stream_decoded_with_msh18_charset() {
+    String latin1 = ADT_MESSAGE.replace("|ASCII|", "|8859/1|")
+        .replace("DOE^JOHN", "M\u00dcLLER^J\u00d6RG");
+    String batch = "FHS|^~\\&|SE050|050|PACS|050|20120912011230\n"
+        + "BHS|^~\\&|SE050|050|PACS|050|20120912011230\n"
+        + latin1.replace('\r', '\n')
+        + "BTS|1\n"
+        + "FTS|1\n";
+    InputStream input = new ByteArrayInputStream(batch.getBytes(StandardCharsets.ISO_8859_1));
+    try (HL7ToFHIRConverter ftv = new HL7ToFHIRConverter(1);
+        Stream<ConversionResult> results =
+            ftv.convertStream(input, ConverterOptions.SIMPLE_OPTIONS)) {
+      List<ConversionResult> list = results.collect(Collectors.toList());
+      assertThat(list).hasSize(1);
+      assertThat(list.get(0).isSuccess()).isTrue();
+      assertThat(list.get(0).getOutput()).contains("M\u00dcLLER", "J\u00d6RG");
+    }
+  }
+
+  @Test
+  public void test_closed_converter_rejects_conversion() {
+    HL7ToFHIRConverter ftv = new HL7ToFHIRConverter(1);
+    assertThat(ftv.convert(ADT_MESSAGE)).isNotBlank();
+    ftv.close();
+    assertThrows(IllegalStateException.class, () -> ftv.convert(ADT_MESSAGE));
+  }
+
+  @Test
+  public void test_session_pool_reuses_sessions() {
+    try (ConversionSessionPool pool = new ConversionSessionPool(2)) {
+      ConversionSession first = pool.borrow();
+      pool.release(first);
+      ConversionSession second = pool.borrow();
+      assertThat(second).isSameAs(first);
+      assertThat(second.getEngine(ConverterOptions.SIMPLE_OPTIONS))
+          .isSameAs(second.getEngine(ConverterOptions.SIMPLE_OPTIONS));
+      pool.release(second);
+    }
+  }
+
+}
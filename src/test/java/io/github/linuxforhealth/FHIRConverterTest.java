@@ -7,11 +7,15 @@ package io.github.linuxforhealth;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -31,6 +35,7 @@ import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +43,7 @@ import ca.uhn.hl7v2.model.Message;
 import ca.uhn.hl7v2.util.Hl7InputStreamMessageStringIterator;
 import io.github.linuxforhealth.core.Constants;
 import io.github.linuxforhealth.fhir.FHIRContext;
+import io.github.linuxforhealth.fhir.NDJSONResourceWriter;
 import io.github.linuxforhealth.hl7.ConverterOptions;
 import io.github.linuxforhealth.hl7.ConverterOptions.Builder;
 import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
@@ -152,6 +158,118 @@ public class FHIRConverterTest {
         assertThat(unit).isEqualTo("mL");
     }
 
+    @Test
+    public void test_convert_to_bundle_and_resources() {
+        String hl7message = "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+                + "EVN||201209122222\r"
+                + "PID|0010||PID1234^5^M11^A^MR^HOSP~1234568965^^^USA^SS||DOE^JOHN^A^||19800202|F||W|111 TEST_STREET_NAME^^TEST_CITY^NY^111-1111^USA||(905)111-1111|||S|ZZ|12^^^124|34-13-312||||TEST_BIRTH_PLACE\r"
+                + "AL1|1|DRUG|00000741^OXYCODONE||HYPOTENSION\r" + "AL1|2|DRUG|00001433^TRAMADOL||SEIZURES~VOMITING\r";
+
+        HL7ToFHIRConverter ftv = new HL7ToFHIRConverter();
+        Bundle b = ftv.convertToBundle(hl7message, ConverterOptions.SIMPLE_OPTIONS);
+        assertThat(b.getType()).isEqualTo(Constants.DEFAULT_BUNDLE_TYPE);
+        assertThat(b.getEntry().stream()
+                .filter(v -> ResourceType.AllergyIntolerance == v.getResource().getResourceType()))
+                        .hasSize(2);
+
+        List<Resource> resources = ftv.convertToResources(hl7message, ConverterOptions.SIMPLE_OPTIONS);
+        assertThat(resources).hasSameSizeAs(b.getEntry());
+        assertThat(resources.stream().filter(r -> ResourceType.Patient == r.getResourceType())).hasSize(1);
+    }
+
+    @Test
+    public void test_convert_to_output_stream() {
+        String hl7message = "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+                + "EVN||201209122222\r"
+                + "PID|0010||PID1234^5^M11^A^MR^HOSP~1234568965^^^USA^SS||DOE^JOHN^A^||19800202|F||W|111 TEST_STREET_NAME^^TEST_CITY^NY^111-1111^USA||(905)111-1111|||S|ZZ|12^^^124|34-13-312||||TEST_BIRTH_PLACE\r"
+                + "AL1|1|DRUG|00000741^OXYCODONE||HYPOTENSION\r";
+
+        HL7ToFHIRConverter ftv = new HL7ToFHIRConverter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(ftv.convert(hl7message, ConverterOptions.SIMPLE_OPTIONS, out)).isTrue();
+
+        FHIRContext context = new FHIRContext();
+        Bundle b = (Bundle) context.getParser()
+                .parseResource(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertThat(b.getEntry().stream()
+                .filter(v -> ResourceType.AllergyIntolerance == v.getResource().getResourceType()))
+                        .hasSize(1);
+    }
+
+    @Test
+    public void test_direct_json_same_as_hapi_encoding() {
+        String hl7message = "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+                + "EVN||201209122222\r"
+                + "PID|0010||PID1234^5^M11^A^MR^HOSP~1234568965^^^USA^SS||DOE^JOHN^A^||19800202|F||W|111 TEST_STREET_NAME^^TEST_CITY^NY^111-1111^USA||(905)111-1111|||S|ZZ|12^^^124|34-13-312||||TEST_BIRTH_PLACE\r"
+                + "AL1|1|DRUG|00000741^OXYCODONE||HYPOTENSION\r";
+
+        HL7ToFHIRConverter ftv = new HL7ToFHIRConverter();
+        String direct = ftv.convert(hl7message,
+                new Builder().withBundleType(BundleType.COLLECTION).withPrettyPrint().build());
+        String hapi = ftv.convert(hl7message, new Builder().withBundleType(BundleType.COLLECTION)
+                .withPrettyPrint().withHapiJsonEncoding().build());
+
+        FHIRContext context = new FHIRContext();
+        Bundle directBundle = (Bundle) context.getParser().parseResource(direct);
+        Bundle hapiBundle = (Bundle) context.getParser().parseResource(hapi);
+        assertThat(directBundle.getEntry()).hasSameSizeAs(hapiBundle.getEntry()).isNotEmpty();
+        for (int i = 0; i < directBundle.getEntry().size(); i++) {
+            assertThat(directBundle.getEntry().get(i).getResource().getResourceType())
+                    .isEqualTo(hapiBundle.getEntry().get(i).getResource().getResourceType());
+        }
+        // re-encoding with HAPI gives back the directly written JSON
+        assertThat(new FHIRContext(true, false).encodeResourceToString(directBundle))
+                .isEqualTo(direct);
+    }
+
+    @Test
+    public void test_convert_to_ndjson(@TempDir Path folder) throws IOException {
+        String hl7message = "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+                + "EVN||201209122222\r"
+                + "PID|0010||PID1234^5^M11^A^MR^HOSP~1234568965^^^USA^SS||DOE^JOHN^A^||19800202|F||W|111 TEST_STREET_NAME^^TEST_CITY^NY^111-1111^USA||(905)111-1111|||S|ZZ|12^^^124|34-13-312||||TEST_BIRTH_PLACE\r"
+                + "AL1|1|DRUG|00000741^OXYCODONE||HYPOTENSION\r";
+
+        HL7ToFHIRConverter ftv = new HL7ToFHIRConverter();
+        try (NDJSONResourceWriter ndjson = new NDJSONResourceWriter(folder)) {
+            assertThat(ftv.convert(hl7message, ConverterOptions.SIMPLE_OPTIONS, ndjson)).isTrue();
+            assertThat(ftv.convert(hl7message, new Builder().withPrettyPrint().build(), ndjson))
+                    .isTrue();
+        }
+
+        FHIRContext context = new FHIRContext();
+        List<String> allergies = Files.readAllLines(folder.resolve("AllergyIntolerance.ndjson"),
+                StandardCharsets.UTF_8);
+        assertThat(allergies).hasSize(2);
+        for (String line : allergies) {
+            assertThat(context.getParser().parseResource(line).fhirType())
+                    .isEqualTo("AllergyIntolerance");
+        }
+        assertThat(Files.readAllLines(folder.resolve("Patient.ndjson"), StandardCharsets.UTF_8))
+                .hasSize(2);
+    }
+
+    @Test
+    public void test_convert_bytes_decoded_with_msh18_charset(@TempDir Path folder)
+            throws IOException {
+        String hl7message = "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|8859/1||||||\r"
+                + "EVN||201209122222\r"
+                + "PID|0010||PID1234^5^M11^A^MR^HOSP||M\u00dcLLER^J\u00d6RG^A^||19800202|M\r";
+        byte[] latin1 = hl7message.getBytes(StandardCharsets.ISO_8859_1);
+
+        HL7ToFHIRConverter ftv = new HL7ToFHIRConverter();
+        assertThat(ftv.convert(latin1, ConverterOptions.SIMPLE_OPTIONS))
+                .contains("M\u00dcLLER", "J\u00d6RG");
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(latin1.length);
+        direct.put(latin1).flip();
+        assertThat(ftv.convert(direct, ConverterOptions.SIMPLE_OPTIONS)).contains("M\u00dcLLER");
+        assertThat(direct.position()).isZero();
+
+        File file = folder.resolve("latin1.hl7").toFile();
+        Files.write(file.toPath(), latin1);
+        assertThat(ftv.convert(file)).contains("M\u00dcLLER");
+    }
+
     @Test
     public void test_invalid_message_throws_error() throws IOException {
         String hl7message = "some text";
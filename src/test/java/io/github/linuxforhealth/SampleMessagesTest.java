@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Stream;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import com.google.common.io.Files;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+import io.github.linuxforhealth.fhir.FHIRContext;
+import io.github.linuxforhealth.hl7.ConverterOptions;
+import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
+
+/**
+ * The messages in src/test/resources/messages, one per supported message type, are also converted
+ * by the benchmarks, with and without resource validation.
+ */
+public class SampleMessagesTest {
+
+  private static final String FALLBACK_BASE = "Fallback_Base";
+  private static HL7ToFHIRConverter converter;
+
+  @BeforeAll
+  public static void setUp() {
+    converter = new HL7ToFHIRConverter(1);
+  }
+
+  @AfterAll
+  public static void tearDown() {
+    converter.close();
+  }
+
+  static Stream<String> supportedMessageTypes() {
+    List<String> templates = ConverterConfiguration.getInstance().getSupportedMessageTemplates();
+    return templates.stream().map(Files::getNameWithoutExtension)
+        .filter(type -> !FALLBACK_BASE.equals(type));
+  }
+
+  @ParameterizedTest
+  @MethodSource("supportedMessageTypes")
+  public void sample_message_is_converted(String messageType) throws IOException {
+    String message = readSample(messageType);
+    assertThat(message).contains("|" + messageType.replace('_', '^'));
+
+    Bundle bundle =
+        (Bundle) new FHIRContext().getParser().parseResource(converter.convert(message));
+    assertThat(bundle.getEntry().stream()
+        .filter(e -> e.getResource().getResourceType() == ResourceType.Patient)).isNotEmpty();
+  }
+
+  @ParameterizedTest
+  @MethodSource("supportedMessageTypes")
+  public void sample_message_is_valid(String messageType) throws IOException {
+    ConverterOptions options = new ConverterOptions.Builder().withValidateResource().build();
+    // the conversion returns null when the bundle has validation errors
+    assertThat(converter.convert(readSample(messageType), options))
+        .as("validated conversion of " + messageType).isNotNull();
+  }
+
+  private static String readSample(String messageType) throws IOException {
+    try (InputStream in = SampleMessagesTest.class.getClassLoader()
+        .getResourceAsStream("messages/" + messageType + ".hl7")) {
+      assertThat(in).as("sample message of " + messageType).isNotNull();
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.core.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import io.github.linuxforhealth.api.ConversionMetrics;
+import io.github.linuxforhealth.api.ConversionStage;
+import io.github.linuxforhealth.hl7.ConverterOptions;
+import io.github.linuxforhealth.hl7.ConverterOptions.Builder;
+import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
+
+public class HistogramConversionMetricsTest {
+
+  private static final String ADT_MESSAGE =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+          + "EVN||201209122222\r"
+          + "PID|0010||PID1234^5^M11^A^MR^HOSP||DOE^JOHN^A^||19800202|F\r"
+          + "PV1|1|I|||||||||||||||||1400|||||||||||||||||||||||||\r";
+
+  @Test
+  public void conversion_stages_are_recorded_by_message_type() throws Exception {
+    HistogramConversionMetrics metrics = new HistogramConversionMetrics();
+    try (HL7ToFHIRConverter converter = new HL7ToFHIRConverter(1, null, metrics)) {
+      converter.convert(ADT_MESSAGE);
+      converter.convert(ADT_MESSAGE);
+    }
+    for (ConversionStage stage : new ConversionStage[] {ConversionStage.PARSE,
+        ConversionStage.SEGMENT_EXTRACTION, ConversionStage.RESOURCE_EVALUATION,
+        ConversionStage.BUNDLE_ASSEMBLY, ConversionStage.ENCODING}) {
+      LatencyHistogram latency = metrics.getLatency(stage, "ADT_A01");
+      assertThat(latency).as(stage.name()).isNotNull();
+      assertThat(latency.getCount()).as(stage.name()).isEqualTo(2);
+      assertThat(latency.getMax()).as(stage.name()).isPositive();
+    }
+    assertThat(metrics.getLatency(ConversionStage.VALIDATION, "ADT_A01")).isNull();
+    assertThat(metrics.getFailures()).isEmpty();
+    assertThat(metrics.report()).contains("RESOURCE_EVALUATION", "ADT_A01");
+  }
+
+  @Test
+  public void validation_is_recorded_when_enabled() throws Exception {
+    HistogramConversionMetrics metrics = new HistogramConversionMetrics();
+    ConverterOptions options = new Builder().withValidateResource().build();
+    try (HL7ToFHIRConverter converter = new HL7ToFHIRConverter(1, null, metrics)) {
+      converter.convert(ADT_MESSAGE, options);
+    }
+    assertThat(metrics.getLatency(ConversionStage.VALIDATION, "ADT_A01").getCount())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void unparsable_message_is_counted_as_failure() throws Exception {
+    HistogramConversionMetrics metrics = new HistogramConversionMetrics();
+    try (HL7ToFHIRConverter converter = new HL7ToFHIRConverter(1, null, metrics)) {
+      assertThrows(IllegalArgumentException.class, () -> converter.convert("not a message"));
+    }
+    assertThat(metrics.getFailures())
+        .containsOnlyKeys(ConversionMetrics.UNKNOWN_MESSAGE_TYPE)
+        .containsEntry(ConversionMetrics.UNKNOWN_MESSAGE_TYPE, 1L);
+  }
+
+  @Test
+  public void unparsable_message_is_counted_under_the_type_of_its_header() throws Exception {
+    HistogramConversionMetrics metrics = new HistogramConversionMetrics();
+    // the version is not known to HAPI, the message cannot be parsed
+    String message = ADT_MESSAGE.replace("|2.6|", "|9.9|");
+    try (HL7ToFHIRConverter converter = new HL7ToFHIRConverter(1, null, metrics)) {
+      assertThrows(IllegalArgumentException.class, () -> converter.convert(message));
+    }
+    assertThat(metrics.getFailures()).containsOnlyKeys("ADT_A01").containsEntry("ADT_A01", 1L);
+  }
+
+  @Test
+  public void counters_are_recorded_for_the_current_resource_template() {
+    HistogramConversionMetrics metrics = new HistogramConversionMetrics();
+    MetricsScope.recordConstraintFailure();
+    try (MetricsScope scope = MetricsScope.open(metrics, "ORU_R01")) {
+      MetricsScope.setResourceTemplate("Observation");
+      MetricsScope.recordConstraintFailure();
+      MetricsScope.recordSkippedResource();
+      scope.addLatency(ConversionStage.PARSE, 1000);
+      scope.addLatency(ConversionStage.PARSE, 2000);
+    }
+    MetricsScope.recordSkippedResource();
+
+    assertThat(metrics.getConstraintFailures()).containsOnlyKeys("Observation")
+        .containsEntry("Observation", 1L);
+    assertThat(metrics.getSkippedResources()).containsOnlyKeys("Observation");
+    // the time spent in a stage is reported once per message
+    assertThat(metrics.getLatency(ConversionStage.PARSE, "ORU_R01").getCount()).isEqualTo(1);
+    assertThat(metrics.getLatency(ConversionStage.PARSE, "ORU_R01").getMax()).isEqualTo(3000);
+  }
+
+}
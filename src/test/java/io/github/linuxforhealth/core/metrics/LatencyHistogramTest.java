@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.core.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void percentiles_are_within_bucket_precision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 1000; value++) {
+      histogram.record(value * 1000);
+    }
+    assertThat(histogram.getCount()).isEqualTo(1000);
+    assertThat(histogram.getMax()).isEqualTo(1000000);
+    assertThat(histogram.getMean()).isCloseTo(500500, within(0.001));
+    assertThat(histogram.getValueAtPercentile(50)).isBetween(500000L, 500000L + 500000 / 16);
+    assertThat(histogram.getValueAtPercentile(99)).isBetween(990000L, 990000L + 990000 / 16);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1000000);
+  }
+
+  @Test
+  public void buckets_cover_all_values() {
+    for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, (1L << 40) - 1}) {
+      int index = LatencyHistogram.indexOf(value);
+      assertThat(LatencyHistogram.upperBoundOf(index)).as("value %d", value)
+          .isGreaterThanOrEqualTo(value);
+      if (index > 0) {
+        assertThat(LatencyHistogram.upperBoundOf(index - 1)).as("value %d", value)
+            .isLessThan(value);
+      }
+    }
+  }
+
+  @Test
+  public void empty_histogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertThat(histogram.getValueAtPercentile(99)).isZero();
+    assertThat(histogram.getMean()).isZero();
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.core.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import io.github.linuxforhealth.core.metrics.TemplateProfiler.ExpressionProfile;
+import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
+
+public class TemplateProfilerTest {
+
+  private static final String ADT_MESSAGE =
+      "MSH|^~\\&|hl7Integration|hl7Integration|||||ADT^A01|||2.6|\r"
+          + "EVN|A01|20130617154644\r"
+          + "PID|1|465 306 5961|000010016^^^MR|407623|Wood^Patrick^^Sr^MR||19700101|female\r"
+          + "PV1|1|TEXT|Location||||||||||||||||261938_6_201306171546\r"
+          + "OBX|1|NM|0135-4^TotalProtein||7.3|gm/dl|5.9-8.4|||R|F\r";
+
+  @BeforeEach
+  public void setUp() {
+    TemplateProfiler.reset();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    TemplateProfiler.setEnabled(false);
+    TemplateProfiler.reset();
+  }
+
+  @Test
+  public void expressions_are_profiled_by_template_and_name() throws Exception {
+    TemplateProfiler.setEnabled(true);
+    try (HL7ToFHIRConverter converter = new HL7ToFHIRConverter(1)) {
+      converter.convert(ADT_MESSAGE);
+      converter.convert(ADT_MESSAGE);
+    }
+    List<ExpressionProfile> profiles = TemplateProfiler.getProfiles();
+    assertThat(profiles).isNotEmpty();
+    for (int i = 1; i < profiles.size(); i++) {
+      assertThat(profiles.get(i).getSelfNanos())
+          .isLessThanOrEqualTo(profiles.get(i - 1).getSelfNanos());
+    }
+
+    ExpressionProfile code = find(profiles, "resource/Observation", "code").get();
+    assertThat(code.getCount()).isEqualTo(2);
+    assertThat(code.getTotalNanos()).isGreaterThanOrEqualTo(code.getSelfNanos());
+    assertThat(code.getSelfNanos()).isPositive();
+    // expressions of the common template are reported once for all the resources
+    assertThat(find(profiles, "resource/Common", "meta")).isPresent();
+    assertThat(TemplateProfiler.report(5).split("\n")).hasSize(6);
+  }
+
+  @Test
+  public void nothing_is_recorded_when_disabled() throws Exception {
+    try (HL7ToFHIRConverter converter = new HL7ToFHIRConverter(1)) {
+      converter.convert(ADT_MESSAGE);
+    }
+    assertThat(TemplateProfiler.getProfiles()).isEmpty();
+  }
+
+  @Test
+  public void nested_evaluations_are_excluded_from_self_time() throws Exception {
+    TemplateProfiler.setEnabled(true);
+    int outer = TemplateProfiler.enter();
+    Thread.sleep(20);
+    int inner = TemplateProfiler.enter();
+    Thread.sleep(50);
+    TemplateProfiler.exit(inner, "resource/Test", "inner");
+    TemplateProfiler.exit(outer, "resource/Test", "outer");
+
+    ExpressionProfile outerProfile =
+        find(TemplateProfiler.getProfiles(), "resource/Test", "outer").get();
+    ExpressionProfile innerProfile =
+        find(TemplateProfiler.getProfiles(), "resource/Test", "inner").get();
+    assertThat(outerProfile.getTotalNanos()).isGreaterThanOrEqualTo(70_000_000L);
+    assertThat(outerProfile.getSelfNanos())
+        .isEqualTo(outerProfile.getTotalNanos() - innerProfile.getTotalNanos());
+    assertThat(innerProfile.getSelfNanos()).isEqualTo(innerProfile.getTotalNanos());
+  }
+
+  private static Optional<ExpressionProfile> find(List<ExpressionProfile> profiles,
+      String templatePath, String expressionName) {
+    return profiles.stream().filter(p -> p.getTemplatePath().equals(templatePath)
+        && p.getExpressionName().equals(expressionName)).findFirst();
+  }
+
+}
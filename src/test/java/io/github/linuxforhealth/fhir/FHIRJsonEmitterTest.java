@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.fhir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.jupiter.api.Test;
+import com.google.common.collect.ImmutableMap;
+import io.github.linuxforhealth.core.terminology.SimpleCode;
+import io.github.linuxforhealth.fhir.FHIRJsonEmitter.PreparedResource;
+
+public class FHIRJsonEmitterTest {
+
+  private static final FHIRContext CONTEXT = new FHIRContext();
+
+  @Test
+  public void writes_bundle_like_the_hapi_encoder() throws IOException {
+    Map<String, Object> patient = new HashMap<>();
+    patient.put("resourceType", "Patient");
+    patient.put("id", UUID.randomUUID());
+    patient.put("active", true);
+    patient.put("multipleBirthInteger", 2);
+    patient.put("gender", "");
+    patient.put("name", Arrays.asList(ImmutableMap.of("given", Arrays.asList("John", "A"),
+        "family", "Doe")));
+    patient.put("extension", Arrays.asList(
+        ImmutableMap.of("valueString", "v", "url", "http://example.org/a", "extension",
+            Arrays.asList(ImmutableMap.of("valueBoolean", false, "url", "http://example.org/b"))),
+        ImmutableMap.of("url", "http://example.org/empty")));
+
+    Map<String, Object> observation = new HashMap<>();
+    observation.put("resourceType", "Observation");
+    observation.put("status", "final");
+    observation.put("code", ImmutableMap.of("coding",
+        Arrays.asList(new SimpleCode("1234-5", "http://loinc.org", "Test"))));
+    observation.put("valueQuantity",
+        ImmutableMap.of("value", new BigDecimal("1.50"), "unit", "mg"));
+    observation.put("issued", "2021-01-01T10:15:00+01:00");
+    observation.put("note", Arrays.asList(null, ImmutableMap.of("text", "a note")));
+
+    FHIRJsonEmitter emitter = CONTEXT.getJsonEmitter();
+    PreparedResource preparedPatient = emitter.prepare(Patient.class, patient);
+    PreparedResource preparedObservation = emitter.prepare(Observation.class, observation);
+    assertThat(preparedPatient.getFullUrl()).isEqualTo("Patient/" + patient.get("id"));
+    assertThat(preparedObservation.getFullUrl()).isNull();
+
+    Bundle bundle = new Bundle();
+    bundle.setId(UUID.randomUUID().toString());
+    bundle.setType(BundleType.COLLECTION);
+    bundle.getMeta().setLastUpdated(new Date());
+    Bundle expected = bundle.copy();
+    addEntry(expected, CONTEXT.getResourceBinder().bind(Patient.class, patient));
+    addEntry(expected, CONTEXT.getResourceBinder().bind(Observation.class, observation));
+
+    for (boolean prettyPrint : new boolean[] {true, false}) {
+      StringWriter writer = new StringWriter();
+      emitter.writeBundle(bundle, Arrays.asList(preparedPatient, preparedObservation), writer,
+          prettyPrint);
+      assertThat(writer.toString()).isEqualTo(CONTEXT.getCtx().newJsonParser()
+          .setPrettyPrint(prettyPrint).encodeResourceToString(expected));
+    }
+  }
+
+  @Test
+  public void empty_bundle_has_no_entry() throws IOException {
+    Bundle bundle = new Bundle();
+    bundle.setId(UUID.randomUUID().toString());
+    bundle.setType(BundleType.COLLECTION);
+    bundle.getMeta().setLastUpdated(new Date());
+
+    StringWriter writer = new StringWriter();
+    CONTEXT.getJsonEmitter().writeBundle(bundle, Collections.emptyList(), writer, false);
+
+    assertThat(writer.toString())
+        .isEqualTo(CONTEXT.getParser().encodeResourceToString(bundle))
+        .doesNotContain("entry");
+  }
+
+  @Test
+  public void unsupported_values_are_left_to_the_hapi_encoder() {
+    FHIRJsonEmitter emitter = CONTEXT.getJsonEmitter();
+    // missing resourceType
+    assertThat(emitter.prepare(Patient.class, ImmutableMap.of("gender", "male"))).isNull();
+    // unknown element
+    assertThat(emitter.prepare(Patient.class,
+        ImmutableMap.of("resourceType", "Patient", "unknown", "x"))).isNull();
+    // invalid code
+    assertThat(emitter.prepare(Patient.class,
+        ImmutableMap.of("resourceType", "Patient", "gender", "bogus"))).isNull();
+    // two types of the same choice element
+    assertThat(emitter.prepare(Patient.class, ImmutableMap.of("resourceType", "Patient",
+        "deceasedBoolean", true, "deceasedDateTime", "2020-01-01"))).isNull();
+    // modifier extension
+    assertThat(emitter.prepare(Patient.class, ImmutableMap.of("resourceType", "Patient",
+        "modifierExtension",
+        Arrays.asList(ImmutableMap.of("url", "http://example.org/m", "valueString", "v")))))
+            .isNull();
+    // narrative
+    assertThat(emitter.prepare(Patient.class, ImmutableMap.of("resourceType", "Patient", "text",
+        ImmutableMap.of("status", "generated", "div", "<div>x</div>")))).isNull();
+  }
+
+  private static void addEntry(Bundle bundle, Resource resource) {
+    bundle.addEntry().setResource(resource).setFullUrl(resource.getId());
+  }
+
+}
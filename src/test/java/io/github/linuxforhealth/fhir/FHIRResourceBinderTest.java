@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.fhir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.collect.ImmutableMap;
+import ca.uhn.fhir.parser.IParser;
+import io.github.linuxforhealth.core.ObjectMapperUtil;
+import io.github.linuxforhealth.core.terminology.SimpleCode;
+
+public class FHIRResourceBinderTest {
+
+  private static final FHIRContext CONTEXT = new FHIRContext();
+
+  @Test
+  public void binds_resource_like_the_json_parser() throws JsonProcessingException {
+    Map<String, Object> values = new HashMap<>();
+    values.put("resourceType", "Observation");
+    values.put("id", UUID.randomUUID());
+    values.put("status", "final");
+    values.put("code", Arrays.asList(ImmutableMap.of("coding",
+        Arrays.asList(new SimpleCode("1234-5", "http://loinc.org", "Test")), "text", "Test")));
+    values.put("valueQuantity", ImmutableMap.of("value", 7.25, "unit", "mg"));
+    values.put("issued", "2021-01-01T10:15:00+01:00");
+    Map<String, Object> note = new HashMap<>();
+    note.put("text", "a note");
+    note.put("authorString", null);
+    values.put("note", note);
+    values.put("meta", ImmutableMap.of("extension",
+        Arrays.asList(ImmutableMap.of("url", "http://example.org/ext", "valueString", "v"))));
+    values.put("interpretation", Arrays.asList(null, ImmutableMap.of("text", "high")));
+
+    Observation bound = CONTEXT.getResourceBinder().bind(Observation.class, values);
+
+    Observation parsed = parse(Observation.class, values);
+    assertThat(bound).isNotNull();
+    assertThat(bound.getId()).isEqualTo(parsed.getId()).startsWith("Observation/");
+    IParser parser = CONTEXT.getParser();
+    assertThat(parser.encodeResourceToString(bound))
+        .isEqualTo(parser.encodeResourceToString(parsed));
+  }
+
+  @Test
+  public void empty_values_are_dropped() throws JsonProcessingException {
+    Map<String, Object> values = new HashMap<>();
+    values.put("resourceType", "Patient");
+    values.put("gender", "");
+    values.put("address", Arrays.asList(ImmutableMap.of("use", "", "city", "Toronto")));
+
+    Patient bound = CONTEXT.getResourceBinder().bind(Patient.class, values);
+
+    assertThat(bound.hasGender()).isFalse();
+    assertThat(CONTEXT.getParser().encodeResourceToString(bound))
+        .isEqualTo(CONTEXT.getParser().encodeResourceToString(parse(Patient.class, values)));
+  }
+
+  @Test
+  public void unsupported_values_are_left_to_the_json_parser() {
+    FHIRResourceBinder binder = CONTEXT.getResourceBinder();
+    // missing resourceType
+    assertThat(binder.bind(Patient.class, ImmutableMap.of("gender", "male"))).isNull();
+    // unknown element
+    assertThat(binder.bind(Patient.class,
+        ImmutableMap.of("resourceType", "Patient", "unknown", "x"))).isNull();
+    // invalid code
+    assertThat(binder.bind(Patient.class,
+        ImmutableMap.of("resourceType", "Patient", "gender", "bogus"))).isNull();
+    // repetitions of a non repeatable element
+    assertThat(binder.bind(Patient.class, ImmutableMap.of("resourceType", "Patient", "birthDate",
+        Arrays.asList("2001-01-01", "2002-01-01")))).isNull();
+    // narrative
+    assertThat(binder.bind(Patient.class, ImmutableMap.of("resourceType", "Patient", "text",
+        ImmutableMap.of("status", "generated", "div", "<div>x</div>")))).isNull();
+  }
+
+  private static <T extends Resource> T parse(Class<T> type, Map<String, Object> values)
+      throws JsonProcessingException {
+    String json = ObjectMapperUtil.getJSONInstance().writeValueAsString(values);
+    return CONTEXT.getParser().parseResource(type, json);
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.fhir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.google.common.collect.ImmutableMap;
+
+public class NDJSONResourceWriterTest {
+
+  @TempDir
+  Path folder;
+
+  @Test
+  public void writes_one_file_per_resource_type() throws IOException {
+    // small buffer so that the resources are written in several group commits
+    try (NDJSONResourceWriter writer = new NDJSONResourceWriter(folder, 32)) {
+      writer.write(ImmutableMap.of("Patient", Arrays.asList("{\"resourceType\":\"Patient\"}"),
+          "Observation", Arrays.asList("{\"resourceType\":\"Observation\",\"status\":\"final\"}",
+              "{\"resourceType\":\"Observation\"}")));
+      writer.write(ImmutableMap.of("Patient", Arrays.asList("{\"resourceType\":\"Patient\",\"gender\":\"female\"}"),
+          "Encounter", Collections.emptyList()));
+      writer.flush();
+
+      assertThat(Files.readAllLines(folder.resolve("Patient.ndjson"), StandardCharsets.UTF_8))
+          .containsExactly("{\"resourceType\":\"Patient\"}",
+              "{\"resourceType\":\"Patient\",\"gender\":\"female\"}");
+      assertThat(Files.readAllLines(folder.resolve("Observation.ndjson"), StandardCharsets.UTF_8))
+          .containsExactly("{\"resourceType\":\"Observation\",\"status\":\"final\"}",
+              "{\"resourceType\":\"Observation\"}");
+      assertThat(folder.resolve("Encounter.ndjson")).doesNotExist();
+    }
+  }
+
+  @Test
+  public void buffered_resources_are_written_on_close() throws IOException {
+    NDJSONResourceWriter writer = new NDJSONResourceWriter(folder);
+    writer.write(ImmutableMap.of("Patient", Arrays.asList("{\"resourceType\":\"Patient\"}")));
+    assertThat(folder.resolve("Patient.ndjson")).hasContent("");
+
+    writer.close();
+
+    assertThat(folder.resolve("Patient.ndjson")).hasContent("{\"resourceType\":\"Patient\"}");
+    assertThrows(IllegalStateException.class, () -> writer
+        .write(ImmutableMap.of("Patient", Arrays.asList("{\"resourceType\":\"Patient\"}"))));
+  }
+
+  @Test
+  public void invalid_resource_type_is_rejected() {
+    try (NDJSONResourceWriter writer = new NDJSONResourceWriter(folder)) {
+      assertThrows(IllegalArgumentException.class, () -> writer
+          .write(ImmutableMap.of("../Patient", Arrays.asList("{\"resourceType\":\"Patient\"}"))));
+    }
+  }
+
+}
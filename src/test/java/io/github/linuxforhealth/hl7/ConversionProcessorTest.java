@@ -0,0 +1,226 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class ConversionProcessorTest {
+
+  private static final String ADT_MESSAGE =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+          + "EVN||201209122222\r"
+          + "PID|0010||PID1234^5^M11^A^MR^HOSP||DOE^JOHN^A^||19800202|F\r"
+          + "AL1|1|DRUG|00000741^OXYCODONE||HYPOTENSION\r";
+
+  private static HL7ToFHIRConverter converter;
+
+  @BeforeAll
+  public static void setUp() {
+    converter = new HL7ToFHIRConverter(4);
+  }
+
+  @AfterAll
+  public static void tearDown() {
+    converter.close();
+  }
+
+  @Test
+  public void converts_messages_in_order_and_reports_failures() throws Exception {
+    List<String> messages = messages(20, 7);
+    ConversionProcessor<String> processor =
+        new ConversionProcessor.Builder(converter).withParallelism(3).buildForStrings();
+
+    CollectingSubscriber results = new CollectingSubscriber(Long.MAX_VALUE);
+    processor.subscribe(results);
+    new ListPublisher<>(messages).subscribe(processor);
+
+    results.done.get(60, TimeUnit.SECONDS);
+    assertThat(results.items).hasSize(20);
+    for (int i = 0; i < 20; i++) {
+      ConversionResult result = results.items.get(i);
+      assertThat(result.getIndex()).isEqualTo(i);
+      assertThat(result.isSuccess()).isEqualTo(i != 7);
+    }
+  }
+
+  @Test
+  public void unordered_processor_converts_bytes() throws Exception {
+    List<byte[]> messages = messages(10, -1).stream()
+        .map(m -> m.getBytes(StandardCharsets.US_ASCII)).collect(Collectors.toList());
+    ConversionProcessor<byte[]> processor = new ConversionProcessor.Builder(converter)
+        .withParallelism(4).unordered().buildForBytes();
+
+    CollectingSubscriber results = new CollectingSubscriber(Long.MAX_VALUE);
+    processor.subscribe(results);
+    new ListPublisher<>(messages).subscribe(processor);
+
+    results.done.get(60, TimeUnit.SECONDS);
+    assertThat(results.items.stream().map(ConversionResult::getIndex))
+        .containsExactlyInAnyOrderElementsOf(
+            IntStream.range(0, 10).mapToObj(Long::valueOf).collect(Collectors.toList()));
+    assertThat(results.items).allMatch(ConversionResult::isSuccess);
+  }
+
+  @Test
+  public void upstream_demand_is_bounded_by_downstream_demand() throws Exception {
+    ListPublisher<String> publisher = new ListPublisher<>(messages(50, -1));
+    ConversionProcessor<String> processor = new ConversionProcessor.Builder(converter)
+        .withParallelism(2).withBufferSize(4).buildForStrings();
+
+    CollectingSubscriber results = new CollectingSubscriber(1);
+    processor.subscribe(results);
+    publisher.subscribe(processor);
+
+    assertThat(results.first.await(60, TimeUnit.SECONDS)).isTrue();
+    // let the conversions of the buffered messages complete
+    Thread.sleep(1000);
+    assertThat(results.items).hasSize(1);
+    // the buffer is refilled with one message for the result delivered
+    assertThat(publisher.requested.get()).isEqualTo(5);
+    assertThat(results.done).isNotDone();
+
+    results.subscription.request(Long.MAX_VALUE);
+    results.done.get(60, TimeUnit.SECONDS);
+    assertThat(results.items).hasSize(50);
+  }
+
+  @Test
+  public void upstream_error_is_delivered_after_results() throws Exception {
+    ConversionProcessor<String> processor =
+        new ConversionProcessor.Builder(converter).withParallelism(2).buildForStrings();
+    CollectingSubscriber results = new CollectingSubscriber(Long.MAX_VALUE);
+    processor.subscribe(results);
+
+    IllegalStateException failure = new IllegalStateException("feed failure");
+    processor.onSubscribe(new Flow.Subscription() {
+      private boolean sent;
+
+      @Override
+      public void request(long n) {
+        if (!sent) {
+          sent = true;
+          processor.onNext(ADT_MESSAGE);
+          processor.onError(failure);
+        }
+      }
+
+      @Override
+      public void cancel() {}
+    });
+
+    assertThrows(ExecutionException.class, () -> results.done.get(60, TimeUnit.SECONDS));
+    assertThat(results.error).isSameAs(failure);
+    assertThat(results.items).hasSize(1);
+  }
+
+  @Test
+  public void second_subscriber_is_rejected() {
+    ConversionProcessor<String> processor =
+        new ConversionProcessor.Builder(converter).withParallelism(1).buildForStrings();
+    processor.subscribe(new CollectingSubscriber(1));
+    CollectingSubscriber second = new CollectingSubscriber(1);
+    processor.subscribe(second);
+    assertThat(second.error).isInstanceOf(IllegalStateException.class);
+    processor.onComplete();
+  }
+
+  private static List<String> messages(int count, int invalidIndex) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> i == invalidIndex ? "not a hl7 message"
+            : ADT_MESSAGE.replace("|102|", "|" + i + "|"))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Publishes the elements of a list as they are requested.
+   */
+  private static class ListPublisher<T> implements Flow.Publisher<T> {
+    private final List<T> items;
+    private final AtomicLong requested = new AtomicLong();
+
+    private ListPublisher(List<T> items) {
+      this.items = items;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        private int next;
+        private boolean cancelled;
+
+        @Override
+        public synchronized void request(long n) {
+          requested.addAndGet(n);
+          for (long i = 0; i < n && next < items.size() && !cancelled; i++) {
+            subscriber.onNext(items.get(next++));
+          }
+          if (next == items.size() && !cancelled) {
+            cancelled = true;
+            subscriber.onComplete();
+          }
+        }
+
+        @Override
+        public synchronized void cancel() {
+          cancelled = true;
+        }
+      });
+    }
+  }
+
+  private static class CollectingSubscriber implements Flow.Subscriber<ConversionResult> {
+    private final long initialRequest;
+    private final List<ConversionResult> items = new CopyOnWriteArrayList<>();
+    private final CountDownLatch first = new CountDownLatch(1);
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable error;
+
+    private CollectingSubscriber(long initialRequest) {
+      this.initialRequest = initialRequest;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(initialRequest);
+    }
+
+    @Override
+    public void onNext(ConversionResult item) {
+      items.add(item);
+      first.countDown();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      done.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      done.complete(null);
+    }
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import io.github.linuxforhealth.hl7.parsing.HL7HapiParser;
+
+public class MessageStructureDiagnosticsTest {
+
+  private static final String MESSAGE =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+          + "PID|0010||PID1234^5^M11^A^MR^HOSP||DOE^JOHN^A^||19800202|F\r"
+          + "AL1|1|DRUG|00000741^OXYCODONE||HYPOTENSION\r";
+
+  @Test
+  public void render_does_not_include_field_values() throws HL7Exception {
+    String output = MessageStructureDiagnostics.render(parse(MESSAGE), 100000);
+
+    assertThat(output).contains("PID").contains("AL1");
+    assertThat(output).doesNotContain("DOE").doesNotContain("OXYCODONE");
+  }
+
+  @Test
+  public void render_is_capped_to_max_chars() throws HL7Exception {
+    String output = MessageStructureDiagnostics.render(parse(MESSAGE), 20);
+
+    assertThat(output).hasSize(20 + "...[truncated]".length()).endsWith("...[truncated]");
+  }
+
+  @Test
+  public void diagnostics_are_disabled_by_default() {
+    assertThat(MessageStructureDiagnostics.DISABLED.isEnabled()).isFalse();
+    assertThat(MessageStructureDiagnostics.fromConfiguration().isEnabled()).isFalse();
+  }
+
+  @Test
+  public void diagnostics_are_enabled_with_sample_rate() throws HL7Exception {
+    try (MessageStructureDiagnostics diagnostics = new MessageStructureDiagnostics.Builder()
+        .withSampleRate(0.5).withMessageTypes(Arrays.asList("ORU_R01")).build()) {
+      assertThat(diagnostics.isEnabled()).isTrue();
+      // not selected by the message type filter, nothing is rendered
+      diagnostics.submit(parse(MESSAGE), "ADT_A01");
+    }
+  }
+
+  @Test
+  public void message_submitted_as_text_is_parsed_in_full() throws HL7Exception {
+    try (MessageStructureDiagnostics diagnostics =
+        new MessageStructureDiagnostics.Builder().withSampleRate(1).build()) {
+      Message parsed = diagnostics.parse(MESSAGE);
+
+      assertThat(parsed.encode()).isEqualTo(parse(MESSAGE).encode());
+      assertThat(MessageStructureDiagnostics.render(parsed, 100000))
+          .isEqualTo(MessageStructureDiagnostics.render(parse(MESSAGE), 100000));
+    }
+  }
+
+  @Test
+  public void invalid_sample_rate_is_rejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new MessageStructureDiagnostics.Builder().withSampleRate(1.5));
+  }
+
+  private static Message parse(String message) throws HL7Exception {
+    return new HL7HapiParser().getParser().parse(message);
+  }
+
+}
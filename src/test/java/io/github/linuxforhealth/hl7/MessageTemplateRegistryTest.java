@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import io.github.linuxforhealth.hl7.message.HL7MessageModel;
+
+public class MessageTemplateRegistryTest {
+
+  private static final List<String> TEMPLATES =
+      Arrays.asList("ADT_A01", "ORU_R01", "VXU_V04", "ADT_A04");
+
+  @Test
+  public void lazy_templates_are_loaded_on_first_use() {
+    try (MessageTemplateRegistry registry = MessageTemplateRegistry.lazy(TEMPLATES, false)) {
+      assertThat(registry.getMessageTypes()).containsExactlyElementsOf(TEMPLATES);
+      assertThat(registry.isLoaded("ADT_A01")).isFalse();
+
+      HL7MessageModel model = registry.get("ADT_A01");
+      assertThat(model).isNotNull();
+      assertThat(registry.get("ADT_A01")).isSameAs(model);
+      assertThat(registry.isLoaded("ADT_A01")).isTrue();
+      assertThat(registry.get("ORM_O01")).isNull();
+      // the templates not used are not loaded without preload
+      assertThat(registry.isLoaded("VXU_V04")).isFalse();
+    }
+  }
+
+  @Test
+  public void templates_of_the_observed_message_codes_are_preloaded_first() {
+    try (MessageTemplateRegistry registry = MessageTemplateRegistry.lazy(TEMPLATES, false)) {
+      assertThat(registry.nextToPreload()).isEqualTo("ADT_A01");
+      registry.get("VXU_V04");
+      assertThat(registry.nextToPreload()).isEqualTo("ADT_A01");
+      registry.get("ADT_A01");
+      registry.get("ADT_A08");
+      assertThat(registry.nextToPreload()).isEqualTo("ADT_A04");
+    }
+  }
+
+  @Test
+  public void preload_loads_all_templates_after_first_use() throws InterruptedException {
+    try (MessageTemplateRegistry registry = MessageTemplateRegistry.lazy(TEMPLATES, true)) {
+      assertThat(registry.nextToPreload()).isNotNull();
+      registry.get("ORU_R01");
+      long deadline = System.currentTimeMillis() + 60000;
+      while (registry.nextToPreload() != null && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      assertThat(TEMPLATES).allMatch(registry::isLoaded);
+    }
+  }
+
+  @Test
+  public void referenced_segments_are_derived_from_the_templates() {
+    try (MessageTemplateRegistry registry = MessageTemplateRegistry.lazy(TEMPLATES, false)) {
+      assertThat(registry.getReferencedSegments("ADT_A01")).contains("MSH", "PID", "PV1", "OBX",
+          "AL1").doesNotContain("IN1", "GT1", "ZPD");
+      assertThat(registry.getReferencedSegments("VXU_V04")).contains("RXA", "RXR");
+      assertThat(registry.getReferencedSegments("ORM_O01")).isNull();
+      // reading the segments of a template is not traffic
+      assertThat(registry.nextToPreload()).isEqualTo("ORU_R01");
+    }
+  }
+
+  @Test
+  public void eager_registry_fails_on_missing_template() {
+    assertThrows(IllegalStateException.class,
+        () -> MessageTemplateRegistry.eager(Arrays.asList("ADT_A01", "NOT_A01")));
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.github.linuxforhealth.core.Constants;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+import io.github.linuxforhealth.core.terminology.UrlLookup;
+import io.github.linuxforhealth.hl7.resource.ResourceReader;
+
+public class TemplateReloadTest {
+
+  private static final String CONF_PROP_HOME = "hl7converter.config.home";
+  private static final String ADT_MESSAGE =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|ASCII||||||\r"
+          + "EVN||201209122222\r"
+          + "PID|0010||PID1234^5^M11^A^MR^HOSP||DOE^JOHN^A^||19800202|F\r";
+
+  @TempDir
+  Path folder;
+
+  private String originalConfigHome;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    originalConfigHome = System.getProperty(CONF_PROP_HOME);
+    Properties prop = new Properties();
+    prop.put("supported.hl7.messages", "ADT_A01");
+    prop.put("base.path.resource", folder.resolve("resources").toString());
+    try (OutputStream out = new FileOutputStream(folder.resolve("config.properties").toFile())) {
+      prop.store(out, null);
+    }
+    System.setProperty(CONF_PROP_HOME, folder.toString());
+    ConverterConfiguration.reset();
+    ResourceReader.install(ResourceReader.newInstance());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    if (originalConfigHome != null) {
+      System.setProperty(CONF_PROP_HOME, originalConfigHome);
+    } else {
+      System.clearProperty(CONF_PROP_HOME);
+    }
+    ConverterConfiguration.reset();
+    ResourceReader.install(ResourceReader.newInstance());
+  }
+
+  @Test
+  public void reload_swaps_templates_and_keeps_in_flight_readers() throws Exception {
+    try (HL7ToFHIRConverter converter = new HL7ToFHIRConverter(1)) {
+      ResourceReader previous = ResourceReader.getInstance();
+      assertThat(UrlLookup.getSystemUrl("LN")).isEqualTo("http://loinc.org");
+
+      String mapping = previous.getResourceInHl7Folder(Constants.CODING_SYSTEM_MAPPING_PATH);
+      writeResource(Constants.HL7_BASE_PATH + Constants.CODING_SYSTEM_MAPPING_PATH,
+          mapping.replace("url: \"http://loinc.org\"", "url: \"http://loinc.example.org\""));
+      converter.reloadTemplates().get(60, TimeUnit.SECONDS);
+
+      assertThat(ResourceReader.getInstance()).isNotSameAs(previous);
+      assertThat(UrlLookup.getSystemUrl("LN")).isEqualTo("http://loinc.example.org");
+      // a conversion started before the reload keeps using the previous mappings
+      assertThat(previous.callWith(() -> UrlLookup.getSystemUrl("LN")))
+          .isEqualTo("http://loinc.org");
+      assertThat(converter.convert(ADT_MESSAGE)).contains("\"resourceType\":\"Patient\"");
+    }
+  }
+
+  @Test
+  public void failed_reload_keeps_current_templates() throws Exception {
+    try (HL7ToFHIRConverter converter = new HL7ToFHIRConverter(1)) {
+      ResourceReader previous = ResourceReader.getInstance();
+      writeResource(Constants.HL7_BASE_PATH + Constants.MESSAGE_BASE_PATH + "ADT_A01.yml",
+          "resources: []\n");
+
+      ExecutionException e = assertThrows(ExecutionException.class,
+          () -> converter.reloadTemplates().get(60, TimeUnit.SECONDS));
+      assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+      assertThat(ResourceReader.getInstance()).isSameAs(previous);
+      assertThat(converter.convert(ADT_MESSAGE)).contains("\"resourceType\":\"Patient\"");
+    }
+  }
+
+  private void writeResource(String path, String content) throws IOException {
+    Path file = folder.resolve("resources").resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import com.google.common.io.Files;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.Segment;
+import io.github.linuxforhealth.api.EvaluationResult;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+import io.github.linuxforhealth.core.expression.EvaluationResultFactory;
+import io.github.linuxforhealth.fhir.FHIRContext;
+import io.github.linuxforhealth.hl7.expression.specification.HL7Specification;
+import io.github.linuxforhealth.hl7.parsing.HL7DataExtractor;
+import io.github.linuxforhealth.hl7.parsing.HL7HapiParser;
+import io.github.linuxforhealth.hl7.parsing.HL7MessageHeader;
+import io.github.linuxforhealth.hl7.resource.ResourceReader;
+
+public class ER7MessageDataTest {
+
+  private static final String MESSAGE =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6\r"
+          + "EVN||201209122222\r"
+          + "PID|0010||PID1234^5^M11^A^MR^HOSP~1234568965^^^USA^SS||DOE^JOHN\\T\\JANE^A^||19800202|F\r"
+          + "PV1||I|||||||||||||||||1400\r"
+          + "AL1|1|DA|^PENICILLIN|MI|PRODUCES HIVES\r";
+
+  private static final Pattern UUID =
+      Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+  private final HL7HapiParser parser = new HL7HapiParser();
+
+  @Test
+  public void fields_of_header_segments_are_read_without_parsing() throws HL7Exception {
+    ER7MessageData data = new ER7MessageData(MESSAGE, parser);
+    HL7MessageData parsed =
+        new HL7MessageData(new HL7DataExtractor(parser.getParser().parse(MESSAGE)));
+
+    for (String spec : new String[] {"MSH.7", "MSH.10", "EVN.2", "PID.3", "PID.5", "PID.8",
+        "PV1.2", "PV1.19", "AL1.2", "PID.30", "PV2.1"}) {
+      HL7Specification hl7spec = spec(spec);
+      Object value = data.extractValueForSpec(hl7spec, new HashMap<>()).getValue();
+      Object values = data.extractMultipleValuesForSpec(hl7spec, new HashMap<>()).getValue();
+      assertThat(value).as(spec)
+          .isEqualTo(parsed.extractValueForSpec(hl7spec, new HashMap<>()).getValue());
+      assertThat(values).as(spec)
+          .isEqualTo(parsed.extractMultipleValuesForSpec(hl7spec, new HashMap<>()).getValue());
+    }
+    Object name = data.extractValueForSpec(spec("PID.5"), new HashMap<>()).getValue();
+    assertThat(name).isEqualTo("DOE");
+    assertThat(data.getName()).isEqualTo("ADT_A01");
+    assertThat(data.getId()).isEqualTo("102");
+    assertThat(data.isParsed()).isFalse();
+  }
+
+  @Test
+  public void message_is_parsed_for_segments_of_groups_and_context_values() {
+    ER7MessageData data = new ER7MessageData(MESSAGE, parser);
+
+    // PR1 is only in a group of ADT_A01
+    Object procedure = data.extractValueForSpec(spec("PR1.3"), new HashMap<>()).getValue();
+    assertThat(procedure).isNull();
+    assertThat(data.isParsed()).isTrue();
+
+    EvaluationResult pid = data.extractValueForSpec(spec("PID"), new HashMap<>());
+    Object segment = pid.getValue();
+    assertThat(segment).isInstanceOf(Segment.class);
+    Map<String, EvaluationResult> context = new HashMap<>();
+    context.put("PID", EvaluationResultFactory.getEvaluationResult(pid.getValue()));
+    Object gender = data.extractValueForSpec(spec("PID.8"), context).getValue();
+    assertThat(gender.toString()).isEqualTo("F");
+  }
+
+  @ParameterizedTest
+  @MethodSource("sampleMessageTypes")
+  public void bundle_is_the_same_as_with_the_parsed_message(String messageType)
+      throws IOException, HL7Exception {
+    String text = readSample(messageType);
+    Message parsed = parser.parse(text, HL7MessageHeader.scan(text));
+    HL7MessageModel template = ResourceReader.getInstance().getMessageModel(messageType);
+    HL7MessageEngine engine = new HL7MessageEngine(new FHIRContext());
+
+    String expected = template.convert(new HL7MessageData(new HL7DataExtractor(parsed)), engine);
+    String actual = template.convert(new ER7MessageData(text, parsed), engine);
+    assertThat(expected).isNotBlank();
+    assertThat(normalize(actual)).isEqualTo(normalize(expected));
+  }
+
+  @Test
+  public void parsed_message_is_the_data_source_by_default() throws HL7Exception {
+    // er7.data.extraction is not enabled in the test configuration
+    assertThat(HL7MessageModel.newDataSource(MESSAGE, parser.getParser().parse(MESSAGE)))
+        .isInstanceOf(HL7MessageData.class);
+  }
+
+  static Stream<String> sampleMessageTypes() {
+    return ConverterConfiguration.getInstance().getSupportedMessageTemplates().stream()
+        .map(Files::getNameWithoutExtension).filter(type -> !"Fallback_Base".equals(type));
+  }
+
+  private static String readSample(String messageType) throws IOException {
+    try (InputStream in = ER7MessageDataTest.class.getClassLoader()
+        .getResourceAsStream("messages/" + messageType + ".hl7")) {
+      assertThat(in).as("sample message of " + messageType).isNotNull();
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  // the generated ids are numbered in order of appearance and the timestamps are removed
+  private static String normalize(String bundle) {
+    Map<String, String> ids = new HashMap<>();
+    Matcher matcher = UUID.matcher(bundle.replaceAll("\"lastUpdated\":\"[^\"]*\"", ""));
+    StringBuffer normalized = new StringBuffer();
+    while (matcher.find()) {
+      matcher.appendReplacement(normalized,
+          ids.computeIfAbsent(matcher.group(), k -> "id" + ids.size()));
+    }
+    matcher.appendTail(normalized);
+    return normalized.toString();
+  }
+
+  private static HL7Specification spec(String spec) {
+    String[] tokens = spec.split("\\.");
+    return new HL7Specification(tokens[0], tokens.length > 1 ? tokens[1] : null, -1, -1);
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import com.google.common.collect.ImmutableList;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.v26.datatype.CWE;
+import ca.uhn.hl7v2.model.v26.message.ADT_A01;
+import ca.uhn.hl7v2.model.v26.segment.PID;
+import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
+
+public class CachingModelClassFactoryTest {
+
+  @Test
+  public void classes_are_resolved_once_per_name() throws HL7Exception {
+    CachingModelClassFactory factory =
+        new CachingModelClassFactory(new CanonicalModelClassFactory("2.6"));
+
+    assertThat(factory.getMessageClass("ADT_A04", "2.6", false)).isEqualTo(ADT_A01.class);
+    assertThat(factory.getSegmentClass("PID", "2.6")).isEqualTo(PID.class);
+    assertThat(factory.getTypeClass("CWE", "2.6")).isEqualTo(CWE.class);
+    // custom segments have no class
+    assertThat(factory.getSegmentClass("ZPD", "2.6")).isNull();
+    assertThat(factory.getHits()).isZero();
+    long misses = factory.getMisses();
+
+    assertThat(factory.getMessageClass("ADT_A04", "2.6", false)).isEqualTo(ADT_A01.class);
+    assertThat(factory.getSegmentClass("PID", "2.6")).isEqualTo(PID.class);
+    assertThat(factory.getTypeClass("CWE", "2.6")).isEqualTo(CWE.class);
+    assertThat(factory.getSegmentClass("ZPD", "2.6")).isNull();
+    assertThat(factory.getHits()).isEqualTo(4);
+    assertThat(factory.getMisses()).isEqualTo(misses);
+  }
+
+  @Test
+  public void preloaded_message_types_are_answered_from_the_cache() throws HL7Exception {
+    CachingModelClassFactory factory =
+        new CachingModelClassFactory(new CanonicalModelClassFactory("2.6"));
+    factory.preload(ImmutableList.of("ADT_A01", "Fallback_Base"), "2.6");
+    long misses = factory.getMisses();
+
+    Message message = factory.newMessage(factory.getMessageClass("ADT_A01", "2.6", false));
+    assertThat(message).isInstanceOf(ADT_A01.class);
+    assertThat(factory.getHits()).isEqualTo(1);
+    assertThat(factory.getMisses()).isEqualTo(misses);
+  }
+
+}
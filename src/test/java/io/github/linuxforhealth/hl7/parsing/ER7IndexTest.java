@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class ER7IndexTest {
+
+  private static final String MESSAGE =
+      "MSH|^~\\&|SendTest1|Sendfac1|Receiveapp1|Receivefac1|200603081747|security|ADT^A01^ADT_A01|1|P|2.6\r\n"
+          + "EVN||201209122222\r\n"
+          + "PID|||555444222111^^^MPI&GenHosp&L^MR~PID1234^^^USA^SS||DOE^JOHN\\T\\JANE||19800202|F\r\n"
+          + "NK1|1\r\n"
+          + "NK1|2|ROE^MARIE";
+
+  @Test
+  public void segments_are_found_by_name() {
+    ER7Index index = ER7Index.of(MESSAGE);
+
+    assertThat(index.getSegmentCount()).isEqualTo(5);
+    assertThat(index.getSegmentName(2).toString()).isEqualTo("PID");
+    assertThat(index.indexOf("NK1", 0)).isEqualTo(3);
+    assertThat(index.indexOf("NK1", 4)).isEqualTo(4);
+    assertThat(index.indexOf("NK", 0)).isEqualTo(-1);
+    assertThat(index.indexOf("PV1", 0)).isEqualTo(-1);
+  }
+
+  @Test
+  public void values_are_read_by_field_repetition_component_and_subcomponent() {
+    ER7Index index = ER7Index.of(MESSAGE);
+
+    assertThat(index.get(2, 3, 0, 1, 1).toString()).isEqualTo("555444222111");
+    assertThat(index.get(2, 3, 0, 4, 2).toString()).isEqualTo("GenHosp");
+    assertThat(index.get(2, 3, 0, 4, 1).toString()).isEqualTo("MPI");
+    assertThat(index.get(2, 3, 1, 4, 1).toString()).isEqualTo("USA");
+    assertThat(index.get(2, 3, 1, 5, 1).toString()).isEqualTo("SS");
+    assertThat(index.get(2, 8, 0, 1, 1).toString()).isEqualTo("F");
+    assertThat(index.get(4, 2, 0, 2, 1).toString()).isEqualTo("MARIE");
+
+    // absent or empty values
+    assertThat(index.get(2, 3, 2, 1, 1)).isNull();
+    assertThat(index.get(2, 3, 0, 2, 1)).isNull();
+    assertThat(index.get(2, 3, 0, 6, 1)).isNull();
+    assertThat(index.get(2, 3, 0, 1, 2)).isNull();
+    assertThat(index.get(2, 9, 0, 1, 1)).isNull();
+    assertThat(index.get(3, 2, 0, 1, 1)).isNull();
+    assertThrows(IllegalArgumentException.class, () -> index.get(5, 1, 0, 1, 1));
+  }
+
+  @Test
+  public void header_fields_are_numbered_from_the_field_separator() {
+    ER7Index index = ER7Index.of(MESSAGE);
+
+    assertThat(index.get(0, 1, 0, 1, 1).toString()).isEqualTo("|");
+    assertThat(index.get(0, 2, 0, 1, 1).toString()).isEqualTo("^~\\&");
+    assertThat(index.get(0, 3, 0, 1, 1).toString()).isEqualTo("SendTest1");
+    assertThat(index.get(0, 9, 0, 2, 1).toString()).isEqualTo("A01");
+    assertThat(index.getString(0, 12, 0, 1, 1)).isEqualTo("2.6");
+  }
+
+  @Test
+  public void values_are_views_of_the_text() {
+    ER7Index index = ER7Index.of(MESSAGE);
+
+    CharSequence name = index.get(2, 5, 0, 2, 1);
+    assertThat(name.length()).isEqualTo(11);
+    assertThat(name.charAt(0)).isEqualTo('J');
+    assertThat(name.subSequence(0, 4).toString()).isEqualTo("JOHN");
+    // escape sequences are resolved as the HAPI parser does
+    assertThat(index.getString(2, 5, 0, 2, 1)).isEqualTo("JOHN&JANE");
+  }
+
+  @Test
+  public void other_encoding_characters_are_used() {
+    ER7Index index = ER7Index.of("MSH#$%\\*#app#fac###20120912011230##VXU$V04#1\rPID###1$$$X*Y");
+
+    assertThat(index.get(0, 9, 0, 2, 1).toString()).isEqualTo("V04");
+    assertThat(index.get(1, 3, 0, 4, 2).toString()).isEqualTo("Y");
+  }
+
+  @Test
+  public void message_must_start_with_header() {
+    assertThrows(IllegalArgumentException.class, () -> ER7Index.of("PID|1"));
+  }
+
+}
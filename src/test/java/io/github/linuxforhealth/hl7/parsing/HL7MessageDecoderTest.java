@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+public class HL7MessageDecoderTest {
+
+  private static final String MSH_PREFIX =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6|||AL|NE|764|";
+
+  @Test
+  public void detects_charset_from_msh18() {
+    assertThat(detect(MSH_PREFIX + "8859/1|||\rPID|1\r")).isEqualTo(StandardCharsets.ISO_8859_1);
+    assertThat(detect(MSH_PREFIX + "ASCII\r")).isEqualTo(StandardCharsets.US_ASCII);
+    // first repetition is the default character set of the message
+    assertThat(detect(MSH_PREFIX + "UNICODE UTF-8~8859/1|||\r")).isEqualTo(StandardCharsets.UTF_8);
+    // MLLP start block before the message
+    assertThat(detect("\u000b" + MSH_PREFIX + "8859/15\r"))
+        .isEqualTo(Charset.forName("ISO-8859-15"));
+  }
+
+  @Test
+  public void defaults_to_utf8() {
+    assertThat(detect(MSH_PREFIX + "|||\r")).isEqualTo(StandardCharsets.UTF_8);
+    assertThat(detect("MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|102|T|2.6\r"))
+        .isEqualTo(StandardCharsets.UTF_8);
+    assertThat(detect(MSH_PREFIX + "NOT A CHARSET\r")).isEqualTo(StandardCharsets.UTF_8);
+    assertThat(detect("some text")).isEqualTo(StandardCharsets.UTF_8);
+    // MSH-18 of a later segment is ignored
+    assertThat(detect("PID|1|" + MSH_PREFIX + "8859/1\r")).isEqualTo(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void decodes_buffer_without_moving_position() {
+    String message = MSH_PREFIX + "8859/1\rPID|1||||M\u00dcLLER^J\u00d6RG\r";
+    ByteBuffer bytes = ByteBuffer.wrap(message.getBytes(StandardCharsets.ISO_8859_1));
+
+    HL7MessageDecoder decoder = new HL7MessageDecoder();
+    assertThat(decoder.decode(bytes).toString()).isEqualTo(message);
+    assertThat(bytes.position()).isZero();
+    // the decoder is reused for the following messages
+    assertThat(decoder.decode(bytes).toString()).isEqualTo(message);
+  }
+
+  @Test
+  public void skips_utf8_byte_order_mark() {
+    String message = MSH_PREFIX + "UNICODE UTF-8\rPID|1||||M\u00dcLLER\r";
+    byte[] bytes = ("\ufeff" + message).getBytes(StandardCharsets.UTF_8);
+
+    assertThat(new HL7MessageDecoder().decode(ByteBuffer.wrap(bytes)).toString())
+        .isEqualTo(message);
+  }
+
+  @Test
+  public void reads_stream_with_msh18_charset() throws IOException {
+    String message = MSH_PREFIX + "8859/1\rPID|1||||M\u00dcLLER^J\u00d6RG\r";
+
+    Reader reader = new HL7MessageDecoder()
+        .newReader(new ByteArrayInputStream(message.getBytes(StandardCharsets.ISO_8859_1)));
+    assertThat(IOUtils.toString(reader)).isEqualTo(message);
+  }
+
+  @Test
+  public void maps_hl7_charset_codes() {
+    assertThat(HL7MessageDecoder.getCharset("8859/2")).isEqualTo(Charset.forName("ISO-8859-2"));
+    assertThat(HL7MessageDecoder.getCharset("unicode utf-8")).isEqualTo(StandardCharsets.UTF_8);
+    assertThat(HL7MessageDecoder.getCharset("BIG-5")).isEqualTo(Charset.forName("Big5"));
+    assertThat(HL7MessageDecoder.getCharset("8859/99")).isNull();
+    assertThat(HL7MessageDecoder.getCharset(null)).isNull();
+  }
+
+  private static Charset detect(String message) {
+    return HL7MessageDecoder
+        .detectCharset(ByteBuffer.wrap(message.getBytes(StandardCharsets.ISO_8859_1)));
+  }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.v26.message.ADT_A01;
+import ca.uhn.hl7v2.model.v26.message.ORU_R01;
+
+public class HL7MessageHeaderTest {
+
+  private static final String MESSAGE =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A04^ADT_A01|102|T|2.6|||AL|NE|764|UNICODE UTF-8~ASCII\r"
+          + "EVN||201209122222\r"
+          + "PID|0010||PID1234^5^M11^A^MR^HOSP||DOE^JOHN^A^||19800202|F\r"
+          + "PV1|1|I|||||||||||||||||1400\r";
+
+  @Test
+  public void header_fields_are_read_from_the_text() {
+    HL7MessageHeader header = HL7MessageHeader.scan(MESSAGE);
+    assertThat(header.getMessageType()).isEqualTo("ADT_A04");
+    assertThat(header.getMessageCode()).isEqualTo("ADT");
+    assertThat(header.getTriggerEvent()).isEqualTo("A04");
+    assertThat(header.getMessageStructure()).isEqualTo("ADT_A01");
+    assertThat(header.getControlId()).isEqualTo("102");
+    assertThat(header.getVersion()).isEqualTo("2.6");
+    assertThat(header.getCharacterSet()).isEqualTo("UNICODE UTF-8");
+
+    header = HL7MessageHeader.scan("MSH#^~\\&#app#fac###20120912011230##VXU^V04#1#P");
+    assertThat(header.getMessageType()).isEqualTo("VXU_V04");
+    assertThat(header.getMessageStructure()).isNull();
+    assertThat(header.getVersion()).isNull();
+    assertThat(header.getCharacterSet()).isNull();
+
+    assertThat(HL7MessageHeader.scan("MSH|^~\\&|app|fac|||20120912011230||ADT|1|P|2.6")
+        .getMessageType()).isNull();
+    // only the MSH segment is read
+    assertThat(HL7MessageHeader.scan("MSH|^~\\&|app|fac\rPID|1|2|3|4|5|6|7|8|ADT^A01")
+        .getMessageType()).isNull();
+    assertThat(HL7MessageHeader.scan("PID|1")).isNull();
+  }
+
+  @Test
+  public void message_is_parsed_into_the_class_of_its_header() throws HL7Exception {
+    HL7HapiParser parser = new HL7HapiParser();
+    Message message = parser.parse(MESSAGE, HL7MessageHeader.scan(MESSAGE));
+    assertThat(message).isInstanceOf(ADT_A01.class);
+    assertThat(message.encode()).isEqualTo(parser.getParser().parse(MESSAGE).encode());
+    assertThat(((ADT_A01) message).getPID().getPatientName(0).getGivenName().getValue())
+        .isEqualTo("JOHN");
+
+    String oru = "MSH|^~\\&|app|fac|||20120912011230||ORU^R01|1|P|2.6\r"
+        + "PID|||555444222111^^^MPI&GenHosp&L^MR||james^anderson\r"
+        + "OBR|1||986^IA PHIMS Stage|112^Final Echocardiogram Report\r";
+    assertThat(parser.parse(oru, HL7MessageHeader.scan(oru))).isInstanceOf(ORU_R01.class);
+
+    // unknown versions are left to the generic parser, that rejects them
+    String unknown = MESSAGE.replace("|2.6|", "|9.9|");
+    assertThrows(HL7Exception.class,
+        () -> parser.parse(unknown, HL7MessageHeader.scan(unknown)));
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.junit.jupiter.api.Test;
+
+public class HL7MessageStreamReaderTest {
+
+  @Test
+  public void splits_batch_file_and_skips_envelope() throws IOException {
+    String batch = "FHS|^~\\&|SENDER|FAC|RECEIVER|FAC|20210101\n"
+        + "BHS|^~\\&|SENDER|FAC|RECEIVER|FAC|20210101\n"
+        + "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|1|T|2.6\n"
+        + "PID|0010||PID1234^5^M11^A^MR\n"
+        + "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|2|T|2.6\r\n"
+        + "PID|0010||PID5678^5^M11^A^MR\r\n"
+        + "BTS|2\n"
+        + "FTS|1\n";
+
+    List<String> messages = readAll(batch);
+
+    assertThat(messages).containsExactly(
+        "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|1|T|2.6\r"
+            + "PID|0010||PID1234^5^M11^A^MR",
+        "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01|2|T|2.6\r"
+            + "PID|0010||PID5678^5^M11^A^MR");
+  }
+
+  @Test
+  public void strips_mllp_framing_and_blank_lines() throws IOException {
+    String framed = "\u000bMSH|^~\\&|A|B|||||ADT^A01|1|T|2.6\rPID|1\r\u001c\r"
+        + "\r\n\u000bMSH|^~\\&|A|B|||||ADT^A01|2|T|2.6\rPID|2\r\u001c\r";
+
+    List<String> messages = readAll(framed);
+
+    assertThat(messages).containsExactly("MSH|^~\\&|A|B|||||ADT^A01|1|T|2.6\rPID|1",
+        "MSH|^~\\&|A|B|||||ADT^A01|2|T|2.6\rPID|2");
+  }
+
+  @Test
+  public void ignores_content_before_first_message() throws IOException {
+    List<String> messages = readAll("some header\nMSH|^~\\&|A|B|||||ADT^A01|1|T|2.6");
+
+    assertThat(messages).containsExactly("MSH|^~\\&|A|B|||||ADT^A01|1|T|2.6");
+  }
+
+  @Test
+  public void empty_input_has_no_messages() throws IOException {
+    try (HL7MessageStreamReader reader = new HL7MessageStreamReader(new StringReader(""))) {
+      assertThat(reader.hasNext()).isFalse();
+      assertThrows(NoSuchElementException.class, reader::next);
+    }
+  }
+
+  private static List<String> readAll(String input) throws IOException {
+    List<String> messages = new ArrayList<>();
+    try (HL7MessageStreamReader reader = new HL7MessageStreamReader(new StringReader(input))) {
+      reader.forEachRemaining(messages::add);
+    }
+    return messages;
+  }
+
+}
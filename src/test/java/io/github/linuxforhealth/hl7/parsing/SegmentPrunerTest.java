@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import com.google.common.collect.ImmutableSet;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.v26.message.ADT_A01;
+
+public class SegmentPrunerTest {
+
+  private static final String MESSAGE =
+      "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01^ADT_A01|102|T|2.6\r"
+          + "EVN||201209122222\r"
+          + "PID|0010||PID1234^5^M11^A^MR^HOSP~1234568965^^^USA^SS||DOE^JOHN^A^||19800202|F\r"
+          + "PV1||I|||||||||||||||||1400\r"
+          + "IN1|1|PLAN01^Gold|INS01|Insurer^^^^^^L|1 Main St^^Town^ST^12345\r"
+          + "ZPD|custom|data^with^components\r";
+
+  @Test
+  public void segments_not_kept_are_reduced_to_their_name() {
+    String pruned = SegmentPruner.prune(MESSAGE.replace("\r", "\r\n"),
+        ImmutableSet.of("MSH", "PID", "PV1"));
+    assertThat(pruned).isEqualTo(
+        "MSH|^~\\&|SE050|050|PACS|050|20120912011230||ADT^A01^ADT_A01|102|T|2.6\r\n"
+            + "EVN\r\n"
+            + "PID|0010||PID1234^5^M11^A^MR^HOSP~1234568965^^^USA^SS||DOE^JOHN^A^||19800202|F\r\n"
+            + "PV1||I|||||||||||||||||1400\r\n"
+            + "IN1\r\n"
+            + "ZPD\r\n");
+
+    // nothing to prune, the message itself is returned
+    assertThat(SegmentPruner.prune(MESSAGE, ImmutableSet.of("EVN", "PID", "PV1", "IN1", "ZPD")))
+        .isSameAs(MESSAGE);
+  }
+
+  @Test
+  public void pruned_message_keeps_its_structure() throws HL7Exception {
+    HL7HapiParser parser = new HL7HapiParser();
+    Message message =
+        parser.getParser().parse(SegmentPruner.prune(MESSAGE, ImmutableSet.of("MSH", "PID")));
+
+    assertThat(message).isInstanceOf(ADT_A01.class);
+    ADT_A01 adt = (ADT_A01) message;
+    assertThat(adt.getPID().getPatientName(0).getFamilyName().getSurname().getValue())
+        .isEqualTo("DOE");
+    assertThat(adt.getINSURANCEReps()).isEqualTo(1);
+    assertThat(adt.getINSURANCE().getIN1().isEmpty()).isTrue();
+    assertThat(adt.getPV1().isEmpty()).isTrue();
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.parsing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Group;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.Structure;
+import io.github.linuxforhealth.hl7.parsing.StructureIndex.Children;
+
+public class StructureIndexTest {
+
+  private static final String MESSAGE =
+      "MSH|^~\\&|SendTest1|Sendfac1|Receiveapp1|Receivefac1|200603081747|security|ORU^R01|1|P|2.6\r"
+          + "PID|||555444222111^^^MPI&GenHosp&L^MR||james^anderson||19600614|M\r"
+          + "OBR|1||986^IA PHIMS Stage|112^Final Echocardiogram Report\r"
+          + "OBX|1|ST|TS-F-01-007^Endocrine Disorders 7^L||obs report||||||F\r"
+          + "OBX|2|ST|TS-F-01-008^Endocrine Disorders 8^L||ECHOCARDIOGRAPHIC REPORT||||||F\r"
+          + "OBR|2||98^IA PHIMS Stage|113^Echocardiogram Report\r";
+
+  @Test
+  public void children_are_read_once_per_group() throws HL7Exception {
+    Message message = new HL7HapiParser().getParser().parse(MESSAGE);
+    StructureIndex index = new StructureIndex();
+
+    Children results = index.get(message, "PATIENT_RESULT");
+    assertThat(results.getAll()).hasSize(1);
+    assertThat(index.get(message, "PATIENT_RESULT")).isSameAs(results);
+
+    Structure[] orders = index.get((Group) results.getAll()[0], "ORDER_OBSERVATION").getAll();
+    assertThat(orders).hasSize(2);
+    assertThat(index.get((Group) orders[0], "OBSERVATION").getNonEmpty()).hasSize(2);
+    // the second order has no observation
+    assertThat(index.get((Group) orders[1], "OBSERVATION").getNonEmpty()).isEmpty();
+    assertThat(index.get(message, "MRG")).isNull();
+  }
+
+  @Test
+  public void extractor_lookups_do_not_add_repetitions() throws HL7Exception {
+    Message message = new HL7HapiParser().getParser().parse(MESSAGE);
+    HL7DataExtractor extractor = new HL7DataExtractor(message);
+
+    assertThat(extractor.getAllStructures("PATIENT_RESULT", 1, "PATIENT").getValues()).isEmpty();
+    assertThat(extractor.getStructure("PATIENT_RESULT", 1, "PATIENT", 0).getValues()).isEmpty();
+    assertThat(extractor.doesSegmentExists("PATIENT_RESULT", 1)).isFalse();
+    assertThat(message.getAll("PATIENT_RESULT")).hasSize(1);
+  }
+
+}
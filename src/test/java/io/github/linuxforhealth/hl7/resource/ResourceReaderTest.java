@@ -0,0 +1,42 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import com.google.common.io.Files;
+import io.github.linuxforhealth.api.ResourceModel;
+import io.github.linuxforhealth.core.config.ConverterConfiguration;
+import io.github.linuxforhealth.hl7.message.HL7MessageModel;
+
+public class ResourceReaderTest {
+
+  @Test
+  public void resource_models_are_built_once_and_shared() {
+    ResourceReader reader = ResourceReader.getInstance();
+    ResourceModel codeableConcept = reader.generateResourceModel("datatype/CodeableConcept");
+    assertThat(reader.generateResourceModel("datatype/CodeableConcept"))
+        .isSameAs(codeableConcept);
+
+    ResourceModelLink link = new ResourceModelLink("datatype/CodeableConcept");
+    assertThat(link.get()).isSameAs(codeableConcept);
+    assertThat(new ResourceModelLink("datatype/Reference").get())
+        .isSameAs(reader.generateResourceModel("datatype/Reference"));
+  }
+
+  @Test
+  public void message_templates_are_loaded_in_parallel() {
+    Map<String, HL7MessageModel> templates = ResourceReader.getInstance().getMessageTemplates();
+    assertThat(templates.keySet()).containsExactlyInAnyOrderElementsOf(
+        ConverterConfiguration.getInstance().getSupportedMessageTemplates().stream()
+            .map(Files::getNameWithoutExtension).collect(Collectors.toList()));
+    assertThat(templates.values()).doesNotContainNull();
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package io.github.linuxforhealth.hl7.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.linuxforhealth.core.ObjectMapperUtil;
+
+public class TemplateSnapshotTest {
+
+  private static final String TEMPLATE = "resourceType: Patient\n"
+      + "identifier:\n"
+      + "  valueOf: datatype/Identifier\n"
+      + "  generateList: true\n"
+      + "  expressionType: resource\n"
+      + "  specs: PID.3\n";
+
+  @Test
+  public void snapshot_is_only_used_for_unchanged_templates(@TempDir Path folder)
+      throws IOException {
+    TemplateSnapshot snapshot = new TemplateSnapshot();
+    JsonNode tree = ObjectMapperUtil.getYAMLInstance().readTree(TEMPLATE);
+    snapshot.put("hl7/resource/Patient.yml", TEMPLATE, tree);
+    assertThat(snapshot.isModified()).isTrue();
+
+    Path file = folder.resolve("templates.snapshot");
+    snapshot.write(file);
+    assertThat(snapshot.isModified()).isFalse();
+
+    TemplateSnapshot read;
+    try (InputStream in = Files.newInputStream(file)) {
+      read = TemplateSnapshot.read(in);
+    }
+    assertThat(read.getTree("hl7/resource/Patient.yml", TEMPLATE)).isEqualTo(tree);
+    assertThat(read.getTree("hl7/resource/Patient.yml", TEMPLATE.replace("PID.3", "PID.4")))
+        .isNull();
+    assertThat(read.getTree("hl7/resource/Encounter.yml", TEMPLATE)).isNull();
+  }
+
+  @Test
+  public void released_snapshot_keeps_no_template() throws IOException {
+    TemplateSnapshot snapshot = new TemplateSnapshot();
+    JsonNode tree = ObjectMapperUtil.getYAMLInstance().readTree(TEMPLATE);
+    snapshot.put("hl7/resource/Patient.yml", TEMPLATE, tree);
+    snapshot.release();
+    assertThat(snapshot.getPaths()).isEmpty();
+    assertThat(snapshot.isModified()).isFalse();
+    assertThat(snapshot.getTree("hl7/resource/Patient.yml", TEMPLATE)).isNull();
+
+    snapshot.put("hl7/resource/Patient.yml", TEMPLATE, tree);
+    assertThat(snapshot.getPaths()).isEmpty();
+    assertThat(snapshot.isModified()).isFalse();
+  }
+
+  @Test
+  public void snapshot_of_all_templates_matches_yaml() throws IOException {
+    // a new reader, the snapshot of the installed one is released once its templates are loaded
+    ResourceReader reader = ResourceReader.newInstance();
+    reader.getMessageTemplates();
+    TemplateSnapshot snapshot = reader.getTemplateSnapshot();
+    assertThat(snapshot.getPaths()).contains("hl7/resource/Patient.yml",
+        "hl7/datatype/CodeableConcept.yml", "hl7/message/ADT_A01.yml");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    snapshot.write(out);
+    TemplateSnapshot read = TemplateSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+    for (String path : snapshot.getPaths()) {
+      String content = reader.getResource(path);
+      assertThat(read.getTree(path, content)).as(path)
+          .isEqualTo(ObjectMapperUtil.getYAMLInstance().readTree(content));
+    }
+  }
+
+  @Test
+  public void invalid_snapshot_is_rejected() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write("not a snapshot".getBytes(StandardCharsets.UTF_8));
+    }
+    assertThrows(IOException.class,
+        () -> TemplateSnapshot.read(new ByteArrayInputStream(out.toByteArray())));
+  }
+
+}
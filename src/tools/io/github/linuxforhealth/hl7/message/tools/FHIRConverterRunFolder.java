@@ -19,6 +19,8 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import io.github.linuxforhealth.fhir.NDJSONResourceWriter;
+import io.github.linuxforhealth.hl7.ConverterOptions;
 import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
 
 /**
@@ -27,6 +29,8 @@ import io.github.linuxforhealth.hl7.HL7ToFHIRConverter;
  * - hl7.input.folder
  * - hl7.output.folder (directory must exist, files will be overwritten if they exist)
  * - hl7.tools.debug (set to "true" to output input HL7 and output JSON to the console as well as to files)
+ * - hl7.output.format (optional, set to "ndjson" to write the resources of all the messages to one
+ *   ResourceType.ndjson file per resource type instead of one bundle JSON file per message)
  * This class uses a main() method; run as a Java application.
  */
 public class FHIRConverterRunFolder {
@@ -50,8 +54,11 @@ public class FHIRConverterRunFolder {
             debug = true;
         }
 
+        boolean ndjson = "ndjson".equalsIgnoreCase(System.getProperty("hl7.output.format"));
+
         int numConvertedFiles = 0;
-        try {
+        NDJSONResourceWriter ndjsonWriter = null;
+        try (HL7ToFHIRConverter ftv = new HL7ToFHIRConverter()) {
             //get the list of Files in the Folder
             File inputFolder = new File(inputFolderName);
             if (!inputFolder.exists()) {
@@ -63,6 +70,9 @@ public class FHIRConverterRunFolder {
                 System.out.println("Output folder " + outputFolderName + " not found");
                 return;
             }
+            if (ndjson) {
+                ndjsonWriter = new NDJSONResourceWriter(outputFolder.toPath());
+            }
             File[] fileList = inputFolder.listFiles();
             int numFiles = fileList.length;
             int currentFileNum = 1;
@@ -85,8 +95,15 @@ public class FHIRConverterRunFolder {
                         System.out.println("Processing file:" + currentFileName);
                     }
 
+                    if (ndjson) {
+                        // Append the resources to the NDJSON files of their resource type
+                        if (ftv.convert(hl7MessageString, ConverterOptions.SIMPLE_OPTIONS, ndjsonWriter)) {
+                            ++numConvertedFiles;
+                        }
+                        continue;
+                    }
+
                     // Convert from HL7 to JSON
-                    HL7ToFHIRConverter ftv = new HL7ToFHIRConverter();
                     String json = ftv.convert(hl7MessageString);
 
                     // Create a JSON object to be able to pretty print 
@@ -112,6 +129,10 @@ public class FHIRConverterRunFolder {
             }
         } catch (IOException | IllegalArgumentException e) {
             e.printStackTrace();
+        } finally {
+            if (ndjsonWriter != null) {
+                ndjsonWriter.close();
+            }
         }
         System.out.println("Done! Converted " + numConvertedFiles + " files");
     }